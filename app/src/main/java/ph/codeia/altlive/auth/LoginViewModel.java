@@ -13,6 +13,7 @@ import ph.codeia.altlive.LiveField;
 import ph.codeia.altlive.LiveLoader;
 import ph.codeia.altlive.Loader;
 import ph.codeia.altlive.Try;
+import ph.codeia.altlive.TryScope;
 
 public class LoginViewModel extends ViewModel {
     public static final String MESSAGE_EMPTY = "This cannot be empty";
@@ -24,6 +25,7 @@ public class LoginViewModel extends ViewModel {
     private final LiveField<String> passwordErrors;
     private final LiveLoader<Void> logout;
     private final LiveLoader<String> login;
+    private final TryScope scope = new TryScope();
     private String authToken;
 
     public LoginViewModel(AuthService auth, LiveField.Builder builder) {
@@ -71,7 +73,7 @@ public class LoginViewModel extends ViewModel {
         String un = username.toString();
         String pw = password.toString();
         if (isValid(un, pw)) {
-            login.postValue(auth.login(un, pw).map(token -> {
+            login.postValue(auth.login(un, pw).pipe(scope::track).map(token -> {
                 authToken = token;
                 return token;
             }));
@@ -80,13 +82,18 @@ public class LoginViewModel extends ViewModel {
 
     public void logout() {
         if (authToken != null) {
-            logout.postValue(auth.logout(authToken));
+            logout.postValue(auth.logout(authToken).pipe(scope::track));
         }
         else {
             logout.postValue(Try.raise(new IllegalStateException("not logged in")));
         }
     }
 
+    @Override
+    protected void onCleared() {
+        scope.close();
+    }
+
     private boolean isValid(String username, String password) {
         boolean isValid = true;
         usernameErrors.postValue(null);
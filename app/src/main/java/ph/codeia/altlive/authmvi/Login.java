@@ -5,12 +5,60 @@ package ph.codeia.altlive.authmvi;
  */
 
 import androidx.annotation.Nullable;
+import androidx.core.util.ObjectsCompat;
 
 public interface Login {
     enum Action {
         LOGIN, LOGOUT
     }
 
+    /**
+     * An action along with the input it was made with. Requests are equal
+     * when their inputs are, so a repeated tap is absorbed but a retry with
+     * different credentials is not.
+     */
+    final class Request {
+        static final Request LOGOUT = new Request(Action.LOGOUT, null, null);
+
+        static Request login(String username, String password) {
+            return new Request(Action.LOGIN, username, password);
+        }
+
+        public final Action action;
+        final String username;
+        final String password;
+
+        private Request(Action action, String username, String password) {
+            this.action = action;
+            this.username = username;
+            this.password = password;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Request)) {
+                return false;
+            }
+            Request that = (Request) o;
+            return action == that.action
+                    && ObjectsCompat.equals(username, that.username)
+                    && ObjectsCompat.equals(password, that.password);
+        }
+
+        @Override
+        public int hashCode() {
+            return ObjectsCompat.hash(action, username, password);
+        }
+
+        @Override
+        public String toString() {
+            return action.toString();
+        }
+    }
+
     interface Model {
         void render(View view);
     }
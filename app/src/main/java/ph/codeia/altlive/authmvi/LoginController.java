@@ -13,6 +13,7 @@ import ph.codeia.altlive.LiveField;
 import ph.codeia.altlive.LiveTask;
 import ph.codeia.altlive.Task;
 import ph.codeia.altlive.Try;
+import ph.codeia.altlive.TryScope;
 import ph.codeia.altlive.transform.Recover;
 
 public class LoginController extends ViewModel {
@@ -20,19 +21,20 @@ public class LoginController extends ViewModel {
     public static final String MESSAGE_BAD_EMAIL = "Invalid email address";
 
     private final AuthService auth;
-    private final LiveTask<Login.Action, Login.Model> state;
+    private final LiveTask<Login.Request, Login.Model> state;
     private final LiveField<Login.Event> events;
-    private String username;
-    private String password;
+    private final TryScope scope = new TryScope();
     private String authToken;
 
     public LoginController(AuthService auth, LiveField.Builder builder) {
         this.auth = auth;
-        state = new LiveTask<>(builder, this::dispatch);
+        state = new LiveTask<Login.Request, Login.Model>(builder, this::dispatch)
+                .policy(LiveTask.Policy.serial())
+                .singleFlight(true);
         events = builder.copy().sticky(false).build();
     }
 
-    public Live<Task<Login.Action, Login.Model>> state() {
+    public Live<Task<Login.Request, Login.Model>> state() {
         return state;
     }
 
@@ -44,13 +46,11 @@ public class LoginController extends ViewModel {
             @NonNull CharSequence username,
             @NonNull CharSequence password
     ) {
-        this.username = username.toString();
-        this.password = password.toString();
-        state.postValue(Login.Action.LOGIN);
+        state.postValue(Login.Request.login(username.toString(), password.toString()));
     }
 
     public void logout() {
-        state.postValue(Login.Action.LOGOUT);
+        state.postValue(Login.Request.LOGOUT);
     }
 
     public void tell(String text, Object... fmtArgs) {
@@ -58,15 +58,23 @@ public class LoginController extends ViewModel {
         events.postValue(on -> on.show(message));
     }
 
-    private Try<Login.Model> dispatch(Login.Action action) {
-        switch (action) {
+    @Override
+    protected void onCleared() {
+        scope.close();
+    }
+
+    private Try<Login.Model> dispatch(Login.Request request) {
+        switch (request.action) {
             case LOGIN:
+                String username = request.username;
+                String password = request.password;
                 Errors errors = validate(username, password);
                 if (errors.any()) {
                     events.postValue(errors);
                     return Try.just(errors);
                 }
                 return auth.login(username, password)
+                        .pipe(scope::track)
                         .<Login.Model>map(token -> {
                             authToken = token;
                             tell("token: %s", token);
@@ -86,6 +94,7 @@ public class LoginController extends ViewModel {
                     return Try.raise(new IllegalStateException("not logged in"));
                 }
                 return auth.logout(authToken)
+                        .pipe(scope::track)
                         .<Login.Model>map(o -> Login.View::loggedOut)
                         .pipe(Recover.from(error -> {
                             try {
@@ -97,7 +106,7 @@ public class LoginController extends ViewModel {
                             }
                         }));
         }
-        return Try.raise(new UnsupportedOperationException(action.toString()));
+        return Try.raise(new UnsupportedOperationException(request.toString()));
     }
 
     private static Errors validate(String username, String password) {
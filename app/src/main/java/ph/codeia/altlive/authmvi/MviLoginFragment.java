@@ -29,14 +29,14 @@ public class MviLoginFragment extends Fragment {
                 .of(requireActivity(), Provision.variant())
                 .get(LoginController.class);
         controller.events().observe(this, Receiver.forSome(event -> event.dispatch(view)));
-        controller.state().observe(this, new Task.Progress<Login.Action, Login.Model>() {
+        controller.state().observe(this, new Task.Progress<Login.Request, Login.Model>() {
             @Override
-            public void running(Login.Action action, @Nullable Login.Model currentState) {
-                view.indicate(action);
+            public void running(Login.Request request, @Nullable Login.Model currentState) {
+                view.indicate(request.action);
             }
 
             @Override
-            public void done(Login.Action action, Login.Model state) {
+            public void done(Login.Request request, Login.Model state) {
                 state.render(view);
             }
         });
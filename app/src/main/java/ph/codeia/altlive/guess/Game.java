@@ -18,7 +18,8 @@ class Game extends ViewModel {
         Try<State> apply(State current);
     }
 
-    private final LiveTask<Action, State> machine = new LiveTask<>(this::step);
+    private final LiveTask<Action, State> machine = new LiveTask<Action, State>(this::step)
+            .policy(LiveTask.Policy.serial());
     private State current = new State();
 
     private Try<State> step(Action action) {
@@ -0,0 +1,58 @@
+package ph.codeia.altlive;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+/**
+ * Tells the time.
+ *
+ * <p> Tokens read their deadlines off the {@link #current() current} clock.
+ * The scheduler of the transformers that wait is also a clock, and
+ * installing one with {@code Delay.setScheduler} installs it as the current
+ * clock too, so tokens and transformers always agree on the time. Installing
+ * a {@code VirtualTime} makes all of them run on simulated time.
+ */
+public interface Clock {
+
+    /**
+     * Reads the system clocks.
+     */
+    Clock SYSTEM = new Clock() {};
+
+    /**
+     * The clock read by tokens and the transformers that measure time.
+     * {@link #SYSTEM} unless replaced.
+     */
+    static Clock current() {
+        return Installed.clock;
+    }
+
+    /**
+     * Replaces the current clock. Null restores the system clock.
+     */
+    static void install(Clock clock) {
+        Installed.clock = clock == null ? SYSTEM : clock;
+    }
+
+    /**
+     * Wall-clock time in millis, as in {@link System#currentTimeMillis()}.
+     */
+    default long millis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Monotonic time in nanos, as in {@link System#nanoTime()}.
+     */
+    default long nanos() {
+        return System.nanoTime();
+    }
+}
+
+final class Installed {
+    static volatile Clock clock = Clock.SYSTEM;
+
+    private Installed() {
+    }
+}
@@ -0,0 +1,99 @@
+package ph.codeia.altlive;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+import androidx.annotation.NonNull;
+import ph.codeia.altlive.transform.Canceller;
+
+/**
+ * Converters between {@link Try} and the JDK future types.
+ *
+ * <p> None of these hop threads. A future produced from a {@code Try} is
+ * completed directly from the {@link Try.Case} callbacks, and a {@code Try}
+ * produced from a stage calls its continuation in whichever thread completes
+ * the stage (or immediately in the selecting thread if it is already done).
+ *
+ * <p> Requires API level 24 when used in Android.
+ */
+public final class Futures {
+
+    private Futures() {
+    }
+
+    /**
+     * Starts the computation and returns a future that completes with its
+     * result.
+     *
+     * <p> Cancelling the future cancels the computation through a
+     * {@link Canceller}. If the source is already a canceller, that object
+     * is cancelled; otherwise the source is wrapped in a new one, which means
+     * that a late result is simply dropped.
+     *
+     * @param <T> The type of the value being computed
+     */
+    public static <T> CompletableFuture<T> toFuture(Try<T> source) {
+        Canceller<T> canceller = source instanceof Canceller
+                ? (Canceller<T>) source
+                : new Canceller<>(source);
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.whenComplete((t, error) -> {
+            if (error instanceof CancellationException) {
+                canceller.cancel();
+            }
+        });
+        canceller.select(new Try.Case<T>() {
+            @Override
+            public void ok(T t) {
+                future.complete(t);
+            }
+
+            @Override
+            public void error(@NonNull Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Adapts a completion stage into a {@link Try}.
+     *
+     * <p> Unlike most {@code Try} objects, the resulting object is hot: the
+     * stage is already running (or done) by the time it is selected, and
+     * every select observes the same result. The {@link CompletionException}
+     * wrapper is removed from errors.
+     *
+     * @param <T> The type of the value being computed
+     */
+    public static <T> Try<T> fromStage(CompletionStage<? extends T> stage) {
+        return continuation -> stage.whenComplete((t, error) -> {
+            if (error == null) {
+                continuation.ok(t);
+            }
+            else if (error instanceof CompletionException && error.getCause() != null) {
+                continuation.error(error.getCause());
+            }
+            else {
+                continuation.error(error);
+            }
+        });
+    }
+
+    /**
+     * Adapts a future into a {@link Try} that cancels the future when the
+     * result is cancelled.
+     *
+     * @param <T> The type of the value being computed
+     * @see #fromStage(CompletionStage)
+     */
+    public static <T> Canceller<T> fromFuture(CompletableFuture<? extends T> future) {
+        return new Canceller<>(fromStage(future), () -> future.cancel(false));
+    }
+}
@@ -0,0 +1,89 @@
+package ph.codeia.altlive;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Numbers the loads of a {@link LiveLoader} or {@link LiveTask} so that a
+ * new load can supersede the ones before it.
+ *
+ * <p> When enabled, starting a load cancels the previous one if it is still
+ * in flight, and the result of a load that is no longer the latest is
+ * dropped. When disabled, every load delivers its result as before and
+ * nothing is counted.
+ */
+class Generations {
+    private final AtomicLong cancelled = new AtomicLong(0);
+    private final AtomicLong dropped = new AtomicLong(0);
+    private volatile boolean isEnabled = false;
+    private long latest = 0;
+    private Runnable inFlight;
+
+    void enable(boolean isEnabled) {
+        this.isEnabled = isEnabled;
+    }
+
+    boolean isEnabled() {
+        return isEnabled;
+    }
+
+    /**
+     * Starts a new generation and cancels the one in flight.
+     *
+     * @param cancel Cancels the new load if it is superseded.
+     * @return the number of the new generation.
+     */
+    long begin(Runnable cancel) {
+        Runnable superseded;
+        long generation;
+        synchronized (this) {
+            latest += 1;
+            generation = latest;
+            superseded = isEnabled ? inFlight : null;
+            inFlight = cancel;
+        }
+        if (superseded != null) {
+            cancelled.incrementAndGet();
+            superseded.run();
+        }
+        return generation;
+    }
+
+    /**
+     * Returns false if the generation has been superseded.
+     */
+    synchronized boolean isCurrent(long generation) {
+        return !isEnabled || generation == latest;
+    }
+
+    /**
+     * Ends a generation.
+     *
+     * @return false if the result should be dropped because the generation
+     * has been superseded.
+     */
+    boolean finish(long generation) {
+        synchronized (this) {
+            if (generation == latest) {
+                inFlight = null;
+                return true;
+            }
+            if (!isEnabled) {
+                return true;
+            }
+        }
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    long cancelled() {
+        return cancelled.get();
+    }
+
+    long dropped() {
+        return dropped.get();
+    }
+}
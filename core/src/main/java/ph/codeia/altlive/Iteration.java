@@ -0,0 +1,139 @@
+package ph.codeia.altlive;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Produces the items of a sequence on demand.
+ *
+ * @param <T> The type of the values
+ * @see Stream#from(Iterable)
+ */
+class Iteration<T> implements Stream<T> {
+    private final Iterable<? extends T> items;
+
+    Iteration(Iterable<? extends T> items) {
+        this.items = items;
+    }
+
+    @Override
+    public void subscribe(Sink<? super T> sink) {
+        Iterator<? extends T> iterator;
+        try {
+            iterator = items.iterator();
+        }
+        catch (RuntimeException e) {
+            sink.onStart(Demand.NONE);
+            sink.onError(e);
+            return;
+        }
+        sink.onStart(new Run(sink, iterator));
+    }
+
+    private class Run implements Demand {
+        final Sink<? super T> sink;
+        final Iterator<? extends T> iterator;
+        // only the thread that raises the demand from zero emits; the others
+        // just add to it.
+        final AtomicLong requested = new AtomicLong(0);
+        volatile Throwable badRequest;
+        boolean isDone = false;
+
+        Run(Sink<? super T> sink, Iterator<? extends T> iterator) {
+            this.sink = sink;
+            this.iterator = iterator;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                badRequest = new IllegalArgumentException("Must request at least 1");
+                n = 1;
+            }
+            while (true) {
+                long current = requested.get();
+                long next = current + n < 0 ? Long.MAX_VALUE : current + n;
+                if (current == Long.MAX_VALUE) {
+                    return;
+                }
+                if (requested.compareAndSet(current, next)) {
+                    if (current == 0) {
+                        drain();
+                    }
+                    return;
+                }
+            }
+        }
+
+        void drain() {
+            long limit = requested.get();
+            long emitted = 0;
+            while (true) {
+                while (emitted != limit) {
+                    if (isTerminated() || isExhausted()) {
+                        return;
+                    }
+                    T t;
+                    try {
+                        t = iterator.next();
+                    }
+                    catch (RuntimeException e) {
+                        isDone = true;
+                        sink.onError(e);
+                        return;
+                    }
+                    sink.onNext(t);
+                    emitted += 1;
+                }
+                // completes without waiting for demand that isn't needed
+                if (isTerminated() || isExhausted()) {
+                    return;
+                }
+                limit = requested.get();
+                if (limit == emitted) {
+                    limit = requested.addAndGet(-emitted);
+                    if (limit == 0) {
+                        return;
+                    }
+                    emitted = 0;
+                }
+            }
+        }
+
+        boolean isTerminated() {
+            if (isDone) {
+                return true;
+            }
+            if (sink.token().isCancelled()) {
+                isDone = true;
+                return true;
+            }
+            Throwable error = badRequest;
+            if (error != null) {
+                isDone = true;
+                sink.onError(error);
+                return true;
+            }
+            return false;
+        }
+
+        boolean isExhausted() {
+            try {
+                if (iterator.hasNext()) {
+                    return false;
+                }
+                isDone = true;
+                sink.onComplete();
+            }
+            catch (RuntimeException e) {
+                isDone = true;
+                sink.onError(e);
+            }
+            return true;
+        }
+    }
+}
@@ -4,13 +4,19 @@ package ph.codeia.altlive;
  * This file is a part of the AltLiveData project.
  */
 
+import java.util.concurrent.TimeUnit;
+
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.lifecycle.LifecycleOwner;
+import ph.codeia.altlive.transform.Canceller;
+import ph.codeia.altlive.transform.Delay;
+import ph.codeia.altlive.transform.Scheduler;
 
 public class LiveLoader<T> implements Live<Loader<T>>, Feed<Try<T>> {
 
     private final LiveField<Loader<T>> delegate;
+    private final Generations generations = new Generations();
     private volatile T value;
 
     public LiveLoader(LiveField<Loader<T>> delegate) {
@@ -25,28 +31,120 @@ public class LiveLoader<T> implements Live<Loader<T>>, Feed<Try<T>> {
         this(new LiveField.Builder());
     }
 
+    /**
+     * Makes every load cancel the one before it if it is still running.
+     *
+     * <p> The superseded computation is cancelled through a {@link Canceller}
+     * so that the upstream transformers can drop their queued work, and a
+     * result that still arrives after its load was superseded is dropped
+     * instead of overwriting the newer one. Posting null also cancels the
+     * running load. Streams posted through {@link #postStream} are cancelled
+     * through their token.
+     *
+     * <p> Off by default, which lets every load run to completion.
+     */
+    public LiveLoader<T> latestWins(boolean isEnabled) {
+        generations.enable(isEnabled);
+        return this;
+    }
+
+    /**
+     * The number of running loads that were cancelled because a newer one was
+     * posted.
+     */
+    public long cancelled() {
+        return generations.cancelled();
+    }
+
+    /**
+     * The number of results that were dropped because a newer load had been
+     * posted by the time they arrived.
+     */
+    public long dropped() {
+        return generations.dropped();
+    }
+
     @Override
     public void postValue(@Nullable Try<T> loader) {
         if (loader == null) {
+            generations.begin(null);
             delegate.postValue(null);
             return;
         }
+        Canceller<T> canceller = new Canceller<>(loader);
+        long generation = generations.begin(canceller::cancel);
         T oldValue = value;
         delegate.postValue(e -> e.running(oldValue));
-        loader.select(new Try.Case<T>() {
+        canceller.select(new Try.Case<T>() {
             @Override
             public void ok(T t) {
-                value = t;
-                delegate.postValue(e -> e.done(t));
+                if (generations.finish(generation)) {
+                    value = t;
+                    delegate.postValue(e -> e.done(t));
+                }
             }
 
             @Override
             public void error(@NonNull Throwable t) {
-                delegate.postValue(e -> e.failed(t));
+                if (generations.finish(generation)) {
+                    delegate.postValue(e -> e.failed(t));
+                }
             }
         });
     }
 
+    /**
+     * Loads a value incrementally, posting partial results as they arrive.
+     *
+     * <p> Every part of the stream is merged into the value with the
+     * accumulator, and the merged value is posted as {@code running(partial)}.
+     * The first partial result is posted immediately; after that, at most one
+     * is posted every {@code intervalMillis} and the latest one is posted at
+     * the end of the interval, so the observers are not flooded by a fast
+     * stream. When the stream completes, the final value is posted as
+     * {@code done(value)}.
+     *
+     * <p> Partial results are read by the observers while the accumulator
+     * keeps running, so the accumulator should return a new value instead of
+     * modifying the one it was given.
+     *
+     * @param parts The source of the parts. Requested without limit.
+     * @param seed The value before the first part; also the result of an
+     *             empty stream.
+     * @param accumulator Throwing from this cancels the stream and posts
+     *                    {@code failed(error)}.
+     * @param intervalMillis The minimum time between partial results. Every
+     *                       partial result is posted when this is 0.
+     * @param <P> The type of the parts
+     */
+    public <P> void postStream(
+            Stream<P> parts,
+            T seed,
+            Stream.Accumulator<T, ? super P> accumulator,
+            long intervalMillis
+    ) {
+        Partials<P> sink = new Partials<>(seed, accumulator, intervalMillis);
+        sink.generation = generations.begin(sink::cancel);
+        T oldValue = value;
+        delegate.postValue(e -> e.running(oldValue));
+        try {
+            parts.subscribe(sink);
+        }
+        catch (RuntimeException e) {
+            sink.onError(e);
+        }
+    }
+
+    /**
+     * Loads a value incrementally where every value of the stream replaces
+     * the previous one.
+     *
+     * @see #postStream(Stream, Object, Stream.Accumulator, long)
+     */
+    public void postStream(Stream<T> values, long interval, TimeUnit units) {
+        postStream(values, value, (previous, next) -> next, units.toMillis(interval));
+    }
+
     @Override
     public void observe(
             LifecycleOwner owner,
@@ -64,4 +162,120 @@ public class LiveLoader<T> implements Live<Loader<T>>, Feed<Try<T>> {
     public void removeObserver(Receiver<? super Loader<T>> receiver) {
         delegate.removeObserver(receiver);
     }
+
+    private class Partials<P> implements Stream.Sink<P> {
+        final Stream.Accumulator<T, ? super P> accumulator;
+        final long intervalNanos;
+        final Token token = new Token();
+        volatile T accumulated;
+        long generation;
+        Scheduler.Handle timer;
+        long lastPost;
+        boolean hasPosted = false;
+        boolean isDone = false;
+
+        Partials(T seed, Stream.Accumulator<T, ? super P> accumulator, long intervalMillis) {
+            this.accumulator = accumulator;
+            this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, intervalMillis));
+            accumulated = seed;
+        }
+
+        @Override
+        public void onNext(P p) {
+            T next;
+            try {
+                next = accumulator.apply(accumulated, p);
+            }
+            catch (RuntimeException e) {
+                token.cancel();
+                onError(e);
+                return;
+            }
+            accumulated = next;
+            Scheduler scheduler = Delay.scheduler();
+            synchronized (this) {
+                if (isDone || timer != null) {
+                    // the pending post picks up the latest value
+                    return;
+                }
+                long now = scheduler.nanos();
+                long wait = hasPosted ? lastPost + intervalNanos - now : 0L;
+                if (wait <= 0) {
+                    post(now);
+                }
+                else {
+                    long millis = Math.max(1L, TimeUnit.NANOSECONDS.toMillis(wait));
+                    timer = scheduler.schedule(this::flush, millis);
+                }
+            }
+        }
+
+        @Override
+        public void onError(@NonNull Throwable t) {
+            synchronized (this) {
+                if (finish() && generations.finish(generation)) {
+                    delegate.postValue(e -> e.failed(t));
+                }
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            synchronized (this) {
+                if (finish() && generations.finish(generation)) {
+                    T result = accumulated;
+                    value = result;
+                    delegate.postValue(e -> e.done(result));
+                }
+            }
+        }
+
+        @Override
+        public Token token() {
+            return token;
+        }
+
+        /**
+         * Called when a newer load supersedes this one.
+         */
+        void cancel() {
+            token.cancel();
+            synchronized (this) {
+                finish();
+            }
+        }
+
+        synchronized void flush() {
+            timer = null;
+            if (!isDone) {
+                post(Delay.scheduler().nanos());
+            }
+        }
+
+        /**
+         * Called with the lock held so that a late partial result cannot be
+         * posted after the final one.
+         */
+        void post(long now) {
+            if (!generations.isCurrent(generation)) {
+                return;
+            }
+            T partial = accumulated;
+            hasPosted = true;
+            lastPost = now;
+            delegate.postValue(e -> e.running(partial));
+        }
+
+        boolean finish() {
+            if (isDone) {
+                return false;
+            }
+            isDone = true;
+            if (timer != null) {
+                timer.cancel();
+                timer = null;
+            }
+            return true;
+        }
+    }
 }
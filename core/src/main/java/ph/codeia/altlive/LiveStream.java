@@ -0,0 +1,173 @@
+package ph.codeia.altlive;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.LifecycleOwner;
+
+/**
+ * Feeds the values of a {@link Stream} into a live object at the pace of its
+ * observers.
+ *
+ * <p> Every value is posted as {@code running(value)}. When the stream
+ * completes, the last value is posted as {@code done(value)}; when it fails,
+ * the error is posted as {@code failed(error)}. Posting another stream (or
+ * null) cancels the current one.
+ *
+ * <p> The stream is asked for one value up front and for each following value
+ * only after an observer with an active owner has received the current one.
+ * While every owner is paused or stopped, the stream is suspended instead of
+ * producing values that nobody sees, and it resumes when a sticky field
+ * notifies a reactivated owner. With a non-sticky field, a value that arrives
+ * while no owner is active is never received, so the stream stays suspended
+ * until another stream is posted.
+ *
+ * @param <T> The type of the values of the stream
+ */
+public class LiveStream<T> implements Live<Loader<T>>, Feed<Stream<T>> {
+
+    private final LiveField<Loader<T>> delegate;
+    private final AtomicReference<Subscription> current = new AtomicReference<>();
+    private volatile T value;
+
+    public LiveStream(LiveField<Loader<T>> delegate) {
+        this.delegate = delegate;
+    }
+
+    public LiveStream(LiveField.Builder builder) {
+        this(builder.build());
+    }
+
+    public LiveStream() {
+        this(new LiveField.Builder());
+    }
+
+    @Override
+    public void postValue(@Nullable Stream<T> stream) {
+        Subscription subscription = stream == null ? null : new Subscription();
+        Subscription previous = current.getAndSet(subscription);
+        if (previous != null) {
+            previous.token.cancel();
+        }
+        if (stream == null) {
+            delegate.postValue(null);
+            return;
+        }
+        T oldValue = value;
+        delegate.postValue(e -> e.running(oldValue));
+        try {
+            stream.subscribe(subscription);
+        }
+        catch (RuntimeException e) {
+            subscription.onError(e);
+        }
+    }
+
+    @Override
+    public void observe(
+            LifecycleOwner owner,
+            Receiver<? super Loader<T>> receiver
+    ) {
+        delegate.observe(owner, new Acknowledging<>(receiver, this));
+    }
+
+    @Override
+    public void removeObservers(LifecycleOwner owner) {
+        delegate.removeObservers(owner);
+    }
+
+    @Override
+    public void removeObserver(Receiver<? super Loader<T>> receiver) {
+        delegate.removeObserver(new Acknowledging<>(receiver, this));
+    }
+
+    private void acknowledge(@Nullable Loader<T> loader) {
+        Subscription subscription = current.get();
+        if (loader != null && subscription != null &&
+                subscription.unseen.compareAndSet(loader, null)) {
+            subscription.demand.request(1);
+        }
+    }
+
+    private class Subscription implements Stream.Sink<T> {
+        final Token token = new Token();
+        final AtomicReference<Loader<T>> unseen = new AtomicReference<>();
+        volatile Stream.Demand demand = Stream.Demand.NONE;
+
+        @Override
+        public void onStart(Stream.Demand demand) {
+            this.demand = demand;
+            demand.request(1);
+        }
+
+        @Override
+        public void onNext(T t) {
+            if (token.isCancelled()) {
+                return;
+            }
+            value = t;
+            Loader<T> loader = e -> e.running(t);
+            unseen.set(loader);
+            delegate.postValue(loader);
+        }
+
+        @Override
+        public void onError(@NonNull Throwable t) {
+            if (!token.isCancelled()) {
+                delegate.postValue(e -> e.failed(t));
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            if (!token.isCancelled()) {
+                T last = value;
+                delegate.postValue(e -> e.done(last));
+            }
+        }
+
+        @Override
+        public Token token() {
+            return token;
+        }
+    }
+
+    /**
+     * Equal to any other wrapper of the same receiver so that the field can
+     * find it when the receiver is removed.
+     */
+    private static class Acknowledging<T> implements Receiver<Loader<T>> {
+        final Receiver<? super Loader<T>> receiver;
+        final LiveStream<T> stream;
+
+        Acknowledging(Receiver<? super Loader<T>> receiver, LiveStream<T> stream) {
+            this.receiver = receiver;
+            this.stream = stream;
+        }
+
+        @Override
+        public void accept(@Nullable Loader<T> loader) {
+            try {
+                receiver.accept(loader);
+            }
+            finally {
+                stream.acknowledge(loader);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Acknowledging && ((Acknowledging<?>) o).receiver.equals(receiver);
+        }
+
+        @Override
+        public int hashCode() {
+            return receiver.hashCode();
+        }
+    }
+}
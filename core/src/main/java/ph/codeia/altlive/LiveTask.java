@@ -4,14 +4,85 @@ package ph.codeia.altlive;
  * This file is a part of the AltLiveData project.
  */
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.lifecycle.LifecycleOwner;
+import ph.codeia.altlive.transform.Canceller;
 
 public class LiveTask<I, O> implements Live<Task<I, O>>, Feed<I> {
+
+    /**
+     * Decides how many computations of a {@link LiveTask} may run at the same
+     * time and what happens to the keys posted while that many are running.
+     */
+    public static final class Policy {
+        enum Overflow { QUEUE, DROP, LATEST }
+
+        private static final Policy CONCURRENT = new Policy(Integer.MAX_VALUE, Overflow.QUEUE);
+        private static final Policy SERIAL = new Policy(1, Overflow.QUEUE);
+        private static final Policy DROP_WHILE_BUSY = new Policy(1, Overflow.DROP);
+        private static final Policy QUEUE_LATEST = new Policy(1, Overflow.LATEST);
+
+        /**
+         * Runs every key as soon as it is posted, with no ordering between
+         * the computations. This is the default.
+         */
+        public static Policy concurrent() {
+            return CONCURRENT;
+        }
+
+        /**
+         * Runs one key at a time in the order they were posted. State
+         * machines that read the result of the previous step need this.
+         */
+        public static Policy serial() {
+            return SERIAL;
+        }
+
+        /**
+         * Runs up to {@code n} keys at a time and queues the rest in the order
+         * they were posted.
+         */
+        public static Policy parallel(int n) {
+            if (n < 1) {
+                throw new IllegalArgumentException("Must allow at least 1");
+            }
+            return n == 1 ? SERIAL : new Policy(n, Overflow.QUEUE);
+        }
+
+        /**
+         * Runs one key at a time and ignores the keys posted while it runs.
+         */
+        public static Policy dropWhileBusy() {
+            return DROP_WHILE_BUSY;
+        }
+
+        /**
+         * Runs one key at a time and keeps only the latest of the keys posted
+         * while it runs. That key is run next.
+         */
+        public static Policy queueLatest() {
+            return QUEUE_LATEST;
+        }
+
+        final int maxRunning;
+        final Overflow overflow;
+
+        private Policy(int maxRunning, Overflow overflow) {
+            this.maxRunning = maxRunning;
+            this.overflow = overflow;
+        }
+    }
+
     private final LiveField<Task<I, O>> delegate;
     private final Function<I, Try<? extends O>> producer;
-    private O value;
+    private final Generations generations = new Generations();
+    private final SingleFlight<I, O> flights = new SingleFlight<>();
+    private volatile TaskQueue<Job> queue;
+    private volatile O value;
 
     public LiveTask(
             LiveField<Task<I, O>> delegate,
@@ -32,30 +103,164 @@ public class LiveTask<I, O> implements Live<Task<I, O>>, Feed<I> {
         this(new LiveField.Builder(), producer);
     }
 
+    /**
+     * Makes every key cancel the computation of the key before it if it is
+     * still running.
+     *
+     * <p> Meant for inputs like type-ahead search where only the result for
+     * the latest key matters. The superseded computation is cancelled through
+     * a {@link Canceller} so that the upstream transformers can drop their
+     * queued work, and a result that still arrives after its key was
+     * superseded is dropped instead of being posted. Posting null also
+     * cancels the running computation.
+     *
+     * <p> The key is superseded as soon as the newer key is posted, whatever
+     * the {@link #policy(Policy) policy}. A key that is still waiting in the
+     * queue is taken off it, and a running one gives up its slot, so the
+     * newer key never waits for a computation whose result would be dropped.
+     *
+     * <p> Off by default, which lets every computation run to completion.
+     */
+    public LiveTask<I, O> latestWins(boolean isEnabled) {
+        generations.enable(isEnabled);
+        return this;
+    }
+
+    /**
+     * The number of running or waiting computations that were cancelled
+     * because a newer key was posted.
+     */
+    public long cancelled() {
+        return generations.cancelled();
+    }
+
+    /**
+     * The number of results that were dropped because a newer key had been
+     * posted by the time they arrived.
+     */
+    public long dropped() {
+        return generations.dropped();
+    }
+
+    /**
+     * Makes posting a key that is still being computed attach to the running
+     * computation instead of starting a new one.
+     *
+     * <p> The repeated post is ignored and the observers get the result of
+     * the computation that is already running, so a double tap on a button
+     * does not call the backend twice. Keys are compared with
+     * {@link Object#equals(Object)}. When {@link #latestWins(boolean)} is also
+     * enabled, a repeated key does not cancel its own computation.
+     *
+     * <p> Off by default.
+     */
+    public LiveTask<I, O> singleFlight(boolean isEnabled) {
+        flights.enable(isEnabled, 0L);
+        return this;
+    }
+
+    /**
+     * Like {@link #singleFlight(boolean)}, and also posts the result of a key
+     * again without computing it if the key is repeated within the given time
+     * after its computation succeeded.
+     *
+     * <p> Meant to absorb immediate repeats, not to replace a cache. Failures
+     * are never served again. A repeat waits for its turn under the
+     * {@link #policy(Policy) policy} like any other key and is posted as done
+     * without a running state.
+     */
+    public LiveTask<I, O> singleFlight(long window, TimeUnit units) {
+        flights.enable(true, units.toNanos(window));
+        return this;
+    }
+
+    /**
+     * The number of posts that were served by a running computation or a
+     * recent result instead of calling the producer.
+     */
+    public long deduplicated() {
+        return flights.deduplicated();
+    }
+
+    /**
+     * Sets the policy that decides when the posted keys are run.
+     *
+     * <p> Should be set before the first post. Keys that are waiting under the
+     * previous policy are still run according to it, and the queue metrics
+     * start over. Posting null drops the keys that are waiting.
+     *
+     * @see Policy
+     */
+    public LiveTask<I, O> policy(Policy policy) {
+        queue = policy == Policy.CONCURRENT ? null : new TaskQueue<>(policy);
+        return this;
+    }
+
+    /**
+     * The number of keys that are waiting for a computation to finish before
+     * they can be run. Always 0 with the concurrent policy.
+     */
+    public int pending() {
+        TaskQueue<Job> q = queue;
+        return q == null ? 0 : q.pending();
+    }
+
+    /**
+     * The highest number of keys that were waiting at the same time.
+     */
+    public int peakPending() {
+        TaskQueue<Job> q = queue;
+        return q == null ? 0 : q.peakPending();
+    }
+
+    /**
+     * The number of keys that were never run because they were ignored or
+     * replaced by a newer key according to the policy.
+     */
+    public long rejected() {
+        TaskQueue<Job> q = queue;
+        return q == null ? 0 : q.rejected();
+    }
+
     @Override
     public void postValue(@Nullable I key) {
+        TaskQueue<Job> q = queue;
         if (key == null) {
+            generations.begin(null);
+            if (q != null) {
+                for (Job job : q.clear()) {
+                    job.discard();
+                }
+            }
             delegate.postValue(null);
             return;
         }
-        O oldValue = value;
-        delegate.postValue(e -> e.running(key, oldValue));
-        try {
-            producer.apply(key).select(new Try.Case<O>() {
-                @Override
-                public void ok(O o) {
-                    value = o;
-                    delegate.postValue(e -> e.done(key, o));
-                }
-
-                @Override
-                public void error(@NonNull Throwable t) {
-                    delegate.postValue(e -> e.failed(key, t));
-                }
-            });
+        Job job;
+        SingleFlight.Result<O> recent = flights.isEnabled()
+                ? flights.recent(key, Clock.current().nanos())
+                : null;
+        if (recent != null) {
+            // replayed in its turn like any other key, but without a flight
+            O o = recent.value;
+            job = new Job(key, new Canceller<>(c -> c.ok(o)), true, q);
+        }
+        else {
+            Canceller<O> canceller = new Canceller<>(c -> producer.apply(key).select(c));
+            if (!flights.start(key, canceller)) {
+                return;
+            }
+            job = new Job(key, canceller, false, q);
         }
-        catch (RuntimeException t) {
-            delegate.postValue(e -> e.failed(key, t));
+        // begun at post time so that a superseded key is cancelled even if
+        // it is still waiting for a slot
+        job.generation = generations.begin(job::cancel);
+        if (q == null) {
+            job.run();
+            return;
+        }
+        Job turnedAway = q.offer(job);
+        if (turnedAway != null) {
+            turnedAway.discard();
         }
     }
 
@@ -76,5 +281,105 @@ public class LiveTask<I, O> implements Live<Task<I, O>>, Feed<I> {
     public void removeObserver(Receiver<? super Task<I, O>> receiver) {
         delegate.removeObserver(receiver);
     }
-}
 
+    private class Job implements Runnable {
+        final I key;
+        final Canceller<O> canceller;
+        final boolean isReplay;
+        final TaskQueue<Job> queue;
+        final AtomicBoolean isReleased = new AtomicBoolean(false);
+        long generation;
+
+        Job(I key, Canceller<O> canceller, boolean isReplay, TaskQueue<Job> queue) {
+            this.key = key;
+            this.canceller = canceller;
+            this.isReplay = isReplay;
+            this.queue = queue;
+        }
+
+        @Override
+        public void run() {
+            if (!generations.isCurrent(generation)) {
+                // superseded between being dequeued and run
+                cancel();
+                return;
+            }
+            try {
+                if (!isReplay) {
+                    O oldValue = value;
+                    delegate.postValue(e -> e.running(key, oldValue));
+                }
+                canceller.select(new Try.Case<O>() {
+                    @Override
+                    public void ok(O o) {
+                        flights.done(key, canceller, o, Clock.current().nanos());
+                        try {
+                            if (generations.finish(generation)) {
+                                value = o;
+                                delegate.postValue(e -> e.done(key, o));
+                            }
+                        }
+                        finally {
+                            release();
+                        }
+                    }
+
+                    @Override
+                    public void error(@NonNull Throwable t) {
+                        flights.abandon(key, canceller);
+                        try {
+                            if (generations.finish(generation)) {
+                                delegate.postValue(e -> e.failed(key, t));
+                            }
+                        }
+                        finally {
+                            release();
+                        }
+                    }
+                });
+            }
+            catch (RuntimeException t) {
+                flights.abandon(key, canceller);
+                try {
+                    if (generations.finish(generation)) {
+                        delegate.postValue(e -> e.failed(key, t));
+                    }
+                }
+                finally {
+                    release();
+                }
+            }
+        }
+
+        /**
+         * Called by the generation that supersedes this job.
+         */
+        void cancel() {
+            canceller.cancel();
+            flights.abandon(key, canceller);
+            if (queue != null && queue.remove(this)) {
+                isReleased.set(true);
+            }
+            else {
+                release();
+            }
+        }
+
+        /**
+         * Gives up a job that never got a slot in the queue.
+         */
+        void discard() {
+            isReleased.set(true);
+            flights.abandon(key, canceller);
+        }
+
+        /**
+         * Frees the slot of this job in the queue, once.
+         */
+        void release() {
+            if (queue != null && isReleased.compareAndSet(false, true)) {
+                queue.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package ph.codeia.altlive;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the keys of a {@link LiveTask} that are being computed so that a
+ * repeated key can attach to the running computation instead of starting a
+ * new one.
+ *
+ * <p> Successful results may also be kept for a short window after they
+ * complete to serve immediate repeats. Failures are never kept. The kept
+ * results are ordered by expiry, so the expired ones are purged from the
+ * head of the map whenever it is touched.
+ *
+ * @param <K> The type of the keys
+ * @param <V> The type of the results
+ */
+class SingleFlight<K, V> {
+
+    static class Result<V> {
+        final V value;
+        final long expiresAt;
+
+        Result(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final Map<K, Object> running = new HashMap<>();
+    private final LinkedHashMap<K, Result<V>> recent = new LinkedHashMap<>();
+    private final AtomicLong deduplicated = new AtomicLong(0);
+    private volatile boolean isEnabled = false;
+    private long windowNanos = 0L;
+
+    synchronized void enable(boolean isEnabled, long windowNanos) {
+        this.isEnabled = isEnabled;
+        this.windowNanos = isEnabled ? Math.max(0L, windowNanos) : 0L;
+        if (!isEnabled) {
+            running.clear();
+            recent.clear();
+        }
+    }
+
+    boolean isEnabled() {
+        return isEnabled;
+    }
+
+    /**
+     * Looks up a result of the key that completed within the window.
+     *
+     * @param now The current time in nanoseconds.
+     * @return null if there is none.
+     */
+    synchronized Result<V> recent(K key, long now) {
+        if (!isEnabled) {
+            return null;
+        }
+        purge(now);
+        Result<V> result = recent.get(key);
+        if (result != null) {
+            deduplicated.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * Marks the key as being computed.
+     *
+     * @param flight Identifies the computation.
+     * @return false if the key is already being computed by another flight.
+     */
+    synchronized boolean start(K key, Object flight) {
+        if (!isEnabled) {
+            return true;
+        }
+        if (running.containsKey(key)) {
+            deduplicated.incrementAndGet();
+            return false;
+        }
+        running.put(key, flight);
+        return true;
+    }
+
+    /**
+     * Ends the flight and keeps the result for the length of the window.
+     *
+     * @param now The current time in nanoseconds.
+     */
+    synchronized void done(K key, Object flight, V value, long now) {
+        if (!abandon(key, flight) || windowNanos == 0L) {
+            return;
+        }
+        purge(now);
+        // re-inserting keeps the map ordered by expiry
+        recent.remove(key);
+        recent.put(key, new Result<>(value, now + windowNanos));
+    }
+
+    /**
+     * Ends the flight without keeping a result.
+     *
+     * @return false if the flight was no longer running.
+     */
+    synchronized boolean abandon(K key, Object flight) {
+        if (running.get(key) != flight) {
+            return false;
+        }
+        running.remove(key);
+        return true;
+    }
+
+    long deduplicated() {
+        return deduplicated.get();
+    }
+
+    private void purge(long now) {
+        Iterator<Result<V>> it = recent.values().iterator();
+        while (it.hasNext() && it.next().expiresAt - now <= 0) {
+            it.remove();
+        }
+    }
+}
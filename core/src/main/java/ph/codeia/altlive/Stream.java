@@ -0,0 +1,357 @@
+package ph.codeia.altlive;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Represents a computation that produces any number of values and then either
+ * completes or fails.
+ *
+ * <p> This is the multi-valued counterpart of {@link Try}. A stream is cold:
+ * nothing happens until {@link #subscribe(Sink)} is called, and every
+ * subscription performs the computation again. The sink sets the pace through
+ * the {@link Demand} it receives in {@link Sink#onStart(Demand)}; a stream
+ * never produces more values than requested. Cancellation flows through the
+ * token of the sink like it does through {@link Try.Case#token()}.
+ *
+ * <p> The signals of a subscription are never concurrent, and nothing is
+ * called after {@code onError} or {@code onComplete}.
+ *
+ * @param <T> The type of the values being produced
+ */
+public interface Stream<T> {
+    /**
+     * Starts the computation.
+     *
+     * <p> {@link Sink#onStart(Demand)} is always called first. Nothing is
+     * produced until the sink requests it.
+     */
+    void subscribe(Sink<? super T> sink);
+
+    /**
+     * The channel through which a sink asks for more values.
+     */
+    interface Demand {
+        Demand NONE = n -> {};
+
+        /**
+         * Allows the stream to produce {@code n} more values.
+         *
+         * <p> Requests are cumulative. {@code Long.MAX_VALUE} removes the
+         * limit. Can be called from any thread, including from inside
+         * {@link Sink#onNext(Object)}. Non-positive requests fail the
+         * subscription with an {@link IllegalArgumentException}.
+         */
+        void request(long n);
+    }
+
+    /**
+     * The consumer of a stream.
+     *
+     * <p> The same rules about throwing in {@link Try.Case} apply here.
+     *
+     * @param <T> The type of the values being consumed
+     */
+    interface Sink<T> {
+        /**
+         * Called once before any other signal.
+         *
+         * <p> Requests everything by default.
+         */
+        default void onStart(Demand demand) {
+            demand.request(Long.MAX_VALUE);
+        }
+
+        /**
+         * Called for every value, at most as many times as requested.
+         */
+        void onNext(T t);
+
+        /**
+         * Called when the computation fails. Nothing is produced after this.
+         */
+        void onError(@NonNull Throwable t);
+
+        /**
+         * Called when there are no more values.
+         */
+        void onComplete();
+
+        /**
+         * The cancellation signal of the consumer of this stream.
+         *
+         * <p> Wrappers must forward this to the sink they wrap. Defaults to
+         * {@link Token#NONE}.
+         */
+        default Token token() {
+            return Token.NONE;
+        }
+    }
+
+    /**
+     * Combines an accumulated value with the next value of a stream.
+     *
+     * @param <A> The type of the accumulated value
+     * @param <T> The type of the values of the stream
+     */
+    interface Accumulator<A, T> {
+        A apply(A accumulated, T t);
+    }
+
+    /**
+     * Transforms every value.
+     *
+     * @param f Throwing from this cancels the stream and fails the subscription.
+     * @param <U> The type of the transformed values
+     */
+    default <U> Stream<U> map(Function<? super T, ? extends U> f) {
+        return sink -> subscribe(new StreamStage<T, U>(sink) {
+            @Override
+            public void onNext(T t) {
+                U u;
+                try {
+                    u = f.apply(t);
+                }
+                catch (RuntimeException e) {
+                    fail(e);
+                    return;
+                }
+                emit(u);
+            }
+        });
+    }
+
+    /**
+     * Drops the values that do not satisfy the predicate.
+     *
+     * <p> Every dropped value is requested again from the source so that the
+     * sink still gets as many values as it asked for.
+     */
+    default Stream<T> filter(Function<? super T, Boolean> predicate) {
+        return sink -> subscribe(new StreamStage<T, T>(sink) {
+            @Override
+            public void onNext(T t) {
+                boolean isIncluded;
+                try {
+                    isIncluded = predicate.apply(t);
+                }
+                catch (RuntimeException e) {
+                    fail(e);
+                    return;
+                }
+                if (isIncluded) {
+                    emit(t);
+                }
+                else {
+                    request(1);
+                }
+            }
+        });
+    }
+
+    /**
+     * Completes after the first {@code n} values and cancels the rest.
+     *
+     * <p> Never requests more than {@code n} values from the source.
+     */
+    default Stream<T> take(long n) {
+        if (n < 1) {
+            return empty();
+        }
+        return sink -> subscribe(new StreamStage<T, T>(sink) {
+            final AtomicLong requested = new AtomicLong(0);
+            long remaining = n;
+
+            @Override
+            public void request(long k) {
+                while (true) {
+                    long current = requested.get();
+                    if (current >= n || k <= 0) {
+                        return;
+                    }
+                    long next = current + Math.min(k, n - current);
+                    if (requested.compareAndSet(current, next)) {
+                        super.request(next - current);
+                        return;
+                    }
+                }
+            }
+
+            @Override
+            public void onNext(T t) {
+                remaining -= 1;
+                emit(t);
+                if (remaining == 0) {
+                    finish();
+                }
+            }
+        });
+    }
+
+    /**
+     * Reduces the stream into a single value.
+     *
+     * <p> Requests everything from the source. The computation fails with
+     * the first error of the stream or of the accumulator.
+     *
+     * @param seed The initial value; also the result of an empty stream
+     * @param <A> The type of the accumulated value
+     */
+    default <A> Try<A> fold(A seed, Accumulator<A, ? super T> f) {
+        return continuation -> {
+            Token token = continuation.token().derive(-1);
+            AtomicBoolean isDone = new AtomicBoolean(false);
+            subscribe(new Sink<T>() {
+                A accumulated = seed;
+
+                @Override
+                public void onNext(T t) {
+                    if (isDone.get()) {
+                        return;
+                    }
+                    try {
+                        accumulated = f.apply(accumulated, t);
+                    }
+                    catch (RuntimeException e) {
+                        if (!isDone.getAndSet(true)) {
+                            token.detach();
+                            token.cancel();
+                            continuation.error(e);
+                        }
+                    }
+                }
+
+                @Override
+                public void onError(@NonNull Throwable t) {
+                    if (!isDone.getAndSet(true)) {
+                        token.detach();
+                        continuation.error(t);
+                    }
+                }
+
+                @Override
+                public void onComplete() {
+                    if (!isDone.getAndSet(true)) {
+                        token.detach();
+                        continuation.ok(accumulated);
+                    }
+                }
+
+                @Override
+                public Token token() {
+                    return token;
+                }
+            });
+        };
+    }
+
+    /**
+     * Collects every value in order.
+     */
+    default Try<List<T>> toList() {
+        // a new list for every select
+        return continuation -> this.<List<T>>fold(new ArrayList<>(), (list, t) -> {
+            list.add(t);
+            return list;
+        }).map(Collections::unmodifiableList).select(continuation);
+    }
+
+    /**
+     * Like {@link Try#pipe(Function)}, for stream transformers.
+     *
+     * @param <U> The type of the values of the decorator
+     * @param <R> The actual type of the decorator
+     * @see ph.codeia.altlive.transform.Retry#streamUntil(int) for an example
+     * of a stream transformer.
+     */
+    default <U, R extends Stream<U>> R pipe(Function<Stream<T>, R> transformer) {
+        return transformer.apply(this);
+    }
+
+    /**
+     * A stream that completes without producing anything.
+     *
+     * @param <T> The type of the values
+     */
+    static <T> Stream<T> empty() {
+        return from(Collections.<T>emptyList());
+    }
+
+    /**
+     * A stream that fails immediately.
+     *
+     * @param <T> The type of the values
+     * @throws NullPointerException when given a null Throwable
+     */
+    static <T> Stream<T> raise(Throwable t) {
+        if (t == null) {
+            throw new NullPointerException("Error shouldn't be null");
+        }
+        return sink -> {
+            sink.onStart(Demand.NONE);
+            sink.onError(t);
+        };
+    }
+
+    /**
+     * A stream of the given values.
+     *
+     * @param <T> The type of the values
+     */
+    @SafeVarargs
+    static <T> Stream<T> of(T... items) {
+        return from(Arrays.asList(items));
+    }
+
+    /**
+     * A stream of the items of a sequence.
+     *
+     * <p> The sequence is iterated lazily, only as far as requested, and
+     * again from the start for every subscription.
+     *
+     * @param <T> The type of the values
+     */
+    static <T> Stream<T> from(Iterable<? extends T> items) {
+        return new Iteration<>(items);
+    }
+
+    /**
+     * A stream of the single result of a computation.
+     *
+     * <p> The computation is not started until a value is requested.
+     *
+     * @param <T> The type of the value
+     */
+    static <T> Stream<T> single(Try<T> source) {
+        return iterate(source, t -> null);
+    }
+
+    /**
+     * A stream of computations where each one is derived from the result of
+     * the previous one, e.g. the pages of a paginated API.
+     *
+     * <p> A computation is only started when a value is requested, and only
+     * one runs at a time. The stream fails when any of them fails.
+     *
+     * @param first The first computation
+     * @param next Returns the computation that follows a result, or null to
+     *             complete the stream.
+     * @param <T> The type of the values
+     */
+    static <T> Stream<T> iterate(
+            Try<T> first,
+            Function<? super T, ? extends Try<T>> next
+    ) {
+        return new Unfold<>(first, next);
+    }
+}
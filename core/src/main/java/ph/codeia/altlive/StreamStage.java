@@ -0,0 +1,97 @@
+package ph.codeia.altlive;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import androidx.annotation.NonNull;
+
+/**
+ * Base of the operators of {@link Stream} that sit between a source and a
+ * sink.
+ *
+ * <p> Passes the demand of the sink to the source as is and gives the source
+ * a token derived from the sink's so that the operator can cancel the source
+ * without cancelling the sink.
+ *
+ * @param <T> The type of the values received from the source
+ * @param <U> The type of the values sent to the sink
+ */
+abstract class StreamStage<T, U> implements Stream.Sink<T>, Stream.Demand {
+    private final Stream.Sink<? super U> downstream;
+    private final Token token;
+    private volatile Stream.Demand upstream = Stream.Demand.NONE;
+    private boolean isDone = false;
+
+    StreamStage(Stream.Sink<? super U> downstream) {
+        this.downstream = downstream;
+        this.token = downstream.token().derive(-1);
+    }
+
+    @Override
+    public void onStart(Stream.Demand demand) {
+        upstream = demand;
+        downstream.onStart(this);
+    }
+
+    @Override
+    public void request(long n) {
+        upstream.request(n);
+    }
+
+    @Override
+    public void onError(@NonNull Throwable t) {
+        if (!isDone) {
+            isDone = true;
+            token.detach();
+            downstream.onError(t);
+        }
+    }
+
+    @Override
+    public void onComplete() {
+        if (!isDone) {
+            isDone = true;
+            token.detach();
+            downstream.onComplete();
+        }
+    }
+
+    @Override
+    public Token token() {
+        return token;
+    }
+
+    /**
+     * Sends a value to the sink unless the stage has already terminated.
+     */
+    void emit(U u) {
+        if (!isDone) {
+            downstream.onNext(u);
+        }
+    }
+
+    /**
+     * Cancels the source and fails the sink.
+     */
+    void fail(Throwable t) {
+        if (!isDone) {
+            isDone = true;
+            token.detach();
+            token.cancel();
+            downstream.onError(t);
+        }
+    }
+
+    /**
+     * Cancels the source and completes the sink.
+     */
+    void finish() {
+        if (!isDone) {
+            isDone = true;
+            token.detach();
+            token.cancel();
+            downstream.onComplete();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package ph.codeia.altlive;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admits the jobs of a {@link LiveTask} according to a
+ * {@link LiveTask.Policy}.
+ *
+ * <p> A job is run as soon as a slot is free. Otherwise it waits in the queue
+ * or is turned away, depending on the policy. A job must call
+ * {@link #release()} exactly once when it completes or is cancelled. Queued
+ * jobs are started by the thread that releases a slot, one thread at a time,
+ * so that synchronous jobs do not recurse.
+ *
+ * @param <J> The type of the jobs
+ */
+class TaskQueue<J extends Runnable> {
+    private final LiveTask.Policy policy;
+    private final ArrayDeque<J> pending = new ArrayDeque<>();
+    private final AtomicInteger wip = new AtomicInteger(0);
+    private final AtomicLong rejected = new AtomicLong(0);
+    private int running = 0;
+    private int peak = 0;
+
+    TaskQueue(LiveTask.Policy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Queues a job and runs the jobs that fit in the free slots.
+     *
+     * @return the job that was turned away, which is either the given one or
+     * the pending one that it replaced; null if every job was kept.
+     */
+    J offer(J job) {
+        J turnedAway = null;
+        synchronized (this) {
+            boolean isFull = running + pending.size() >= policy.maxRunning;
+            if (isFull && policy.overflow == LiveTask.Policy.Overflow.DROP) {
+                turnedAway = job;
+            }
+            else {
+                if (isFull
+                        && policy.overflow == LiveTask.Policy.Overflow.LATEST
+                        && !pending.isEmpty()) {
+                    turnedAway = pending.pollLast();
+                }
+                pending.offer(job);
+                // the jobs that fit in the free slots are about to run
+                peak = Math.max(peak, running + pending.size() - policy.maxRunning);
+            }
+        }
+        if (turnedAway != null) {
+            rejected.incrementAndGet();
+        }
+        drain();
+        return turnedAway;
+    }
+
+    /**
+     * Takes a job off the queue before it runs.
+     *
+     * @return false if the job is not waiting because it has started or was
+     * turned away.
+     */
+    synchronized boolean remove(J job) {
+        return pending.remove(job);
+    }
+
+    /**
+     * Takes every waiting job off the queue.
+     *
+     * @return the jobs that were waiting, in order.
+     */
+    synchronized List<J> clear() {
+        List<J> removed = new ArrayList<>(pending);
+        pending.clear();
+        return removed;
+    }
+
+    void release() {
+        synchronized (this) {
+            running -= 1;
+        }
+        drain();
+    }
+
+    synchronized int pending() {
+        return pending.size();
+    }
+
+    synchronized int peakPending() {
+        return peak;
+    }
+
+    long rejected() {
+        return rejected.get();
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        RuntimeException error = null;
+        int missed = 1;
+        do {
+            while (true) {
+                J next;
+                synchronized (this) {
+                    if (running >= policy.maxRunning || pending.isEmpty()) {
+                        break;
+                    }
+                    next = pending.poll();
+                    running += 1;
+                }
+                try {
+                    next.run();
+                }
+                catch (RuntimeException e) {
+                    // keep draining so that the queue isn't stuck; the
+                    // error is rethrown once the queue is drained
+                    if (error == null) {
+                        error = e;
+                    }
+                }
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+        if (error != null) {
+            throw error;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package ph.codeia.altlive;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A cancellation signal that flows through {@link Try#select(Try.Case)}.
+ *
+ * <p> A token is carried by the continuation (see {@link Try.Case#token()}).
+ * Transformers that hold on to resources such as queued runnables or
+ * scheduled futures register a listener with the token of the continuation
+ * they were given and release those resources when it is cancelled. A
+ * transformer that wraps a continuation should pass the token along by
+ * overriding {@code token()} in the wrapper, otherwise the upstream stages
+ * will never learn about the cancellation.
+ *
+ * <p> Listeners are called at most once, in the thread that calls
+ * {@link #cancel()}. A listener registered after the token was cancelled is
+ * called immediately in the registering thread.
+ *
+ * <p> A token can also carry a deadline. {@link #derive(long)} creates a
+ * token that is cancelled along with its parent and whose deadline is the
+ * earlier of the parent's and the given timeout; {@code TimeLimit} passes
+ * such a token upstream. Stages that wait (e.g. {@code Retry},
+ * {@code Delay}, {@code Execute}) check {@link #remainingMillis()} and give
+ * up early instead of starting work that cannot finish in time. A deadline
+ * does not cancel the token by itself.
+ */
+public class Token {
+
+    /**
+     * The default token of a continuation. Cannot be cancelled.
+     */
+    public static final Token NONE = new Token() {
+        @Override
+        public void cancel() {
+        }
+
+        @Override
+        public Registration onCancel(Runnable listener) {
+            return Registration.NOOP;
+        }
+    };
+
+    /**
+     * Handle to a listener registered with {@link #onCancel(Runnable)}.
+     */
+    public interface Registration {
+        Registration NOOP = () -> {};
+
+        /**
+         * Unregisters the listener.
+         *
+         * <p> Should be called when the resource it guards is released
+         * normally so that long-lived tokens do not accumulate listeners.
+         */
+        void remove();
+    }
+
+    private final Set<Runnable> listeners = new LinkedHashSet<>();
+    private final boolean hasDeadline;
+    private final long deadline;
+    private volatile Registration link = Registration.NOOP;
+    private volatile boolean isCancelled = false;
+
+    public Token() {
+        this(false, 0L);
+    }
+
+    private Token(boolean hasDeadline, long deadline) {
+        this.hasDeadline = hasDeadline;
+        this.deadline = deadline;
+    }
+
+    public boolean isCancelled() {
+        return isCancelled;
+    }
+
+    /**
+     * Creates a token that is cancelled when this token is cancelled.
+     *
+     * <p> The new token has a deadline {@code timeoutMillis} from now, or
+     * this token's deadline if that is earlier. A negative timeout only
+     * inherits this token's deadline. Call {@link #detach()} on the new token
+     * when it is no longer needed so that this token does not keep it alive.
+     */
+    public Token derive(long timeoutMillis) {
+        Token child;
+        if (timeoutMillis < 0) {
+            child = new Token(hasDeadline, deadline);
+        }
+        else {
+            long candidate = Clock.current().nanos() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            boolean isInherited = hasDeadline && deadline - candidate < 0;
+            child = new Token(true, isInherited ? deadline : candidate);
+        }
+        child.link = onCancel(child::cancel);
+        return child;
+    }
+
+    /**
+     * Stops following the cancellation of the token this was derived from.
+     */
+    public void detach() {
+        link.remove();
+    }
+
+    public boolean hasDeadline() {
+        return hasDeadline;
+    }
+
+    /**
+     * The number of millis left until the deadline, which could be zero or
+     * negative if it has passed. {@code Long.MAX_VALUE} if there is none.
+     */
+    public long remainingMillis() {
+        if (!hasDeadline) {
+            return Long.MAX_VALUE;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(deadline - Clock.current().nanos());
+    }
+
+    /**
+     * Returns true if this token has a deadline and it has passed.
+     */
+    public boolean isExpired() {
+        return hasDeadline && deadline - Clock.current().nanos() <= 0;
+    }
+
+    /**
+     * Cancels the token and calls every registered listener.
+     *
+     * <p> Does nothing if already cancelled.
+     */
+    public void cancel() {
+        Runnable[] pending;
+        synchronized (this) {
+            if (isCancelled) {
+                return;
+            }
+            isCancelled = true;
+            pending = listeners.toArray(new Runnable[0]);
+            listeners.clear();
+        }
+        for (Runnable listener : pending) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Registers a listener that will be called when this token is cancelled.
+     *
+     * @return a handle to unregister the listener.
+     */
+    public Registration onCancel(Runnable listener) {
+        // wrapped so that registering the same runnable twice is not merged
+        Runnable entry = listener::run;
+        synchronized (this) {
+            if (!isCancelled) {
+                listeners.add(entry);
+                return () -> {
+                    synchronized (Token.this) {
+                        listeners.remove(entry);
+                    }
+                };
+            }
+        }
+        listener.run();
+        return Registration.NOOP;
+    }
+}
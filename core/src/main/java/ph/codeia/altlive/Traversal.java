@@ -0,0 +1,152 @@
+package ph.codeia.altlive;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Runs a function over a sequence of inputs with bounded parallelism.
+ *
+ * @param <I> The type of the inputs
+ * @param <O> The type of the results
+ * @see Try#traverse(Iterable, Function, int)
+ */
+class Traversal<I, O> implements Try<List<O>> {
+    private final Iterable<? extends I> items;
+    private final Function<? super I, ? extends Try<? extends O>> f;
+    private final int parallelism;
+    private final boolean failFast;
+
+    Traversal(
+            Iterable<? extends I> items,
+            Function<? super I, ? extends Try<? extends O>> f,
+            int parallelism,
+            boolean failFast
+    ) {
+        this.items = items;
+        this.f = f;
+        this.parallelism = parallelism;
+        this.failFast = failFast;
+    }
+
+    @Override
+    public void select(Case<? super List<O>> continuation) {
+        new Run(continuation).drain();
+    }
+
+    private class Run {
+        final Case<? super List<O>> continuation;
+        final Iterator<? extends I> queue = items.iterator();
+        final List<O> results = new ArrayList<>();
+        // guards against unbounded recursion when the computations complete
+        // synchronously; only one thread hands out items at a time.
+        final AtomicInteger wip = new AtomicInteger(0);
+        int active = 0;
+        Throwable error;
+        boolean isDone = false;
+
+        Run(Case<? super List<O>> continuation) {
+            this.continuation = continuation;
+        }
+
+        void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                boolean isComplete = false;
+                while (true) {
+                    int index;
+                    I item;
+                    synchronized (this) {
+                        if (isDone || continuation.token().isCancelled()) {
+                            return;
+                        }
+                        boolean isSkipping = failFast && error != null;
+                        boolean isFull = parallelism > 0 && active >= parallelism;
+                        if (isSkipping || isFull || !queue.hasNext()) {
+                            if (active == 0) {
+                                isDone = true;
+                                isComplete = true;
+                            }
+                            break;
+                        }
+                        index = results.size();
+                        item = queue.next();
+                        results.add(null);
+                        active += 1;
+                    }
+                    launch(index, item);
+                }
+                if (isComplete) {
+                    finish();
+                    return;
+                }
+            } while (wip.decrementAndGet() != 0);
+        }
+
+        void launch(int index, I item) {
+            try {
+                f.apply(item).select(new Case<O>() {
+                    @Override
+                    public void ok(O o) {
+                        synchronized (Run.this) {
+                            results.set(index, o);
+                            active -= 1;
+                        }
+                        drain();
+                    }
+
+                    @Override
+                    public void error(@NonNull Throwable t) {
+                        fail(t);
+                    }
+
+                    @Override
+                    public Token token() {
+                        return continuation.token();
+                    }
+                });
+            }
+            catch (RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        void fail(Throwable t) {
+            boolean isFirst;
+            synchronized (this) {
+                isFirst = error == null;
+                if (isFirst) {
+                    error = t;
+                }
+                active -= 1;
+                if (failFast && isFirst) {
+                    isDone = true;
+                }
+            }
+            if (failFast && isFirst) {
+                continuation.error(t);
+            }
+            else {
+                drain();
+            }
+        }
+
+        void finish() {
+            if (error == null) {
+                continuation.ok(results);
+            }
+            else {
+                continuation.error(error);
+            }
+        }
+    }
+}
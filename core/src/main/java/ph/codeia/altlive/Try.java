@@ -4,6 +4,7 @@ package ph.codeia.altlive;
  * This file is a part of the AltLiveData project.
  */
 
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
@@ -113,6 +114,11 @@ public interface Try<T> {
             public void error(@NonNull Throwable t) {
                 continuation.error(t);
             }
+
+            @Override
+            public Token token() {
+                return continuation.token();
+            }
         });
     }
 
@@ -139,6 +145,11 @@ public interface Try<T> {
             public void error(@NonNull Throwable t) {
                 continuation.error(t);
             }
+
+            @Override
+            public Token token() {
+                return continuation.token();
+            }
         });
     }
 
@@ -212,6 +223,47 @@ public interface Try<T> {
         };
     }
 
+    /**
+     * Applies a computation to every item of a sequence, running at most
+     * {@code parallelism} of them at a time.
+     *
+     * <p> Items are handed out in iteration order as soon as a slot frees up.
+     * The results are collected in the same order as the items regardless of
+     * the order of completion. When one of the computations fails, the rest of
+     * the sequence is skipped and the error is raised immediately; results of
+     * the computations that are still in flight are discarded.
+     *
+     * @param items The inputs. Iterated lazily, one item per free slot.
+     * @param f Produces the computation for each item.
+     * @param parallelism The maximum number of computations in flight. All
+     *                    items are started at once when this is less than 1.
+     * @param <I> The type of the inputs
+     * @param <O> The type of the results
+     */
+    static <I, O> Try<List<O>> traverse(
+            Iterable<? extends I> items,
+            Function<? super I, ? extends Try<? extends O>> f,
+            int parallelism
+    ) {
+        return traverse(items, f, parallelism, true);
+    }
+
+    /**
+     * Applies a computation to every item of a sequence with bounded parallelism.
+     *
+     * @param failFast When false, every item is still computed after a failure
+     *                 and the first error is raised once they are all done.
+     * @see #traverse(Iterable, Function, int)
+     */
+    static <I, O> Try<List<O>> traverse(
+            Iterable<? extends I> items,
+            Function<? super I, ? extends Try<? extends O>> f,
+            int parallelism,
+            boolean failFast
+    ) {
+        return new Traversal<>(items, f, parallelism, failFast);
+    }
+
     /**
      * The "pattern" interface used to safely unwrap the result of the computation.
      *
@@ -241,6 +293,16 @@ public interface Try<T> {
          */
         void error(@NonNull Throwable t);
 
+        /**
+         * The cancellation signal of the consumer of this computation.
+         *
+         * <p> Wrappers must forward this to the continuation they wrap.
+         * Defaults to {@link Token#NONE}.
+         */
+        default Token token() {
+            return Token.NONE;
+        }
+
         @Override
         default void accept(@Nullable Try<? extends T> result) {
             if (result != null) {
@@ -0,0 +1,141 @@
+package ph.codeia.altlive;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Ties the computations selected through it to a single owner.
+ *
+ * <p> Computations are attached to a scope with {@link #track(Try)}, typically
+ * as {@code computation.pipe(scope::track)}. Every select of a tracked object
+ * gets a {@link Token} that is cancelled when the scope is closed, so closing
+ * the scope (e.g. in {@code ViewModel#onCleared()}) releases all the queued
+ * runnables and timers of its outstanding children in one call. Results that
+ * arrive after the scope is closed (or after the consumer's own token is
+ * cancelled) are dropped, and tracked objects selected after the scope is
+ * closed are not started at all.
+ */
+public class TryScope {
+    private final Token token = new Token();
+    private final AtomicInteger outstanding = new AtomicInteger(0);
+    private final AtomicLong started = new AtomicLong(0);
+    private final AtomicLong completed = new AtomicLong(0);
+    private final AtomicLong abandoned = new AtomicLong(0);
+
+    /**
+     * Attaches a computation to this scope.
+     *
+     * @param <T> The type of the value being computed
+     */
+    public <T> Try<T> track(Try<T> source) {
+        return continuation -> {
+            if (token.isCancelled()) {
+                return;
+            }
+            source.select(new Child<>(continuation));
+        };
+    }
+
+    /**
+     * Cancels every outstanding computation and prevents new ones from
+     * starting.
+     *
+     * <p> Does nothing when called again.
+     */
+    public void close() {
+        token.cancel();
+    }
+
+    public boolean isClosed() {
+        return token.isCancelled();
+    }
+
+    /**
+     * The number of selects that have started but have not produced a result.
+     */
+    public int outstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * The number of selects started through this scope.
+     */
+    public long started() {
+        return started.get();
+    }
+
+    /**
+     * The number of selects whose result was delivered.
+     */
+    public long completed() {
+        return completed.get();
+    }
+
+    /**
+     * The number of selects that were cancelled before producing a result.
+     */
+    public long abandoned() {
+        return abandoned.get();
+    }
+
+    private class Child<T> implements Try.Case<T> {
+        final Try.Case<? super T> continuation;
+        final Token child = new Token();
+        final Token.Registration own;
+        final Token.Registration upstream;
+        boolean isSettled = false;
+
+        Child(Try.Case<? super T> continuation) {
+            this.continuation = continuation;
+            outstanding.incrementAndGet();
+            started.incrementAndGet();
+            own = token.onCancel(child::cancel);
+            upstream = continuation.token().onCancel(child::cancel);
+            // cancelled children might never call back, so they are settled
+            // as soon as they are cancelled. Registered last so that the
+            // registrations above are set even if it runs right away.
+            child.onCancel(this::settle);
+        }
+
+        @Override
+        public void ok(T t) {
+            if (settle()) {
+                continuation.ok(t);
+            }
+        }
+
+        @Override
+        public void error(@NonNull Throwable t) {
+            if (settle()) {
+                continuation.error(t);
+            }
+        }
+
+        @Override
+        public Token token() {
+            return child;
+        }
+
+        synchronized boolean settle() {
+            if (isSettled) {
+                return false;
+            }
+            isSettled = true;
+            outstanding.decrementAndGet();
+            own.remove();
+            upstream.remove();
+            if (child.isCancelled()) {
+                abandoned.incrementAndGet();
+                return false;
+            }
+            completed.incrementAndGet();
+            return true;
+        }
+    }
+}
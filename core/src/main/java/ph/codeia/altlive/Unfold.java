@@ -0,0 +1,137 @@
+package ph.codeia.altlive;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Runs a chain of computations one at a time, each when a value is requested.
+ *
+ * @param <T> The type of the values
+ * @see Stream#iterate(Try, Function)
+ */
+class Unfold<T> implements Stream<T> {
+    private final Try<T> first;
+    private final Function<? super T, ? extends Try<T>> next;
+
+    Unfold(Try<T> first, Function<? super T, ? extends Try<T>> next) {
+        this.first = first;
+        this.next = next;
+    }
+
+    @Override
+    public void subscribe(Sink<? super T> sink) {
+        Run run = new Run(sink);
+        sink.onStart(run);
+    }
+
+    private class Run implements Demand, Try.Case<T> {
+        final Sink<? super T> sink;
+        final AtomicLong requested = new AtomicLong(0);
+        // guards against unbounded recursion when the computations complete
+        // synchronously; only one thread starts computations at a time.
+        final AtomicInteger wip = new AtomicInteger(0);
+        volatile Try<T> step = first;
+        volatile boolean isBusy = false;
+        volatile boolean isDone = false;
+        volatile Throwable badRequest;
+
+        Run(Sink<? super T> sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                badRequest = new IllegalArgumentException("Must request at least 1");
+            }
+            else while (true) {
+                long current = requested.get();
+                long sum = current + n < 0 ? Long.MAX_VALUE : current + n;
+                if (requested.compareAndSet(current, sum)) {
+                    break;
+                }
+            }
+            drain();
+        }
+
+        void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                if (!isDone && !isBusy) {
+                    Throwable error = badRequest;
+                    if (error != null) {
+                        isDone = true;
+                        sink.onError(error);
+                    }
+                    else if (sink.token().isCancelled()) {
+                        isDone = true;
+                    }
+                    else if (requested.get() > 0) {
+                        isBusy = true;
+                        try {
+                            step.select(this);
+                        }
+                        catch (RuntimeException e) {
+                            error(e);
+                        }
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        @Override
+        public void ok(T t) {
+            if (isDone) {
+                return;
+            }
+            if (sink.token().isCancelled()) {
+                isDone = true;
+                return;
+            }
+            if (requested.get() != Long.MAX_VALUE) {
+                requested.decrementAndGet();
+            }
+            sink.onNext(t);
+            Try<T> following;
+            try {
+                following = next.apply(t);
+            }
+            catch (RuntimeException e) {
+                isDone = true;
+                sink.onError(e);
+                return;
+            }
+            if (following == null) {
+                isDone = true;
+                sink.onComplete();
+                return;
+            }
+            step = following;
+            isBusy = false;
+            drain();
+        }
+
+        @Override
+        public void error(@NonNull Throwable t) {
+            if (!isDone) {
+                isDone = true;
+                sink.onError(t);
+            }
+        }
+
+        @Override
+        public Token token() {
+            return sink.token();
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package ph.codeia.altlive.transform;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import androidx.annotation.NonNull;
+import ph.codeia.altlive.Function;
+import ph.codeia.altlive.Token;
+import ph.codeia.altlive.Try;
+
+/**
+ * Coalesces single-key loads into batched calls.
+ *
+ * <p> Every select of {@code load(key)} joins the pending batch. The batch is
+ * dispatched to the batch function at the end of the current tick, or when
+ * the window that started with its first key elapses if a window is set, or
+ * immediately in the selecting thread when it reaches the maximum size. The
+ * tick is a task of the executor that the loads are made in, like one pass of
+ * the main thread looper: when the first key joins, a dispatch is posted to
+ * that executor, so it only runs after the task making the loads returns and
+ * every load made by that task is in the batch. Keys are deduplicated within
+ * a batch and every caller of a key receives the same result. A key that is
+ * missing from the returned map fails with a {@link NoSuchElementException};
+ * an error from the batch function fails every key in the batch.
+ *
+ * <p> A select that is cancelled before its batch is dispatched is removed
+ * from it. The batch itself is cancelled when every caller in it is cancelled.
+ *
+ * <p> Use it as the producer of a {@link ph.codeia.altlive.LiveTask} like so:
+ * {@code new LiveTask<>(BatchLoader.by(main, api::fetchAll).build()::apply)}.
+ *
+ * @param <K> The type of the keys
+ * @param <V> The type of the values
+ */
+public class BatchLoader<K, V> implements Function<K, Try<V>> {
+
+    /**
+     * Mutable builder to configure a {@link BatchLoader} instance.
+     */
+    public static class Builder<K, V> {
+        private final Executor tick;
+        private final Function<? super List<K>, ? extends Try<? extends Map<K, ? extends V>>> batch;
+        private long window = 0L;
+        private int maxBatchSize = 100;
+
+        private Builder(
+                Executor tick,
+                Function<? super List<K>, ? extends Try<? extends Map<K, ? extends V>>> batch
+        ) {
+            this.tick = tick;
+            this.batch = batch;
+        }
+
+        /**
+         * Sets how long to wait for more keys after the first key of a batch.
+         *
+         * <p> Defaults to 0, which dispatches at the end of the current tick
+         * of the executor passed to {@link #by(Executor, Function)}. A
+         * positive window is timed by the shared scheduler and dispatches from
+         * its thread.
+         */
+        public Builder<K, V> window(long millis) {
+            this.window = millis;
+            return this;
+        }
+
+        public Builder<K, V> window(long duration, TimeUnit units) {
+            return window(units.toMillis(duration));
+        }
+
+        /**
+         * Sets the maximum number of distinct keys in a batch.
+         *
+         * <p> Defaults to 100.
+         */
+        public Builder<K, V> maxBatchSize(int size) {
+            if (size < 1) {
+                throw new IllegalArgumentException("Batch size must be positive");
+            }
+            this.maxBatchSize = size;
+            return this;
+        }
+
+        public BatchLoader<K, V> build() {
+            return new BatchLoader<>(this);
+        }
+    }
+
+    /**
+     * @param caller The executor that the loads are made in. The batch is
+     *               dispatched by a task posted to it, which runs once the
+     *               task making the loads returns, so it must run its tasks
+     *               one at a time in order, like the main thread of an
+     *               Android app.
+     * @param batch Loads the values of a list of distinct keys.
+     */
+    public static <K, V> Builder<K, V> by(
+            Executor caller,
+            Function<? super List<K>, ? extends Try<? extends Map<K, ? extends V>>> batch
+    ) {
+        if (caller == null) {
+            throw new NullPointerException("Caller shouldn't be null");
+        }
+        return new Builder<>(caller, batch);
+    }
+
+    private final Function<? super List<K>, ? extends Try<? extends Map<K, ? extends V>>> batchFn;
+    private final long window;
+    private final Executor tick;
+    private final int maxBatchSize;
+    private final AtomicLong loads = new AtomicLong(0);
+    private final AtomicLong batches = new AtomicLong(0);
+    private Batch pending;
+
+    private BatchLoader(Builder<K, V> builder) {
+        batchFn = builder.batch;
+        window = builder.window;
+        tick = builder.tick;
+        maxBatchSize = builder.maxBatchSize;
+    }
+
+    /**
+     * Same as {@link #apply(Object)}.
+     */
+    public Try<V> load(K key) {
+        return apply(key);
+    }
+
+    @Override
+    public Try<V> apply(K key) {
+        return continuation -> {
+            loads.incrementAndGet();
+            Batch full = null;
+            Runnable endOfTick = null;
+            Batch batch;
+            synchronized (this) {
+                if (pending == null) {
+                    pending = new Batch();
+                    Batch fresh = pending;
+                    Runnable flush = () -> {
+                        synchronized (this) {
+                            if (pending != fresh) {
+                                return;
+                            }
+                            pending = null;
+                        }
+                        fresh.dispatch();
+                    };
+                    if (window > 0) {
+                        Delay.scheduler().schedule(flush, window);
+                    }
+                    else {
+                        // posted outside the lock, after the key has joined
+                        endOfTick = flush;
+                    }
+                }
+                batch = pending;
+                batch.add(key, continuation);
+                if (batch.waiters.size() >= maxBatchSize) {
+                    full = batch;
+                    pending = null;
+                }
+            }
+            if (endOfTick != null) {
+                tick.execute(endOfTick);
+            }
+            Token token = continuation.token();
+            if (token != Token.NONE) {
+                Token.Registration registration =
+                        token.onCancel(() -> batch.cancel(key, continuation));
+                batch.onSettle(registration);
+            }
+            if (full != null) {
+                full.dispatch();
+            }
+        };
+    }
+
+    /**
+     * Dispatches the pending batch in the calling thread without waiting for
+     * its window to elapse.
+     */
+    public void dispatch() {
+        Batch batch;
+        synchronized (this) {
+            batch = pending;
+            pending = null;
+        }
+        if (batch != null) {
+            batch.dispatch();
+        }
+    }
+
+    /**
+     * The number of selects of single keys.
+     */
+    public long loads() {
+        return loads.get();
+    }
+
+    /**
+     * The number of calls to the batch function.
+     */
+    public long batches() {
+        return batches.get();
+    }
+
+    private class Batch {
+        final Map<K, List<Try.Case<? super V>>> waiters = new LinkedHashMap<>();
+        final List<Token.Registration> registrations = new ArrayList<>();
+        final Token token = new Token();
+        boolean isDispatched = false;
+        boolean isSettled = false;
+
+        synchronized void add(K key, Try.Case<? super V> continuation) {
+            List<Try.Case<? super V>> cases = waiters.get(key);
+            if (cases == null) {
+                cases = new ArrayList<>();
+                waiters.put(key, cases);
+            }
+            cases.add(continuation);
+        }
+
+        void onSettle(Token.Registration registration) {
+            synchronized (this) {
+                if (!isSettled) {
+                    registrations.add(registration);
+                    return;
+                }
+            }
+            registration.remove();
+        }
+
+        void cancel(K key, Try.Case<? super V> continuation) {
+            boolean isAbandoned;
+            synchronized (this) {
+                List<Try.Case<? super V>> cases = waiters.get(key);
+                if (isSettled || cases == null || !cases.remove(continuation)) {
+                    return;
+                }
+                if (cases.isEmpty() && !isDispatched) {
+                    waiters.remove(key);
+                }
+                isAbandoned = true;
+                for (List<Try.Case<? super V>> each : waiters.values()) {
+                    if (!each.isEmpty()) {
+                        isAbandoned = false;
+                        break;
+                    }
+                }
+            }
+            if (isAbandoned) {
+                token.cancel();
+            }
+        }
+
+        void dispatch() {
+            List<K> keys;
+            synchronized (this) {
+                isDispatched = true;
+                keys = new ArrayList<>(waiters.keySet());
+            }
+            if (keys.isEmpty()) {
+                settle();
+                return;
+            }
+            batches.incrementAndGet();
+            try {
+                batchFn.apply(keys).select(new Try.Case<Map<K, ? extends V>>() {
+                    @Override
+                    public void ok(Map<K, ? extends V> values) {
+                        for (Map.Entry<K, List<Try.Case<? super V>>> e : settle()) {
+                            K key = e.getKey();
+                            if (values != null && values.containsKey(key)) {
+                                V value = values.get(key);
+                                for (Try.Case<? super V> waiter : e.getValue()) {
+                                    waiter.ok(value);
+                                }
+                            }
+                            else {
+                                Throwable missing = new NoSuchElementException(
+                                        "No value for key: " + key);
+                                for (Try.Case<? super V> waiter : e.getValue()) {
+                                    waiter.error(missing);
+                                }
+                            }
+                        }
+                    }
+
+                    @Override
+                    public void error(@NonNull Throwable t) {
+                        for (Map.Entry<K, List<Try.Case<? super V>>> e : settle()) {
+                            for (Try.Case<? super V> waiter : e.getValue()) {
+                                waiter.error(t);
+                            }
+                        }
+                    }
+
+                    @Override
+                    public Token token() {
+                        return token;
+                    }
+                });
+            }
+            catch (RuntimeException t) {
+                for (Map.Entry<K, List<Try.Case<? super V>>> e : settle()) {
+                    for (Try.Case<? super V> waiter : e.getValue()) {
+                        waiter.error(t);
+                    }
+                }
+            }
+        }
+
+        List<Map.Entry<K, List<Try.Case<? super V>>>> settle() {
+            List<Map.Entry<K, List<Try.Case<? super V>>>> done = new ArrayList<>();
+            List<Token.Registration> toRemove;
+            synchronized (this) {
+                if (isSettled) {
+                    return done;
+                }
+                isSettled = true;
+                for (Map.Entry<K, List<Try.Case<? super V>>> e : waiters.entrySet()) {
+                    if (!e.getValue().isEmpty()) {
+                        done.add(e);
+                    }
+                }
+                toRemove = new ArrayList<>(registrations);
+                registrations.clear();
+            }
+            for (Token.Registration registration : toRemove) {
+                registration.remove();
+            }
+            return done;
+        }
+    }
+}
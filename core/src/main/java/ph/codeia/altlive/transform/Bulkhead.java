@@ -0,0 +1,300 @@
+package ph.codeia.altlive.transform;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import androidx.annotation.NonNull;
+import ph.codeia.altlive.Token;
+import ph.codeia.altlive.Try;
+
+/**
+ * Limits the number of computations that are running at the same time.
+ *
+ * <p> One instance is meant to be shared by every computation that uses the
+ * same resource: {@code source.pipe(bulkhead::apply)}. A select takes a slot
+ * and gives it back when the source produces a result or when its token is
+ * cancelled. When there are no free slots, the select waits in a FIFO queue.
+ * It fails with {@link Full} if the queue is full, or with a
+ * {@link TimeoutException} if it waits longer than the queue timeout. The
+ * queued selects are started in the thread that released the slot, one thread
+ * at a time, so that synchronous sources do not recurse.
+ *
+ * <p> A slow endpoint behind a bulkhead can only tie up as many worker threads
+ * as there are slots, leaving the rest of the pool to unrelated work.
+ */
+public class Bulkhead {
+
+    /**
+     * Raised when there are no free slots and the queue is full. Has no stack
+     * trace so that it is cheap to raise under load.
+     */
+    public static class Full extends IllegalStateException {
+        private Full() {
+            super("Too many concurrent calls.");
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    /**
+     * Mutable builder to configure a {@link Bulkhead} instance.
+     */
+    public static class Builder {
+        private final int maxConcurrent;
+        private int maxQueued = 0;
+        private long queueTimeout = -1L;
+
+        private Builder(int maxConcurrent) {
+            this.maxConcurrent = maxConcurrent;
+        }
+
+        /**
+         * Sets the maximum number of selects waiting for a slot and how long
+         * each of them can wait. A negative timeout waits forever.
+         *
+         * <p> By default, nothing is queued.
+         */
+        public Builder queue(int depth, long timeoutMillis) {
+            if (depth < 0) {
+                throw new IllegalArgumentException("Depth must not be negative");
+            }
+            this.maxQueued = depth;
+            this.queueTimeout = timeoutMillis;
+            return this;
+        }
+
+        public Builder queue(int depth, long timeout, TimeUnit units) {
+            return queue(depth, units.toMillis(timeout));
+        }
+
+        public Bulkhead build() {
+            return new Bulkhead(maxConcurrent, maxQueued, queueTimeout);
+        }
+    }
+
+    public static Builder of(int maxConcurrent) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("Must allow at least 1 call");
+        }
+        return new Builder(maxConcurrent);
+    }
+
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final long queueTimeout;
+    private final Queue<Waiter<?>> queue = new ArrayDeque<>();
+    private final AtomicLong rejected = new AtomicLong(0);
+    private final AtomicLong timedOut = new AtomicLong(0);
+    private final AtomicInteger wip = new AtomicInteger(0);
+    private int active = 0;
+
+    private Bulkhead(int maxConcurrent, int maxQueued, long queueTimeout) {
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        this.queueTimeout = queueTimeout;
+    }
+
+    /**
+     * Makes every select of the source take a slot first.
+     *
+     * @param <T> The type of the value being computed
+     */
+    @Transformer
+    public <T> Try<T> apply(Try<T> source) {
+        return continuation -> {
+            Waiter<T> waiter = new Waiter<>(source, continuation);
+            synchronized (this) {
+                if (active < maxConcurrent && queue.isEmpty()) {
+                    active += 1;
+                }
+                else if (queue.size() < maxQueued) {
+                    queue.add(waiter);
+                    waiter.await();
+                    return;
+                }
+                else {
+                    rejected.incrementAndGet();
+                    waiter = null;
+                }
+            }
+            if (waiter == null) {
+                continuation.error(new Full());
+            }
+            else {
+                waiter.run();
+            }
+        };
+    }
+
+    /**
+     * The number of selects holding a slot.
+     */
+    public synchronized int active() {
+        return active;
+    }
+
+    /**
+     * The number of selects waiting for a slot.
+     */
+    public synchronized int queued() {
+        return queue.size();
+    }
+
+    /**
+     * The number of selects that failed because the queue was full.
+     */
+    public long rejected() {
+        return rejected.get();
+    }
+
+    /**
+     * The number of selects that failed because they waited too long.
+     */
+    public long timedOut() {
+        return timedOut.get();
+    }
+
+    private void release() {
+        synchronized (this) {
+            active -= 1;
+        }
+        drain();
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        RuntimeException error = null;
+        int missed = 1;
+        do {
+            while (true) {
+                Waiter<?> next;
+                synchronized (this) {
+                    if (active >= maxConcurrent || queue.isEmpty()) {
+                        break;
+                    }
+                    next = queue.poll();
+                    active += 1;
+                }
+                try {
+                    next.run();
+                }
+                catch (RuntimeException e) {
+                    // keep draining so that the queue isn't stuck; the
+                    // error is rethrown once the queue is drained
+                    if (error == null) {
+                        error = e;
+                    }
+                }
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private class Waiter<T> implements Try.Case<T> {
+        final Try<T> source;
+        final Try.Case<? super T> continuation;
+        final AtomicBoolean isReleased = new AtomicBoolean(false);
+        volatile Token.Registration registration = Token.Registration.NOOP;
+        Scheduler.Handle timeout;
+        boolean isStarted = false;
+
+        Waiter(Try<T> source, Try.Case<? super T> continuation) {
+            this.source = source;
+            this.continuation = continuation;
+        }
+
+        /**
+         * Called with the bulkhead lock held.
+         */
+        void await() {
+            Token token = continuation.token();
+            if (queueTimeout >= 0) {
+                timeout = Delay.schedule(token, () -> {
+                    if (dequeue()) {
+                        timedOut.incrementAndGet();
+                        continuation.error(new TimeoutException());
+                    }
+                }, queueTimeout);
+            }
+            registration = token.onCancel(this::dequeue);
+        }
+
+        boolean dequeue() {
+            synchronized (Bulkhead.this) {
+                if (isStarted || !queue.remove(this)) {
+                    return false;
+                }
+            }
+            registration.remove();
+            return true;
+        }
+
+        void run() {
+            synchronized (Bulkhead.this) {
+                isStarted = true;
+            }
+            if (timeout != null) {
+                timeout.cancel();
+            }
+            registration.remove();
+            Token token = continuation.token();
+            if (token.isCancelled()) {
+                settle();
+                return;
+            }
+            // a cancelled source might never call back
+            registration = token.onCancel(this::settle);
+            try {
+                source.select(this);
+            }
+            catch (RuntimeException e) {
+                error(e);
+            }
+        }
+
+        boolean settle() {
+            if (isReleased.getAndSet(true)) {
+                return false;
+            }
+            registration.remove();
+            release();
+            return true;
+        }
+
+        @Override
+        public void ok(T t) {
+            if (settle()) {
+                continuation.ok(t);
+            }
+        }
+
+        @Override
+        public void error(@NonNull Throwable t) {
+            if (settle()) {
+                continuation.error(t);
+            }
+        }
+
+        @Override
+        public Token token() {
+            return continuation.token();
+        }
+    }
+}
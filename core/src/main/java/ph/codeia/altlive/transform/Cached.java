@@ -0,0 +1,603 @@
+package ph.codeia.altlive.transform;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import androidx.annotation.NonNull;
+import ph.codeia.altlive.Function;
+import ph.codeia.altlive.Try;
+
+/**
+ * A bounded, keyed result cache for {@code Function<I, Try<O>>} producers.
+ *
+ * <p> This is the keyed counterpart of {@link Memoize}. The result of the
+ * producer is cached per key and concurrent selects of the same missing key
+ * share one computation. Lookups of cached keys only read a concurrent map and
+ * append to a lossy buffer, so they do not take a lock.
+ *
+ * <p> The cache is bounded by the total weight of its entries. Eviction uses a
+ * W-TinyLFU policy: new entries go to a small LRU window and must have been
+ * accessed more often than the least recently used entry of the main space
+ * (as estimated by a {@link FrequencySketch}) in order to be admitted. The
+ * main space is a segmented LRU with probation and protected queues.
+ *
+ * <p> Use it as the producer of a {@link ph.codeia.altlive.LiveTask} like so:
+ * {@code new LiveTask<>(Cached.by(this::search).capacity(100).build()::apply)}.
+ *
+ * @param <I> The type of the keys
+ * @param <O> The type of the cached values
+ */
+public class Cached<I, O> implements Function<I, Try<O>> {
+
+    /**
+     * Mutable builder to configure a {@link Cached} instance.
+     */
+    public static class Builder<I, O> {
+        private final Function<? super I, ? extends Try<? extends O>> producer;
+        private long capacity = 1024;
+        private Function<? super O, Integer> weigher = o -> 1;
+        private long ttl = -1L;
+        private long errorTtl = 0L;
+        private Scheduler scheduler;
+
+        private Builder(Function<? super I, ? extends Try<? extends O>> producer) {
+            this.producer = producer;
+        }
+
+        /**
+         * Sets the maximum total weight of the entries.
+         *
+         * <p> Defaults to 1024. With the default weigher this is the maximum
+         * number of entries.
+         */
+        public Builder<I, O> capacity(long maxWeight) {
+            if (maxWeight < 1) {
+                throw new IllegalArgumentException("Capacity must be positive");
+            }
+            this.capacity = maxWeight;
+            return this;
+        }
+
+        /**
+         * Sets the function that computes the weight of a value.
+         *
+         * <p> Every entry weighs 1 by default. Cached errors always weigh 1.
+         */
+        public Builder<I, O> weigh(Function<? super O, Integer> weigher) {
+            this.weigher = weigher;
+            return this;
+        }
+
+        /**
+         * Sets the time-to-live of successful results and errors, counted from
+         * the time each entry is loaded.
+         *
+         * <p> A TTL of 0 disables caching of that branch, while a negative TTL
+         * never expires. By default, values never expire and errors are not
+         * cached.
+         */
+        public Builder<I, O> expireAfter(long ttl, long errorTtl) {
+            this.ttl = ttl;
+            this.errorTtl = errorTtl;
+            return this;
+        }
+
+        public Builder<I, O> expireAfter(long ttl, long errorTtl, TimeUnit units) {
+            return expireAfter(units.toMillis(ttl), units.toMillis(errorTtl));
+        }
+
+        /**
+         * Sets the clock that the TTLs are measured with.
+         *
+         * <p> Defaults to the scheduler installed with
+         * {@link Delay#setScheduler(Scheduler)}.
+         */
+        public Builder<I, O> scheduler(Scheduler scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        public Cached<I, O> build() {
+            return new Cached<>(this);
+        }
+    }
+
+    /**
+     * Point-in-time snapshot of the cache counters.
+     */
+    public static class Stats {
+        public final long hits;
+        public final long misses;
+        public final long loadFailures;
+        public final long evictions;
+        public final long evictedWeight;
+        public final int size;
+        public final long weight;
+
+        private Stats(
+                long hits,
+                long misses,
+                long loadFailures,
+                long evictions,
+                long evictedWeight,
+                int size,
+                long weight
+        ) {
+            this.hits = hits;
+            this.misses = misses;
+            this.loadFailures = loadFailures;
+            this.evictions = evictions;
+            this.evictedWeight = evictedWeight;
+            this.size = size;
+            this.weight = weight;
+        }
+
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 1.0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "Stats{hits=%d, misses=%d, loadFailures=%d, evictions=%d, " +
+                            "evictedWeight=%d, size=%d, weight=%d}",
+                    hits, misses, loadFailures, evictions, evictedWeight, size, weight
+            );
+        }
+    }
+
+    public static <I, O> Builder<I, O> by(
+            Function<? super I, ? extends Try<? extends O>> producer
+    ) {
+        return new Builder<>(producer);
+    }
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+    private static final int READ_BUFFER_SIZE = 64;
+    private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+    private static final int DRAIN_THRESHOLD = READ_BUFFER_SIZE / 2;
+
+    private static class Entry<O> {
+        final O value;
+        final Throwable error;
+        final long expiresAt;
+
+        Entry(O value, Throwable error, long now, long ttl) {
+            this.value = value;
+            this.error = error;
+            this.expiresAt = ttl < 0 ? Long.MAX_VALUE : now + ttl;
+        }
+
+        boolean isFresh(long now) {
+            return now < expiresAt;
+        }
+    }
+
+    private static class Node<I, O> {
+        final I key;
+        volatile Entry<O> entry;
+        // guarded by the node; null once the entry is published
+        List<Try.Case<? super O>> waiters = new ArrayList<>();
+        // everything below is guarded by the eviction lock
+        Node<I, O> prev;
+        Node<I, O> next;
+        int queue = -1;
+        long weight;
+
+        Node(I key, Try.Case<? super O> first) {
+            this.key = key;
+            waiters.add(first);
+        }
+
+        synchronized boolean join(Try.Case<? super O> continuation) {
+            if (waiters == null) {
+                return false;
+            }
+            waiters.add(continuation);
+            return true;
+        }
+
+        synchronized List<Try.Case<? super O>> publish(Entry<O> result) {
+            List<Try.Case<? super O>> done = waiters;
+            entry = result;
+            waiters = null;
+            return done;
+        }
+    }
+
+    /**
+     * Intrusive doubly-linked LRU queue. The head is the least recently used.
+     */
+    private static class Queue<I, O> {
+        Node<I, O> head;
+        Node<I, O> tail;
+        long weight;
+
+        void append(Node<I, O> node) {
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            }
+            else {
+                tail.next = node;
+            }
+            tail = node;
+            weight += node.weight;
+        }
+
+        void unlink(Node<I, O> node) {
+            if (node.prev == null) {
+                head = node.next;
+            }
+            else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            }
+            else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            weight -= node.weight;
+        }
+    }
+
+    private final Function<? super I, ? extends Try<? extends O>> producer;
+    private final Function<? super O, Integer> weigher;
+    private final long capacity;
+    private final long windowCapacity;
+    private final long protectedCapacity;
+    private final long ttl;
+    private final long errorTtl;
+    private final Scheduler scheduler;
+    private final ConcurrentHashMap<I, Node<I, O>> data = new ConcurrentHashMap<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final FrequencySketch sketch;
+    private final List<Queue<I, O>> queues = new ArrayList<>(3);
+    private final AtomicReferenceArray<Node<I, O>> readBuffer =
+            new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+    private final AtomicLong readsOffered = new AtomicLong(0);
+    private final AtomicLong readsDrained = new AtomicLong(0);
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong loadFailures = new AtomicLong(0);
+    private final AtomicLong evictions = new AtomicLong(0);
+    private final AtomicLong evictedWeight = new AtomicLong(0);
+
+    private Cached(Builder<I, O> builder) {
+        producer = builder.producer;
+        weigher = builder.weigher;
+        capacity = builder.capacity;
+        ttl = builder.ttl;
+        errorTtl = builder.errorTtl;
+        scheduler = builder.scheduler;
+        windowCapacity = Math.max(1, capacity / 100);
+        protectedCapacity = (capacity - windowCapacity) * 80 / 100;
+        sketch = new FrequencySketch(capacity);
+        queues.add(new Queue<>());
+        queues.add(new Queue<>());
+        queues.add(new Queue<>());
+    }
+
+    /**
+     * Returns a computation that produces the cached result for the key,
+     * loading it when it is missing or expired.
+     *
+     * <p> The lookup happens every time the result is selected, not when this
+     * method is called.
+     */
+    @Override
+    public Try<O> apply(I key) {
+        if (key == null) {
+            throw new NullPointerException("Key shouldn't be null");
+        }
+        return continuation -> lookup(key, continuation);
+    }
+
+    /**
+     * Drops the cached result of a key.
+     */
+    public void invalidate(I key) {
+        Node<I, O> node = data.remove(key);
+        if (node != null) {
+            evictionLock.lock();
+            try {
+                unlink(node);
+            }
+            finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Drops every cached result.
+     *
+     * <p> Loads that are in flight still deliver their results to the selects
+     * waiting on them.
+     */
+    public void invalidateAll() {
+        for (I key : data.keySet()) {
+            invalidate(key);
+        }
+    }
+
+    public Stats stats() {
+        long weight;
+        evictionLock.lock();
+        try {
+            weight = totalWeight();
+        }
+        finally {
+            evictionLock.unlock();
+        }
+        return new Stats(
+                hits.get(),
+                misses.get(),
+                loadFailures.get(),
+                evictions.get(),
+                evictedWeight.get(),
+                data.size(),
+                weight
+        );
+    }
+
+    private void lookup(I key, Try.Case<? super O> continuation) {
+        while (true) {
+            Node<I, O> node = data.get(key);
+            if (node != null) {
+                Entry<O> entry = node.entry;
+                if (entry == null && node.join(continuation)) {
+                    hits.incrementAndGet();
+                    return;
+                }
+                entry = node.entry;
+                if (entry.isFresh(now())) {
+                    hits.incrementAndGet();
+                    afterRead(node);
+                    resume(entry, continuation);
+                    return;
+                }
+                Node<I, O> replacement = new Node<>(key, continuation);
+                if (data.replace(key, node, replacement)) {
+                    misses.incrementAndGet();
+                    afterRemoval(node);
+                    load(replacement);
+                    return;
+                }
+            }
+            else {
+                Node<I, O> created = new Node<>(key, continuation);
+                if (data.putIfAbsent(key, created) == null) {
+                    misses.incrementAndGet();
+                    load(created);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void load(Node<I, O> node) {
+        try {
+            producer.apply(node.key).select(new Try.Case<O>() {
+                @Override
+                public void ok(O o) {
+                    complete(node, o, null);
+                }
+
+                @Override
+                public void error(@NonNull Throwable t) {
+                    complete(node, null, t);
+                }
+            });
+        }
+        catch (RuntimeException e) {
+            complete(node, null, e);
+        }
+    }
+
+    private void complete(Node<I, O> node, O value, Throwable error) {
+        long weight = 1;
+        if (error == null) {
+            try {
+                weight = Math.max(0, weigher.apply(value));
+            }
+            catch (RuntimeException e) {
+                error = e;
+            }
+        }
+        if (error != null) {
+            loadFailures.incrementAndGet();
+        }
+        long entryTtl = error == null ? ttl : errorTtl;
+        Entry<O> entry = new Entry<>(value, error, now(), entryTtl);
+        List<Try.Case<? super O>> waiters = node.publish(entry);
+        if (waiters == null) {
+            // the producer called back twice
+            return;
+        }
+        if (entryTtl == 0) {
+            data.remove(node.key, node);
+        }
+        else {
+            afterWrite(node, weight);
+        }
+        for (Try.Case<? super O> waiter : waiters) {
+            resume(entry, waiter);
+        }
+    }
+
+    private void afterRead(Node<I, O> node) {
+        long offered = readsOffered.get();
+        long pending = offered - readsDrained.get();
+        if (pending < READ_BUFFER_SIZE && readsOffered.compareAndSet(offered, offered + 1)) {
+            readBuffer.lazySet((int) (offered & READ_BUFFER_MASK), node);
+        }
+        // reads are dropped when the buffer is full; the policy can live with that
+        if (pending >= DRAIN_THRESHOLD && evictionLock.tryLock()) {
+            try {
+                drainReads();
+            }
+            finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    private void afterWrite(Node<I, O> node, long weight) {
+        evictionLock.lock();
+        try {
+            drainReads();
+            if (data.get(node.key) != node) {
+                // invalidated or replaced while loading
+                return;
+            }
+            node.weight = weight;
+            node.queue = WINDOW;
+            queues.get(WINDOW).append(node);
+            sketch.increment(node.key);
+            evict();
+        }
+        finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void afterRemoval(Node<I, O> node) {
+        evictionLock.lock();
+        try {
+            unlink(node);
+        }
+        finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void drainReads() {
+        long drained = readsDrained.get();
+        long offered = readsOffered.get();
+        while (drained < offered) {
+            int index = (int) (drained & READ_BUFFER_MASK);
+            Node<I, O> node = readBuffer.getAndSet(index, null);
+            if (node == null) {
+                // claimed but not yet written; picked up on the next drain
+                break;
+            }
+            onAccess(node);
+            drained += 1;
+        }
+        readsDrained.set(drained);
+    }
+
+    private void onAccess(Node<I, O> node) {
+        sketch.increment(node.key);
+        switch (node.queue) {
+            case WINDOW:
+                moveToTail(node, WINDOW);
+                break;
+            case PROBATION:
+                moveToTail(node, PROTECTED);
+                Queue<I, O> protectedQueue = queues.get(PROTECTED);
+                while (protectedQueue.weight > protectedCapacity && protectedQueue.head != node) {
+                    moveToTail(protectedQueue.head, PROBATION);
+                }
+                break;
+            case PROTECTED:
+                moveToTail(node, PROTECTED);
+                break;
+            default:
+                // already evicted or removed
+                break;
+        }
+    }
+
+    private void evict() {
+        Queue<I, O> window = queues.get(WINDOW);
+        Queue<I, O> probation = queues.get(PROBATION);
+        while (window.weight > windowCapacity && window.head != null) {
+            Node<I, O> candidate = window.head;
+            moveToTail(candidate, PROBATION);
+            while (totalWeight() > capacity && candidate.queue == PROBATION) {
+                Node<I, O> victim = probation.head;
+                if (victim == candidate) {
+                    victim = queues.get(PROTECTED).head;
+                }
+                if (victim == null || candidate.weight > capacity) {
+                    evict(candidate);
+                }
+                else if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                    evict(victim);
+                }
+                else {
+                    evict(candidate);
+                }
+            }
+        }
+        while (totalWeight() > capacity) {
+            Node<I, O> victim = probation.head;
+            if (victim == null) {
+                victim = queues.get(PROTECTED).head;
+            }
+            if (victim == null) {
+                victim = window.head;
+            }
+            evict(victim);
+        }
+    }
+
+    private void evict(Node<I, O> node) {
+        unlink(node);
+        data.remove(node.key, node);
+        evictions.incrementAndGet();
+        evictedWeight.addAndGet(node.weight);
+    }
+
+    private void moveToTail(Node<I, O> node, int queue) {
+        queues.get(node.queue).unlink(node);
+        node.queue = queue;
+        queues.get(queue).append(node);
+    }
+
+    private void unlink(Node<I, O> node) {
+        if (node.queue >= 0) {
+            queues.get(node.queue).unlink(node);
+            node.queue = -1;
+        }
+    }
+
+    private long totalWeight() {
+        long total = 0;
+        for (Queue<I, O> queue : queues) {
+            total += queue.weight;
+        }
+        return total;
+    }
+
+    private static <O> void resume(Entry<O> entry, Try.Case<? super O> continuation) {
+        if (entry.error == null) {
+            continuation.ok(entry.value);
+        }
+        else {
+            continuation.error(entry.error);
+        }
+    }
+
+    private long now() {
+        return scheduler == null ? Delay.scheduler().millis() : scheduler.millis();
+    }
+}
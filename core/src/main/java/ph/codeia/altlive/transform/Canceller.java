@@ -6,6 +6,7 @@ package ph.codeia.altlive.transform;
 
 import androidx.annotation.NonNull;
 import ph.codeia.altlive.Function;
+import ph.codeia.altlive.Token;
 import ph.codeia.altlive.Try;
 
 public class Canceller<T> implements Try<T> {
@@ -30,6 +31,7 @@ public class Canceller<T> implements Try<T> {
 
     private final Try<T> source;
     private final Runnable onCancel;
+    private final Token token = new Token();
     private volatile boolean isCancelled = false;
 
     public Canceller(Try<T> source, Runnable onCancel) {
@@ -42,11 +44,27 @@ public class Canceller<T> implements Try<T> {
         this(source, () -> {});
     }
 
-    public synchronized void cancel() {
-        if (!isCancelled) {
+    /**
+     * Stops delivering results and cancels the work that is still in flight.
+     *
+     * <p> The cancellation is propagated upstream through the {@link Token}
+     * of every pending select, so transformers like {@link Execute},
+     * {@link Delay}, {@link Retry} and {@link TimeLimit} can drop their
+     * queued runnables and scheduled futures.
+     */
+    public void cancel() {
+        synchronized (this) {
+            if (isCancelled) {
+                return;
+            }
             isCancelled = true;
-            onCancel.run();
         }
+        token.cancel();
+        onCancel.run();
+    }
+
+    public boolean isCancelled() {
+        return isCancelled;
     }
 
     @Override
@@ -54,9 +72,14 @@ public class Canceller<T> implements Try<T> {
         if (isCancelled) {
             return;
         }
+        Token selectToken = new Token();
+        Token.Registration own = token.onCancel(selectToken::cancel);
+        Token.Registration upstream = continuation.token().onCancel(selectToken::cancel);
         source.select(new Case<T>() {
             @Override
             public void ok(T t) {
+                own.remove();
+                upstream.remove();
                 if (!isCancelled) {
                     continuation.ok(t);
                 }
@@ -64,11 +87,17 @@ public class Canceller<T> implements Try<T> {
 
             @Override
             public void error(@NonNull Throwable t) {
+                own.remove();
+                upstream.remove();
                 if (!isCancelled) {
                     continuation.error(t);
                 }
             }
+
+            @Override
+            public Token token() {
+                return selectToken;
+            }
         });
     }
 }
-
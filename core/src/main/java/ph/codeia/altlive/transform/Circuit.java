@@ -0,0 +1,679 @@
+package ph.codeia.altlive.transform;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import androidx.annotation.NonNull;
+import ph.codeia.altlive.Function;
+import ph.codeia.altlive.Token;
+import ph.codeia.altlive.Try;
+
+/**
+ * A circuit breaker shared by every computation that calls the same endpoint.
+ *
+ * <p> Results are recorded in a sliding window that covers either the last N
+ * calls or the last N seconds. The circuit opens when the window has enough
+ * calls and the rate of failures or of slow calls reaches its threshold.
+ * While open, selects fail immediately with {@link Open}. After a wait, the
+ * circuit becomes half-open and lets a limited number of probe calls through;
+ * everyone else is still rejected. Depending on how the probes fare, the
+ * circuit then closes with an empty window or opens again. A probe that takes
+ * longer than the probe timeout counts as a failed, slow call; a probe that is
+ * cancelled gives its slot to the next caller.
+ *
+ * <p> Nothing here takes a lock. The window is a ring buffer of atomic slots
+ * and every state is an immutable phase object that is replaced with a
+ * compare-and-set, so results that belong to an earlier phase are ignored.
+ *
+ * <p> Use {@code source.pipe(circuit::apply)}, usually with a circuit taken
+ * from a {@link Registry} keyed by endpoint. Unlike {@link CircuitBreaker},
+ * one instance guards every computation piped through it.
+ */
+public class Circuit {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /**
+     * Receives the state transitions of a circuit. Called in the thread that
+     * caused the transition.
+     */
+    public interface Listener {
+        void onTransition(Circuit circuit, State from, State to);
+    }
+
+    /**
+     * Raised when the circuit is open, or when it is half-open and every probe
+     * slot is taken. Has no stack trace so that it is cheap to raise under load.
+     */
+    public static class Open extends IllegalStateException {
+        private Open(String name) {
+            super("Circuit is open: " + name);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    /**
+     * Mutable builder to configure {@link Circuit} instances.
+     */
+    public static class Builder {
+        private final boolean isTimeBased;
+        private final int size;
+        private final long span;
+        private float failureThreshold = 50f;
+        private float slowThreshold = 100f;
+        private long slowNanos = Long.MAX_VALUE;
+        private int minimumCalls = 10;
+        private long waitInOpen = 60_000L;
+        private int probes = 5;
+        private long probeTimeout = -1L;
+        private Function<Throwable, Boolean> isFailure = t -> true;
+        private Scheduler scheduler;
+
+        private Builder(boolean isTimeBased, int size, long span) {
+            this.isTimeBased = isTimeBased;
+            this.size = size;
+            this.span = span;
+        }
+
+        /**
+         * Sets the percentage of failed calls that opens the circuit.
+         *
+         * <p> Defaults to 50.
+         */
+        public Builder failureRate(float percent) {
+            this.failureThreshold = percent;
+            return this;
+        }
+
+        /**
+         * Sets the percentage of calls slower than {@code duration} that
+         * opens the circuit.
+         *
+         * <p> Slow calls are not considered by default.
+         */
+        public Builder slowCallRate(float percent, long duration, TimeUnit units) {
+            this.slowThreshold = percent;
+            this.slowNanos = units.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Sets the number of calls in the window below which the rates are
+         * not computed.
+         *
+         * <p> Defaults to 10.
+         */
+        public Builder minimumCalls(int calls) {
+            this.minimumCalls = Math.max(1, calls);
+            return this;
+        }
+
+        /**
+         * Sets how long the circuit stays open before letting probes through.
+         *
+         * <p> Defaults to 60 seconds.
+         */
+        public Builder waitInOpen(long wait, TimeUnit units) {
+            this.waitInOpen = units.toMillis(wait);
+            return this;
+        }
+
+        /**
+         * Sets the number of calls let through while half-open.
+         *
+         * <p> Defaults to 5.
+         */
+        public Builder halfOpenProbes(int calls) {
+            if (calls < 1) {
+                throw new IllegalArgumentException("Must allow at least 1 probe");
+            }
+            this.probes = calls;
+            return this;
+        }
+
+        /**
+         * Sets how long a probe can run before it is counted as a failed call.
+         * The result of a late probe is still passed on but is not counted.
+         *
+         * <p> Defaults to the wait in open.
+         */
+        public Builder probeTimeout(long timeout, TimeUnit units) {
+            if (timeout < 0) {
+                throw new IllegalArgumentException("Timeout must not be negative");
+            }
+            this.probeTimeout = units.toMillis(timeout);
+            return this;
+        }
+
+        /**
+         * Sets which errors count as failures. Other errors count as
+         * successful calls.
+         *
+         * <p> Every error counts by default.
+         */
+        public Builder recordOn(Function<Throwable, Boolean> predicate) {
+            this.isFailure = predicate;
+            return this;
+        }
+
+        /**
+         * Sets the scheduler that tells the time.
+         *
+         * <p> Defaults to the scheduler installed with
+         * {@link Delay#setScheduler(Scheduler)}.
+         */
+        public Builder scheduler(Scheduler scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        public Circuit build(String name) {
+            return new Circuit(name, this);
+        }
+
+        /**
+         * Creates a registry that builds circuits with the current settings.
+         */
+        public Registry registry() {
+            Builder copy = new Builder(isTimeBased, size, span);
+            copy.failureThreshold = failureThreshold;
+            copy.slowThreshold = slowThreshold;
+            copy.slowNanos = slowNanos;
+            copy.minimumCalls = minimumCalls;
+            copy.waitInOpen = waitInOpen;
+            copy.probes = probes;
+            copy.probeTimeout = probeTimeout;
+            copy.isFailure = isFailure;
+            copy.scheduler = scheduler;
+            return new Registry(copy);
+        }
+    }
+
+    /**
+     * Records the outcomes of the last {@code calls} calls.
+     */
+    public static Builder countWindow(int calls) {
+        if (calls < 1) {
+            throw new IllegalArgumentException("Window must not be empty");
+        }
+        return new Builder(false, calls, 0L);
+    }
+
+    /**
+     * Records the outcomes of the calls that finished within {@code span}.
+     * The window slides in steps of a tenth of the span.
+     */
+    public static Builder timeWindow(long span, TimeUnit units) {
+        long millis = units.toMillis(span);
+        if (millis < 1) {
+            throw new IllegalArgumentException("Window must not be empty");
+        }
+        return new Builder(true, 10, millis);
+    }
+
+    /**
+     * Circuits keyed by endpoint, created on demand with the same settings.
+     */
+    public static class Registry {
+        private final Builder builder;
+        private final ConcurrentHashMap<String, Circuit> circuits = new ConcurrentHashMap<>();
+        private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+        private final Listener forward = (circuit, from, to) -> {
+            for (Listener listener : listeners) {
+                listener.onTransition(circuit, from, to);
+            }
+        };
+
+        private Registry(Builder builder) {
+            this.builder = builder;
+        }
+
+        public Circuit get(String endpoint) {
+            Circuit circuit = circuits.get(endpoint);
+            if (circuit != null) {
+                return circuit;
+            }
+            circuit = builder.build(endpoint);
+            circuit.listen(forward);
+            Circuit existing = circuits.putIfAbsent(endpoint, circuit);
+            return existing != null ? existing : circuit;
+        }
+
+        /**
+         * Adds a listener to every current and future circuit.
+         */
+        public void listen(Listener listener) {
+            listeners.add(listener);
+        }
+
+        /**
+         * The current state of every circuit.
+         */
+        public Map<String, State> states() {
+            Map<String, State> states = new LinkedHashMap<>();
+            for (Map.Entry<String, Circuit> e : circuits.entrySet()) {
+                states.put(e.getKey(), e.getValue().state());
+            }
+            return Collections.unmodifiableMap(states);
+        }
+    }
+
+    private static final int CALL = 1;
+    private static final int FAILED = 2;
+    private static final int SLOW = 4;
+
+    private interface Window {
+        void record(int outcome, long now);
+
+        /**
+         * @return calls, failures and slow calls
+         */
+        int[] totals(long now);
+
+        void reset();
+    }
+
+    private static class CountWindow implements Window {
+        final AtomicIntegerArray slots;
+        final AtomicLong cursor = new AtomicLong(0);
+        final AtomicInteger calls = new AtomicInteger(0);
+        final AtomicInteger failures = new AtomicInteger(0);
+        final AtomicInteger slow = new AtomicInteger(0);
+
+        CountWindow(int size) {
+            slots = new AtomicIntegerArray(size);
+        }
+
+        @Override
+        public void record(int outcome, long now) {
+            int i = (int) (cursor.getAndIncrement() % slots.length());
+            add(slots.getAndSet(i, outcome), -1);
+            add(outcome, 1);
+        }
+
+        @Override
+        public int[] totals(long now) {
+            return new int[] {calls.get(), failures.get(), slow.get()};
+        }
+
+        @Override
+        public void reset() {
+            for (int i = 0; i < slots.length(); i++) {
+                add(slots.getAndSet(i, 0), -1);
+            }
+        }
+
+        void add(int outcome, int delta) {
+            if ((outcome & CALL) != 0) {
+                calls.addAndGet(delta);
+            }
+            if ((outcome & FAILED) != 0) {
+                failures.addAndGet(delta);
+            }
+            if ((outcome & SLOW) != 0) {
+                slow.addAndGet(delta);
+            }
+        }
+    }
+
+    private static class TimeWindow implements Window {
+        static class Bucket {
+            final long epoch;
+            final AtomicInteger calls = new AtomicInteger(0);
+            final AtomicInteger failures = new AtomicInteger(0);
+            final AtomicInteger slow = new AtomicInteger(0);
+
+            Bucket(long epoch) {
+                this.epoch = epoch;
+            }
+        }
+
+        final AtomicReferenceArray<Bucket> buckets;
+        final long bucketMillis;
+
+        TimeWindow(int size, long span) {
+            buckets = new AtomicReferenceArray<>(size);
+            bucketMillis = Math.max(1L, span / size);
+        }
+
+        @Override
+        public void record(int outcome, long now) {
+            long epoch = now / bucketMillis;
+            int i = (int) (epoch % buckets.length());
+            Bucket bucket;
+            while (true) {
+                bucket = buckets.get(i);
+                if (bucket != null && bucket.epoch >= epoch) {
+                    break;
+                }
+                Bucket fresh = new Bucket(epoch);
+                if (buckets.compareAndSet(i, bucket, fresh)) {
+                    bucket = fresh;
+                    break;
+                }
+            }
+            bucket.calls.incrementAndGet();
+            if ((outcome & FAILED) != 0) {
+                bucket.failures.incrementAndGet();
+            }
+            if ((outcome & SLOW) != 0) {
+                bucket.slow.incrementAndGet();
+            }
+        }
+
+        @Override
+        public int[] totals(long now) {
+            long oldest = now / bucketMillis - buckets.length();
+            int[] totals = new int[3];
+            for (int i = 0; i < buckets.length(); i++) {
+                Bucket bucket = buckets.get(i);
+                if (bucket != null && bucket.epoch > oldest) {
+                    totals[0] += bucket.calls.get();
+                    totals[1] += bucket.failures.get();
+                    totals[2] += bucket.slow.get();
+                }
+            }
+            return totals;
+        }
+
+        @Override
+        public void reset() {
+            for (int i = 0; i < buckets.length(); i++) {
+                buckets.set(i, null);
+            }
+        }
+    }
+
+    private static class Phase {
+        final State state;
+        final long since;
+        final AtomicInteger permits;
+        final AtomicInteger done = new AtomicInteger(0);
+        final AtomicInteger failed = new AtomicInteger(0);
+        final AtomicInteger slow = new AtomicInteger(0);
+
+        Phase(State state, int permits, long since) {
+            this.state = state;
+            this.since = since;
+            this.permits = new AtomicInteger(permits);
+        }
+
+        boolean tryTakePermit() {
+            while (true) {
+                int n = permits.get();
+                if (n <= 0) {
+                    return false;
+                }
+                if (permits.compareAndSet(n, n - 1)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    private final String name;
+    private final Window window;
+    private final float failureThreshold;
+    private final float slowThreshold;
+    private final long slowNanos;
+    private final int minimumCalls;
+    private final long waitInOpen;
+    private final int probes;
+    private final long probeTimeout;
+    private final Function<Throwable, Boolean> isFailure;
+    private final Scheduler scheduler;
+    private final AtomicReference<Phase> phase =
+            new AtomicReference<>(new Phase(State.CLOSED, 0, 0L));
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong rejected = new AtomicLong(0);
+
+    private Circuit(String name, Builder builder) {
+        this.name = name;
+        window = builder.isTimeBased
+                ? new TimeWindow(builder.size, builder.span)
+                : new CountWindow(builder.size);
+        failureThreshold = builder.failureThreshold;
+        slowThreshold = builder.slowThreshold;
+        slowNanos = builder.slowNanos;
+        minimumCalls = builder.isTimeBased
+                ? builder.minimumCalls
+                : Math.min(builder.minimumCalls, builder.size);
+        waitInOpen = builder.waitInOpen;
+        probes = builder.probes;
+        probeTimeout = builder.probeTimeout < 0 ? builder.waitInOpen : builder.probeTimeout;
+        isFailure = builder.isFailure;
+        scheduler = builder.scheduler;
+    }
+
+    /**
+     * Makes every select of the source pass through this circuit.
+     *
+     * @param <T> The type of the value being computed
+     */
+    @Transformer
+    public <T> Try<T> apply(Try<T> source) {
+        return continuation -> {
+            Phase current = acquire();
+            if (current == null) {
+                rejected.incrementAndGet();
+                continuation.error(new Open(name));
+                return;
+            }
+            long start = scheduler().nanos();
+            AtomicBoolean isDone = new AtomicBoolean(false);
+            AtomicBoolean isSettled = new AtomicBoolean(false);
+            Token token = continuation.token();
+            Token.Registration registration = token.onCancel(() -> {
+                if (!isDone.getAndSet(true) && current.state == State.HALF_OPEN) {
+                    // give the probe slot back
+                    current.permits.incrementAndGet();
+                }
+            });
+            Scheduler.Handle timeout = current.state != State.HALF_OPEN ? null :
+                    scheduler().schedule(() -> {
+                        if (!isDone.getAndSet(true)) {
+                            registration.remove();
+                            record(current, CALL | FAILED | SLOW);
+                        }
+                    }, probeTimeout);
+            Try.Case<T> probe = new Try.Case<T>() {
+                @Override
+                public void ok(T t) {
+                    if (finish(false)) {
+                        continuation.ok(t);
+                    }
+                }
+
+                @Override
+                public void error(@NonNull Throwable t) {
+                    boolean isFailed;
+                    try {
+                        isFailed = isFailure.apply(t);
+                    }
+                    catch (RuntimeException e) {
+                        isFailed = true;
+                    }
+                    if (finish(isFailed)) {
+                        continuation.error(t);
+                    }
+                }
+
+                @Override
+                public Token token() {
+                    return token;
+                }
+
+                boolean finish(boolean isFailed) {
+                    if (isSettled.getAndSet(true)) {
+                        return false;
+                    }
+                    if (isDone.getAndSet(true)) {
+                        // a late probe is passed on but not counted
+                        return !token.isCancelled();
+                    }
+                    registration.remove();
+                    if (timeout != null) {
+                        timeout.cancel();
+                    }
+                    long elapsed = scheduler().nanos() - start;
+                    int outcome = CALL;
+                    if (isFailed) {
+                        outcome |= FAILED;
+                    }
+                    if (elapsed >= slowNanos) {
+                        outcome |= SLOW;
+                    }
+                    record(current, outcome);
+                    return true;
+                }
+            };
+            try {
+                source.select(probe);
+            }
+            catch (RuntimeException e) {
+                probe.error(e);
+            }
+        };
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public State state() {
+        Phase current = phase.get();
+        if (current.state == State.OPEN &&
+                scheduler().millis() - current.since >= waitInOpen) {
+            return State.HALF_OPEN;
+        }
+        return current.state;
+    }
+
+    /**
+     * The percentage of failed calls in the window, or -1 if the window does
+     * not have enough calls.
+     */
+    public float failureRate() {
+        int[] totals = window.totals(scheduler().millis());
+        return totals[0] < minimumCalls ? -1f : 100f * totals[1] / totals[0];
+    }
+
+    /**
+     * The percentage of slow calls in the window, or -1 if the window does
+     * not have enough calls.
+     */
+    public float slowCallRate() {
+        int[] totals = window.totals(scheduler().millis());
+        return totals[0] < minimumCalls ? -1f : 100f * totals[2] / totals[0];
+    }
+
+    /**
+     * The number of selects that failed because the circuit was open.
+     */
+    public long rejected() {
+        return rejected.get();
+    }
+
+    public void listen(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Closes the circuit and clears the window.
+     */
+    public void reset() {
+        Phase current = phase.get();
+        if (current.state != State.CLOSED) {
+            transition(current, new Phase(State.CLOSED, 0, scheduler().millis()));
+        }
+        else {
+            window.reset();
+        }
+    }
+
+    /**
+     * @return The phase the call belongs to, or null if it is rejected.
+     */
+    private Phase acquire() {
+        while (true) {
+            Phase current = phase.get();
+            switch (current.state) {
+                case CLOSED:
+                    return current;
+                case HALF_OPEN:
+                    return current.tryTakePermit() ? current : null;
+                default:
+                    if (scheduler().millis() - current.since < waitInOpen) {
+                        return null;
+                    }
+                    transition(current, new Phase(State.HALF_OPEN, probes, scheduler().millis()));
+                    // lost or won, the next iteration sees a newer phase
+            }
+        }
+    }
+
+    private void record(Phase current, int outcome) {
+        if (phase.get() != current) {
+            return;
+        }
+        if (current.state == State.CLOSED) {
+            window.record(outcome, scheduler().millis());
+            int[] totals = window.totals(scheduler().millis());
+            if (totals[0] >= minimumCalls && (
+                    100f * totals[1] / totals[0] >= failureThreshold ||
+                    100f * totals[2] / totals[0] >= slowThreshold)) {
+                transition(current, new Phase(State.OPEN, 0, scheduler().millis()));
+            }
+        }
+        else if (current.state == State.HALF_OPEN) {
+            if ((outcome & FAILED) != 0) {
+                current.failed.incrementAndGet();
+            }
+            if ((outcome & SLOW) != 0) {
+                current.slow.incrementAndGet();
+            }
+            int done = current.done.incrementAndGet();
+            if (done < probes) {
+                return;
+            }
+            boolean isHealthy = 100f * current.failed.get() / done < failureThreshold &&
+                    100f * current.slow.get() / done < slowThreshold;
+            transition(current, new Phase(isHealthy ? State.CLOSED : State.OPEN, 0, scheduler().millis()));
+        }
+    }
+
+    private void transition(Phase from, Phase to) {
+        if (!phase.compareAndSet(from, to)) {
+            return;
+        }
+        if (to.state == State.CLOSED) {
+            window.reset();
+        }
+        for (Listener listener : listeners) {
+            listener.onTransition(this, from.state, to.state);
+        }
+    }
+
+    private Scheduler scheduler() {
+        return scheduler == null ? Delay.scheduler() : scheduler;
+    }
+}
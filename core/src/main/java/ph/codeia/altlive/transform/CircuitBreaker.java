@@ -8,6 +8,7 @@ import java.util.concurrent.TimeUnit;
 
 import androidx.annotation.NonNull;
 import ph.codeia.altlive.Function;
+import ph.codeia.altlive.Token;
 import ph.codeia.altlive.Try;
 
 public class CircuitBreaker<T> implements Try<T> {
@@ -76,10 +77,16 @@ public class CircuitBreaker<T> implements Try<T> {
             source.select(continuation);
             return;
         }
-        boolean isCircuitOpen = failCount >= failLimit &&
-                System.currentTimeMillis() - lastFailTime < halfOpenTimeout;
-        if (isCircuitOpen) {
-            continuation.error(new Tripped(lastError));
+        Throwable tripped = null;
+        synchronized (this) {
+            boolean isCircuitOpen = failCount >= failLimit &&
+                    Delay.scheduler().millis() - lastFailTime < halfOpenTimeout;
+            if (isCircuitOpen) {
+                tripped = lastError;
+            }
+        }
+        if (tripped != null) {
+            continuation.error(new Tripped(tripped));
             return;
         }
         source.select(new Case<T>() {
@@ -98,7 +105,7 @@ public class CircuitBreaker<T> implements Try<T> {
                 try {
                     if (predicate.apply(t)) synchronized (CircuitBreaker.this) {
                         failCount += 1;
-                        lastFailTime = System.currentTimeMillis();
+                        lastFailTime = Delay.scheduler().millis();
                         lastError = t;
                     }
                     continuation.error(t);
@@ -107,6 +114,11 @@ public class CircuitBreaker<T> implements Try<T> {
                     continuation.error(e);
                 }
             }
+
+            @Override
+            public Token token() {
+                return continuation.token();
+            }
         });
     }
 }
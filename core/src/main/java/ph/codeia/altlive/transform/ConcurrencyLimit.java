@@ -0,0 +1,346 @@
+package ph.codeia.altlive.transform;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import androidx.annotation.NonNull;
+import ph.codeia.altlive.Function;
+import ph.codeia.altlive.Token;
+import ph.codeia.altlive.Try;
+
+/**
+ * Limits the number of running computations to a number that is adjusted
+ * from their measured round-trip times.
+ *
+ * <p> Unlike {@link Bulkhead}, nothing is queued. A select that would exceed
+ * the current limit fails immediately with {@link Limited}, so load is shed as
+ * soon as the latency of the source inflates instead of after it starts
+ * failing. Every result is fed to an {@link Algorithm} along with the time it
+ * took, and the algorithm returns the new limit.
+ *
+ * <p> Acquiring and releasing a slot are single atomic operations. The limit
+ * is only updated by one thread at a time; a sample that arrives while another
+ * thread is updating the limit is dropped instead of waiting. Results of
+ * cancelled selects are not sampled.
+ *
+ * <p> One instance is meant to be shared by every computation that calls the
+ * same endpoint: {@code source.pipe(limit::apply)}.
+ */
+public class ConcurrencyLimit {
+
+    /**
+     * Raised when the current limit is reached. Has no stack trace so that it
+     * is cheap to raise under load.
+     */
+    public static class Limited extends IllegalStateException {
+        private Limited() {
+            super("Concurrency limit reached.");
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    /**
+     * Computes the next limit from a sample.
+     *
+     * <p> Never called concurrently by the same limiter, so implementations
+     * can keep state without synchronizing.
+     */
+    public interface Algorithm {
+        /**
+         * @param limit The current limit
+         * @param inflight The number of running selects when the sample was
+         *                 taken, including the sampled one
+         * @param rttNanos How long the sampled select took
+         * @param isDropped Whether the select failed in a way that signals
+         *                  overload, e.g. a timeout
+         * @return The next limit. Clamped by the limiter.
+         */
+        int update(int limit, int inflight, long rttNanos, boolean isDropped);
+    }
+
+    /**
+     * Additive increase, multiplicative decrease.
+     *
+     * <p> Grows by 1 for every sample taken while at least half of the limit
+     * is in use, and shrinks by {@code backoff} on every drop or on a sample
+     * slower than {@code timeout}.
+     */
+    public static Algorithm aimd(long timeout, TimeUnit units, double backoff) {
+        if (backoff <= 0 || backoff >= 1) {
+            throw new IllegalArgumentException("Backoff must be between 0 and 1");
+        }
+        long timeoutNanos = units.toNanos(timeout);
+        return (limit, inflight, rttNanos, isDropped) -> {
+            if (isDropped || rttNanos > timeoutNanos) {
+                return (int) (limit * backoff);
+            }
+            if (inflight * 2 >= limit) {
+                return limit + 1;
+            }
+            return limit;
+        };
+    }
+
+    /**
+     * Compares each round-trip time against a long-term average.
+     *
+     * <p> The limit is scaled by the ratio of the average to the sample
+     * (between 0.5 and 1, with some tolerance) and then grown by its square
+     * root. While latency is flat and at least half of the limit is in use,
+     * the ratio is 1 and the limit keeps growing to probe for headroom, up to
+     * the maximum of the limiter. It stops growing when less than half is in
+     * use, and shrinks in proportion to how much the latency inflates.
+     * Changes are smoothed. A drop shrinks the limit by 10%.
+     *
+     * <p> The smoothed estimate follows the limit whenever the limiter clamps
+     * it, so it never winds up past the bounds and shrinking starts with the
+     * first slow sample.
+     */
+    public static Algorithm gradient() {
+        return new Algorithm() {
+            static final double TOLERANCE = 1.5;
+            static final double SMOOTHING = 0.2;
+            static final int WINDOW = 100;
+            double estimate = -1;
+            double longRtt = -1;
+            int last = -1;
+
+            @Override
+            public int update(int limit, int inflight, long rttNanos, boolean isDropped) {
+                if (estimate < 0 || limit != last) {
+                    // first sample, or the limiter clamped the last result
+                    estimate = limit;
+                }
+                last = next(limit, inflight, rttNanos, isDropped);
+                return last;
+            }
+
+            int next(int limit, int inflight, long rttNanos, boolean isDropped) {
+                if (isDropped) {
+                    estimate *= 0.9;
+                    return (int) estimate;
+                }
+                if (longRtt < 0) {
+                    longRtt = rttNanos;
+                }
+                else {
+                    longRtt += (rttNanos - longRtt) / WINDOW;
+                }
+                if (inflight * 2 < limit) {
+                    // not enough load to tell whether the limit is too high
+                    return limit;
+                }
+                double gradient = Math.max(0.5, Math.min(1.0,
+                        TOLERANCE * longRtt / Math.max(1, rttNanos)));
+                double next = estimate * gradient + Math.sqrt(estimate);
+                estimate = estimate * (1 - SMOOTHING) + next * SMOOTHING;
+                return (int) estimate;
+            }
+        };
+    }
+
+    /**
+     * Mutable builder to configure a {@link ConcurrencyLimit} instance.
+     */
+    public static class Builder {
+        private final Algorithm algorithm;
+        private int initial = 10;
+        private int min = 1;
+        private int max = 1000;
+        private Function<Throwable, Boolean> isDrop = t -> t instanceof TimeoutException;
+
+        private Builder(Algorithm algorithm) {
+            this.algorithm = algorithm;
+        }
+
+        /**
+         * Sets the limit before any sample is taken.
+         *
+         * <p> Defaults to 10.
+         */
+        public Builder initial(int limit) {
+            this.initial = limit;
+            return this;
+        }
+
+        /**
+         * Sets the bounds of the limit.
+         *
+         * <p> Defaults to [1, 1000].
+         */
+        public Builder range(int min, int max) {
+            if (min < 1 || max < min) {
+                throw new IllegalArgumentException("Invalid range");
+            }
+            this.min = min;
+            this.max = max;
+            return this;
+        }
+
+        /**
+         * Sets which errors signal overload.
+         *
+         * <p> Only {@link TimeoutException} does by default. Other errors are
+         * sampled like successful results.
+         */
+        public Builder dropOn(Function<Throwable, Boolean> predicate) {
+            this.isDrop = predicate;
+            return this;
+        }
+
+        public ConcurrencyLimit build() {
+            return new ConcurrencyLimit(this);
+        }
+    }
+
+    public static Builder with(Algorithm algorithm) {
+        return new Builder(algorithm);
+    }
+
+    private final Algorithm algorithm;
+    private final int min;
+    private final int max;
+    private final Function<Throwable, Boolean> isDrop;
+    private final AtomicInteger inflight = new AtomicInteger(0);
+    private final AtomicBoolean isUpdating = new AtomicBoolean(false);
+    private final AtomicLong rejected = new AtomicLong(0);
+    private volatile int limit;
+
+    private ConcurrencyLimit(Builder builder) {
+        algorithm = builder.algorithm;
+        min = builder.min;
+        max = builder.max;
+        isDrop = builder.isDrop;
+        limit = Math.max(min, Math.min(max, builder.initial));
+    }
+
+    /**
+     * Makes every select of the source take a slot first.
+     *
+     * @param <T> The type of the value being computed
+     */
+    @Transformer
+    public <T> Try<T> apply(Try<T> source) {
+        return continuation -> {
+            if (!tryAcquire()) {
+                rejected.incrementAndGet();
+                continuation.error(new Limited());
+                return;
+            }
+            long start = Delay.scheduler().nanos();
+            AtomicBoolean isReleased = new AtomicBoolean(false);
+            Token token = continuation.token();
+            // a cancelled source might never call back
+            Token.Registration registration = token.onCancel(() -> {
+                if (!isReleased.getAndSet(true)) {
+                    inflight.decrementAndGet();
+                }
+            });
+            try {
+                source.select(new Try.Case<T>() {
+                    @Override
+                    public void ok(T t) {
+                        if (release(false)) {
+                            continuation.ok(t);
+                        }
+                    }
+
+                    @Override
+                    public void error(@NonNull Throwable t) {
+                        boolean isDropped;
+                        try {
+                            isDropped = isDrop.apply(t);
+                        }
+                        catch (RuntimeException e) {
+                            isDropped = false;
+                        }
+                        if (release(isDropped)) {
+                            continuation.error(t);
+                        }
+                    }
+
+                    @Override
+                    public Token token() {
+                        return token;
+                    }
+
+                    boolean release(boolean isDropped) {
+                        if (isReleased.getAndSet(true)) {
+                            return false;
+                        }
+                        registration.remove();
+                        int running = inflight.getAndDecrement();
+                        sample(running, Delay.scheduler().nanos() - start, isDropped);
+                        return true;
+                    }
+                });
+            }
+            catch (RuntimeException e) {
+                if (!isReleased.getAndSet(true)) {
+                    registration.remove();
+                    inflight.decrementAndGet();
+                }
+                continuation.error(e);
+            }
+        };
+    }
+
+    /**
+     * The current limit.
+     */
+    public int limit() {
+        return limit;
+    }
+
+    /**
+     * The number of selects holding a slot.
+     */
+    public int inflight() {
+        return inflight.get();
+    }
+
+    /**
+     * The number of selects that failed because the limit was reached.
+     */
+    public long rejected() {
+        return rejected.get();
+    }
+
+    private boolean tryAcquire() {
+        while (true) {
+            int current = inflight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inflight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void sample(int running, long rttNanos, boolean isDropped) {
+        if (!isUpdating.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            int next = algorithm.update(limit, running, rttNanos, isDropped);
+            limit = Math.max(min, Math.min(max, next));
+        }
+        catch (RuntimeException ignored) {
+        }
+        finally {
+            isUpdating.set(false);
+        }
+    }
+}
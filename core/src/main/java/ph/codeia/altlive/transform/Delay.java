@@ -4,12 +4,14 @@ package ph.codeia.altlive.transform;
  * This file is a part of the AltLiveData project.
  */
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 
 import androidx.annotation.NonNull;
+import ph.codeia.altlive.Clock;
 import ph.codeia.altlive.Function;
+import ph.codeia.altlive.Token;
 import ph.codeia.altlive.Try;
 
 public class Delay<T> implements Try<T> {
@@ -59,8 +61,77 @@ public class Delay<T> implements Try<T> {
         return resultBy(units.toMillis(after));
     }
 
-    static final ScheduledExecutorService SCHEDULER =
-            Executors.newSingleThreadScheduledExecutor();
+    private static volatile Scheduler scheduler;
+
+    /**
+     * Replaces the scheduler used by every transformer that waits and
+     * installs it as the {@link Clock#current() current clock}.
+     *
+     * <p> Blocks that were scheduled before the call still run in the old
+     * scheduler. Null restores the default scheduler and the system clock.
+     */
+    public static void setScheduler(Scheduler scheduler) {
+        Delay.scheduler = scheduler;
+        Clock.install(scheduler);
+    }
+
+    /**
+     * The scheduler used by every transformer that waits. A shared
+     * {@link HashedWheelTimer} unless replaced.
+     */
+    public static Scheduler scheduler() {
+        Scheduler s = scheduler;
+        if (s == null) {
+            synchronized (Delay.class) {
+                s = scheduler;
+                if (s == null) {
+                    s = new HashedWheelTimer();
+                    scheduler = s;
+                }
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Schedules a block that will not run if the token is cancelled first.
+     *
+     * <p> The scheduled block is cancelled along with the token, and the
+     * cancellation listener is removed once the block runs or the returned
+     * handle is cancelled.
+     */
+    static Scheduler.Handle schedule(Token token, Runnable block, long millis) {
+        return schedule(scheduler(), token, block, millis);
+    }
+
+    static Scheduler.Handle schedule(
+            Scheduler scheduler,
+            Token token,
+            Runnable block,
+            long millis
+    ) {
+        AtomicReference<Scheduler.Handle> pending = new AtomicReference<>();
+        Token.Registration registration = token.onCancel(() -> {
+            Scheduler.Handle handle = pending.get();
+            if (handle != null) {
+                handle.cancel();
+            }
+        });
+        Scheduler.Handle handle = scheduler.schedule(() -> {
+            registration.remove();
+            if (!token.isCancelled()) {
+                block.run();
+            }
+        }, millis);
+        pending.set(handle);
+        if (token.isCancelled()) {
+            handle.cancel();
+        }
+        return () -> {
+            registration.remove();
+            return handle.cancel();
+        };
+    }
 
     private final Try<T> source;
     private final long before;
@@ -72,46 +143,58 @@ public class Delay<T> implements Try<T> {
         this.after = after;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p> If the token of the continuation has a deadline, the delay before
+     * the source fails immediately with a {@link TimeoutException} when it
+     * would end after the deadline, and the delay after the source is cut
+     * short so that the result is delivered by the deadline.
+     */
     @Override
     public void select(Case<? super T> continuation) {
+        Token token = continuation.token();
+        if (before > 0L && token.remainingMillis() <= before) {
+            continuation.error(new TimeoutException());
+            return;
+        }
         Case<T> cont = new Case<T>() {
             @Override
             public void ok(T t) {
-                if (after <= 0L) {
+                long millis = resultDelay();
+                if (millis <= 0L) {
                     continuation.ok(t);
                 }
                 else {
-                    SCHEDULER.schedule(
-                            () -> continuation.ok(t),
-                            after,
-                            TimeUnit.MILLISECONDS
-                    );
+                    schedule(token, () -> continuation.ok(t), millis);
                 }
             }
 
             @Override
             public void error(@NonNull Throwable t) {
-                if (after <= 0L) {
+                long millis = resultDelay();
+                if (millis <= 0L) {
                     continuation.error(t);
                 }
                 else {
-                    SCHEDULER.schedule(
-                            () -> continuation.error(t),
-                            after,
-                            TimeUnit.MILLISECONDS
-                    );
+                    schedule(token, () -> continuation.error(t), millis);
                 }
             }
+
+            long resultDelay() {
+                return Math.min(after, token.remainingMillis());
+            }
+
+            @Override
+            public Token token() {
+                return token;
+            }
         };
         if (before <= 0L) {
             source.select(cont);
         }
         else {
-            SCHEDULER.schedule(
-                    () -> source.select(cont),
-                    before,
-                    TimeUnit.MILLISECONDS
-            );
+            schedule(token, () -> source.select(cont), before);
         }
     }
 }
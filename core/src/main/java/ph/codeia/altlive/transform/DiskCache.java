@@ -0,0 +1,673 @@
+package ph.codeia.altlive.transform;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import androidx.annotation.NonNull;
+import ph.codeia.altlive.Clock;
+import ph.codeia.altlive.Function;
+import ph.codeia.altlive.Token;
+import ph.codeia.altlive.Try;
+
+/**
+ * A persistent second tier for the in-memory caches.
+ *
+ * <p> Results are serialized with a pluggable {@link Codec} and appended to a
+ * memory-mapped log file. Only the location of the latest record of every key
+ * is kept in memory. Every record carries a CRC32 checksum; when the file is
+ * opened, the log is replayed up to the first incomplete or corrupt record
+ * and the rest is discarded, so a crash in the middle of a write loses at
+ * most that write. A corrupt record found later is treated as a miss.
+ *
+ * <p> Overwritten and removed records stay in the file until the log is
+ * compacted. Compaction starts in the background once more than half of the
+ * file is garbage. It copies the live records into a new file without
+ * blocking readers or writers and only takes the writer lock at the end to
+ * copy the records appended in the meantime and swap the files.
+ *
+ * <p> The tier plugs under the in-memory caches in two ways:
+ * <ul><li> {@code Cached.by(disk.through(producer))} for keyed caches; and
+ * <li> {@code source.pipe(disk.persist(key)).pipe(Memoize::new)} for single
+ * values.</ul>
+ *
+ * <p> Null values are never stored. IO errors after opening never fail a
+ * computation; reads degrade to misses and writes are dropped. A single log
+ * file is limited to 2GB.
+ *
+ * @param <K> The type of the keys
+ * @param <V> The type of the values
+ */
+public class DiskCache<K, V> implements Closeable {
+
+    /**
+     * Converts values to and from bytes.
+     *
+     * @param <T> The type of the value
+     */
+    public interface Codec<T> {
+        byte[] encode(T t) throws IOException;
+        T decode(byte[] bytes) throws IOException;
+
+        Codec<String> UTF8 = new Codec<String>() {
+            private final Charset utf8 = Charset.forName("UTF-8");
+
+            @Override
+            public byte[] encode(String s) {
+                return s.getBytes(utf8);
+            }
+
+            @Override
+            public String decode(byte[] bytes) {
+                return new String(bytes, utf8);
+            }
+        };
+
+        /**
+         * Uses Java serialization. Convenient but slow and bulky.
+         */
+        static <T extends Serializable> Codec<T> serializable() {
+            return new Codec<T>() {
+                @Override
+                public byte[] encode(T t) throws IOException {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                        out.writeObject(t);
+                    }
+                    return bytes.toByteArray();
+                }
+
+                @SuppressWarnings("unchecked")
+                @Override
+                public T decode(byte[] bytes) throws IOException {
+                    try (ObjectInputStream in = new ObjectInputStream(
+                            new ByteArrayInputStream(bytes))) {
+                        return (T) in.readObject();
+                    }
+                    catch (ClassNotFoundException e) {
+                        throw new IOException(e);
+                    }
+                }
+            };
+        }
+    }
+
+    /**
+     * Mutable builder to configure a {@link DiskCache} instance.
+     */
+    public static class Builder<K, V> {
+        private final File file;
+        private final Codec<K> keys;
+        private final Codec<V> values;
+        private long ttl = -1L;
+        private Executor compactor = VirtualThreads.executor();
+        private int minCompactBytes = 1 << 20;
+
+        private Builder(File file, Codec<K> keys, Codec<V> values) {
+            this.file = file;
+            this.keys = keys;
+            this.values = values;
+        }
+
+        /**
+         * Sets the time-to-live of the records, counted from the time they
+         * were written. Never expires when negative, which is the default.
+         */
+        public Builder<K, V> expireAfter(long ttl) {
+            this.ttl = ttl;
+            return this;
+        }
+
+        public Builder<K, V> expireAfter(long ttl, TimeUnit units) {
+            return expireAfter(units.toMillis(ttl));
+        }
+
+        /**
+         * Sets the executor where compaction runs.
+         *
+         * <p> Defaults to the executor of {@link Execute#onVirtual()}.
+         */
+        public Builder<K, V> compactOn(Executor executor) {
+            this.compactor = executor;
+            return this;
+        }
+
+        /**
+         * Sets the file size below which the log is never compacted.
+         *
+         * <p> Defaults to 1MB.
+         */
+        public Builder<K, V> compactAbove(int bytes) {
+            this.minCompactBytes = bytes;
+            return this;
+        }
+
+        /**
+         * Opens or creates the log file and rebuilds the index from it.
+         */
+        public DiskCache<K, V> open() throws IOException {
+            return new DiskCache<>(this);
+        }
+    }
+
+    public static <K, V> Builder<K, V> in(File file, Codec<K> keys, Codec<V> values) {
+        return new Builder<>(file, keys, values);
+    }
+
+    private static final int MAGIC = 0x414c5431;
+    private static final int TOMBSTONE = -1;
+    // magic, key length, value length, timestamp
+    private static final int HEADER = 4 + 4 + 4 + 8;
+    private static final int TRAILER = 4;
+    private static final int INITIAL_SIZE = 64 * 1024;
+    private static final long MAX_SIZE = Integer.MAX_VALUE;
+
+    private static class Segment {
+        final RandomAccessFile file;
+        final FileChannel channel;
+        volatile MappedByteBuffer buffer;
+        int end;
+
+        /**
+         * Maps twice the given number of bytes, but at least
+         * {@link #INITIAL_SIZE} and at most {@link #MAX_SIZE}.
+         *
+         * @throws IOException if {@code used} bytes don't fit in one mapping
+         */
+        Segment(File path, long used) throws IOException {
+            if (used > MAX_SIZE) {
+                throw new IOException("Log file is too large to map: " + used + " bytes");
+            }
+            file = new RandomAccessFile(path, "rw");
+            channel = file.getChannel();
+            long size = Math.min(MAX_SIZE, Math.max(INITIAL_SIZE, 2L * used));
+            try {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+            catch (IOException | RuntimeException e) {
+                file.close();
+                throw e;
+            }
+        }
+
+        void ensureCapacity(int required) throws IOException {
+            int capacity = buffer.capacity();
+            if (end + (long) required <= capacity) {
+                return;
+            }
+            long size = Math.max(end + (long) required, 2L * capacity);
+            if (size > MAX_SIZE) {
+                if (end + (long) required > MAX_SIZE) {
+                    throw new IOException("Log file is full");
+                }
+                size = MAX_SIZE;
+            }
+            // the old mapping stays valid for readers that still hold it
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+
+        void close() throws IOException {
+            buffer.force();
+            file.close();
+        }
+    }
+
+    private static class State<K> {
+        final Segment segment;
+        final ConcurrentHashMap<K, Long> index;
+
+        State(Segment segment, ConcurrentHashMap<K, Long> index) {
+            this.segment = segment;
+            this.index = index;
+        }
+    }
+
+    private final File file;
+    private final File compactFile;
+    private final Codec<K> keys;
+    private final Codec<V> values;
+    private final long ttl;
+    private final Executor compactor;
+    private final int minCompactBytes;
+    private final Object writeLock = new Object();
+    private final AtomicBoolean isCompacting = new AtomicBoolean(false);
+    private final AtomicLong readFailures = new AtomicLong(0);
+    private final AtomicLong writeFailures = new AtomicLong(0);
+    private final AtomicLong compactions = new AtomicLong(0);
+    private volatile State<K> state;
+    private volatile boolean isClosed = false;
+    private long liveBytes;
+
+    private DiskCache(Builder<K, V> builder) throws IOException {
+        file = builder.file;
+        compactFile = new File(file.getPath() + ".compact");
+        keys = builder.keys;
+        values = builder.values;
+        ttl = builder.ttl;
+        compactor = builder.compactor;
+        minCompactBytes = builder.minCompactBytes;
+        if (compactFile.exists() && !compactFile.delete()) {
+            throw new IOException("Unable to delete " + compactFile);
+        }
+        state = recover();
+    }
+
+    /**
+     * Returns the stored value of the key, or null if there is none or it
+     * has expired.
+     */
+    public V get(K key) {
+        State<K> s = state;
+        Long slot = s.index.get(key);
+        if (slot == null || isClosed) {
+            return null;
+        }
+        ByteBuffer view = s.segment.buffer.duplicate();
+        if (offsetOf(slot) + (long) sizeOf(slot) > view.capacity()) {
+            // the mapping always covers every indexed record
+            throw new IllegalStateException("Record at " + offsetOf(slot) + " is not mapped");
+        }
+        try {
+            view.position(offsetOf(slot));
+            view.getInt();
+            int keyLength = view.getInt();
+            int valueLength = view.getInt();
+            long timestamp = view.getLong();
+            if (ttl >= 0 && Clock.current().millis() - timestamp >= ttl) {
+                return null;
+            }
+            if (!isIntact(view, offsetOf(slot), sizeOf(slot))) {
+                readFailures.incrementAndGet();
+                s.index.remove(key, slot);
+                return null;
+            }
+            byte[] bytes = new byte[valueLength];
+            view.position(offsetOf(slot) + HEADER + keyLength);
+            view.get(bytes);
+            return values.decode(bytes);
+        }
+        catch (IOException | RuntimeException e) {
+            readFailures.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Appends a value to the log.
+     *
+     * @return false if the value could not be written.
+     */
+    public boolean put(K key, V value) {
+        if (value == null) {
+            return false;
+        }
+        try {
+            append(key, keys.encode(key), values.encode(value));
+            return true;
+        }
+        catch (IOException | RuntimeException e) {
+            writeFailures.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Appends a tombstone for the key to the log.
+     */
+    public void remove(K key) {
+        if (!state.index.containsKey(key)) {
+            return;
+        }
+        try {
+            append(key, keys.encode(key), null);
+        }
+        catch (IOException | RuntimeException e) {
+            writeFailures.incrementAndGet();
+        }
+    }
+
+    /**
+     * Wraps a keyed producer so that results are read from the log first and
+     * written to it after a successful load.
+     */
+    public Function<K, Try<V>> through(Function<? super K, ? extends Try<? extends V>> producer) {
+        return key -> continuation -> {
+            V stored = get(key);
+            if (stored != null) {
+                continuation.ok(stored);
+                return;
+            }
+            producer.apply(key).select(new Try.Case<V>() {
+                @Override
+                public void ok(V v) {
+                    put(key, v);
+                    continuation.ok(v);
+                }
+
+                @Override
+                public void error(@NonNull Throwable t) {
+                    continuation.error(t);
+                }
+
+                @Override
+                public Token token() {
+                    return continuation.token();
+                }
+            });
+        };
+    }
+
+    /**
+     * Stores the result of the source under a fixed key.
+     *
+     * <p> The source is only selected when there is no stored value.
+     */
+    @Transformer
+    public Function<Try<V>, Try<V>> persist(K key) {
+        return source -> through(k -> source).apply(key);
+    }
+
+    /**
+     * The number of keys with a stored value.
+     */
+    public int size() {
+        return state.index.size();
+    }
+
+    /**
+     * The number of bytes used by the latest records of every key.
+     */
+    public long liveBytes() {
+        synchronized (writeLock) {
+            return liveBytes;
+        }
+    }
+
+    /**
+     * The number of bytes used by the whole log, including garbage.
+     */
+    public long logBytes() {
+        synchronized (writeLock) {
+            return state.segment.end;
+        }
+    }
+
+    public long compactions() {
+        return compactions.get();
+    }
+
+    public long readFailures() {
+        return readFailures.get();
+    }
+
+    public long writeFailures() {
+        return writeFailures.get();
+    }
+
+    /**
+     * Rewrites the log without the overwritten, removed and expired records.
+     *
+     * <p> Runs in the calling thread. Does nothing if a compaction is already
+     * running.
+     */
+    public void compact() throws IOException {
+        if (!isCompacting.compareAndSet(false, true)) {
+            return;
+        }
+        Segment next = null;
+        try {
+            State<K> old = state;
+            int snapshotEnd;
+            long snapshotLive;
+            synchronized (writeLock) {
+                snapshotEnd = old.segment.end;
+                snapshotLive = liveBytes;
+            }
+            next = new Segment(compactFile, snapshotLive);
+            ConcurrentHashMap<K, Long> index = new ConcurrentHashMap<>();
+            ByteBuffer source = old.segment.buffer.duplicate();
+            long now = Clock.current().millis();
+            for (Map.Entry<K, Long> e : old.index.entrySet()) {
+                long slot = e.getValue();
+                if (offsetOf(slot) >= snapshotEnd) {
+                    continue;
+                }
+                if (ttl >= 0 && now - source.getLong(offsetOf(slot) + 12) >= ttl) {
+                    continue;
+                }
+                index.put(e.getKey(), copy(source, slot, next));
+            }
+            synchronized (writeLock) {
+                if (isClosed) {
+                    next.close();
+                    return;
+                }
+                Segment current = old.segment;
+                ByteBuffer tail = current.buffer.duplicate();
+                int position = snapshotEnd;
+                while (position < current.end) {
+                    int size = recordSize(tail, position);
+                    long slot = slotOf(position, size);
+                    K key = keys.decode(keyOf(tail, position));
+                    if (tail.getInt(position + 8) == TOMBSTONE) {
+                        index.remove(key);
+                    }
+                    else {
+                        index.put(key, copy(tail, slot, next));
+                    }
+                    position += size;
+                }
+                next.buffer.force();
+                if (!compactFile.renameTo(file)) {
+                    throw new IOException("Unable to replace " + file);
+                }
+                state = new State<>(next, index);
+                liveBytes = next.end;
+                next = null;
+                current.file.close();
+                compactions.incrementAndGet();
+            }
+        }
+        finally {
+            if (next != null) {
+                next.file.close();
+                //noinspection ResultOfMethodCallIgnored
+                compactFile.delete();
+            }
+            isCompacting.set(false);
+        }
+    }
+
+    /**
+     * Flushes and closes the log file.
+     *
+     * <p> Subsequent reads miss and writes fail.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (writeLock) {
+            if (!isClosed) {
+                isClosed = true;
+                state.segment.close();
+            }
+        }
+    }
+
+    private void append(K key, byte[] keyBytes, byte[] valueBytes) throws IOException {
+        int valueLength = valueBytes == null ? 0 : valueBytes.length;
+        int size = HEADER + keyBytes.length + valueLength + TRAILER;
+        boolean shouldCompact;
+        synchronized (writeLock) {
+            if (isClosed) {
+                throw new IOException("Closed");
+            }
+            State<K> s = state;
+            Segment segment = s.segment;
+            segment.ensureCapacity(size);
+            ByteBuffer out = segment.buffer.duplicate();
+            int offset = segment.end;
+            out.position(offset);
+            out.putInt(MAGIC);
+            out.putInt(keyBytes.length);
+            out.putInt(valueBytes == null ? TOMBSTONE : valueLength);
+            out.putLong(Clock.current().millis());
+            out.put(keyBytes);
+            if (valueBytes != null) {
+                out.put(valueBytes);
+            }
+            out.putInt(checksum(out, offset, size - TRAILER));
+            segment.end += size;
+            Long previous;
+            if (valueBytes == null) {
+                previous = s.index.remove(key);
+            }
+            else {
+                previous = s.index.put(key, slotOf(offset, size));
+                liveBytes += size;
+            }
+            if (previous != null) {
+                liveBytes -= sizeOf(previous);
+            }
+            long garbage = segment.end - liveBytes;
+            shouldCompact = segment.end >= minCompactBytes && garbage > liveBytes;
+        }
+        if (shouldCompact && !isCompacting.get()) {
+            compactor.execute(() -> {
+                try {
+                    compact();
+                }
+                catch (IOException e) {
+                    writeFailures.incrementAndGet();
+                }
+            });
+        }
+    }
+
+    private State<K> recover() throws IOException {
+        ConcurrentHashMap<K, Long> index = new ConcurrentHashMap<>();
+        long live = 0;
+        int end = 0;
+        long length = file.exists() ? file.length() : 0;
+        if (length > 0) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                ByteBuffer log = raf.getChannel().map(
+                        FileChannel.MapMode.READ_ONLY,
+                        0,
+                        Math.min(length, MAX_SIZE)
+                );
+                while (end + HEADER + TRAILER <= log.capacity()) {
+                    if (log.getInt(end) != MAGIC) {
+                        break;
+                    }
+                    int size = recordSize(log, end);
+                    if (size < 0 || end + (long) size > log.capacity()) {
+                        break;
+                    }
+                    if (!isIntact(log, end, size)) {
+                        break;
+                    }
+                    K key = keys.decode(keyOf(log, end));
+                    Long previous;
+                    if (log.getInt(end + 8) == TOMBSTONE) {
+                        previous = index.remove(key);
+                    }
+                    else {
+                        previous = index.put(key, slotOf(end, size));
+                        live += size;
+                    }
+                    if (previous != null) {
+                        live -= sizeOf(previous);
+                    }
+                    end += size;
+                }
+            }
+        }
+        // drop the torn tail and the zero padding of the old mapping so that
+        // stale records past it can never be mistaken for live ones
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(end);
+        }
+        Segment segment = new Segment(file, end);
+        segment.end = end;
+        liveBytes = live;
+        return new State<>(segment, index);
+    }
+
+    private static long copy(ByteBuffer source, long slot, Segment target) throws IOException {
+        int size = sizeOf(slot);
+        target.ensureCapacity(size);
+        ByteBuffer from = source.duplicate();
+        from.position(offsetOf(slot));
+        from.limit(offsetOf(slot) + size);
+        ByteBuffer to = target.buffer.duplicate();
+        to.position(target.end);
+        to.put(from);
+        long copied = slotOf(target.end, size);
+        target.end += size;
+        return copied;
+    }
+
+    private static int recordSize(ByteBuffer log, int offset) {
+        int keyLength = log.getInt(offset + 4);
+        int valueLength = log.getInt(offset + 8);
+        if (keyLength < 0 || valueLength < TOMBSTONE) {
+            return -1;
+        }
+        return HEADER + keyLength + Math.max(0, valueLength) + TRAILER;
+    }
+
+    private static byte[] keyOf(ByteBuffer log, int offset) {
+        byte[] key = new byte[log.getInt(offset + 4)];
+        ByteBuffer view = log.duplicate();
+        view.position(offset + HEADER);
+        view.get(key);
+        return key;
+    }
+
+    private static boolean isIntact(ByteBuffer log, int offset, int size) {
+        return log.getInt(offset + size - TRAILER) == checksum(log, offset, size - TRAILER);
+    }
+
+    private static int checksum(ByteBuffer log, int offset, int length) {
+        CRC32 crc = new CRC32();
+        byte[] bytes = new byte[length];
+        ByteBuffer view = log.duplicate();
+        view.position(offset);
+        view.get(bytes);
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private static long slotOf(int offset, int size) {
+        return ((long) offset << 32) | (size & 0xffffffffL);
+    }
+
+    private static int offsetOf(long slot) {
+        return (int) (slot >>> 32);
+    }
+
+    private static int sizeOf(long slot) {
+        return (int) slot;
+    }
+}
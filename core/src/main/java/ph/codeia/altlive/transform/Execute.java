@@ -6,8 +6,14 @@ package ph.codeia.altlive.transform;
 
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import androidx.annotation.NonNull;
 import ph.codeia.altlive.Function;
+import ph.codeia.altlive.Stream;
+import ph.codeia.altlive.Token;
 import ph.codeia.altlive.Try;
 
 public class Execute<T> implements Try<T> {
@@ -34,6 +40,78 @@ public class Execute<T> implements Try<T> {
         return new Execute<>(Try.of(block), executor);
     }
 
+    /**
+     * Runs the source in a new virtual thread.
+     *
+     * <p> Only available in Java 21 and above. Falls back to a shared cached
+     * pool of daemon threads in older runtimes.
+     *
+     * @see #isVirtual()
+     */
+    @Transformer
+    public static <T> Partial<T> onVirtual() {
+        return on(VirtualThreads.executor());
+    }
+
+    /**
+     * Runs a blocking callable in a new virtual thread.
+     *
+     * @see #onVirtual()
+     */
+    public static <T> Execute<T> onVirtual(Callable<? extends T> block) {
+        return on(VirtualThreads.executor(), block);
+    }
+
+    /**
+     * Subscribes to a stream in the executor.
+     *
+     * <p> Requests for more values are passed to the source in the executor
+     * as well, so a source that produces values in the thread that requests
+     * them produces all of them there.
+     */
+    @Transformer
+    public static <T> Function<Stream<T>, Stream<T>> streamOn(Executor executor) {
+        return source -> sink -> {
+            if (sink.token().isCancelled()) {
+                return;
+            }
+            executor.execute(() -> source.subscribe(new Stream.Sink<T>() {
+                @Override
+                public void onStart(Stream.Demand demand) {
+                    sink.onStart(n -> executor.execute(() -> demand.request(n)));
+                }
+
+                @Override
+                public void onNext(T t) {
+                    sink.onNext(t);
+                }
+
+                @Override
+                public void onError(@NonNull Throwable t) {
+                    sink.onError(t);
+                }
+
+                @Override
+                public void onComplete() {
+                    sink.onComplete();
+                }
+
+                @Override
+                public Token token() {
+                    return sink.token();
+                }
+            }));
+        };
+    }
+
+    /**
+     * Returns true if {@link #onVirtual()} actually runs on virtual threads
+     * in this runtime.
+     */
+    public static boolean isVirtual() {
+        return VirtualThreads.isSupported();
+    }
+
     private final Try<T> source;
     private final Executor executor;
 
@@ -42,8 +120,91 @@ public class Execute<T> implements Try<T> {
         this.executor = executor;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p> When the token of the continuation is cancelled before the source
+     * is selected, the queued runnable is removed from the executor if it is
+     * a {@link ThreadPoolExecutor} and is skipped otherwise. If the source is
+     * being selected at that moment, the worker thread is interrupted.
+     *
+     * <p> A runnable that is dequeued after the deadline of the token has
+     * passed does not select the source and fails with a
+     * {@link TimeoutException} instead.
+     */
     @Override
     public void select(Case<? super T> continuation) {
-        executor.execute(() -> source.select(continuation));
+        Token token = continuation.token();
+        if (token == Token.NONE) {
+            executor.execute(() -> source.select(continuation));
+            return;
+        }
+        if (token.isCancelled()) {
+            return;
+        }
+        Job job = new Job(continuation);
+        job.registration = token.onCancel(job::cancel);
+        executor.execute(job);
+    }
+
+    private class Job implements Runnable {
+        static final int QUEUED = 0;
+        static final int RUNNING = 1;
+        static final int DONE = 2;
+
+        final Case<? super T> continuation;
+        final AtomicInteger state = new AtomicInteger(QUEUED);
+        volatile Token.Registration registration = Token.Registration.NOOP;
+        Thread runner;
+        boolean isInterrupted = false;
+
+        Job(Case<? super T> continuation) {
+            this.continuation = continuation;
+        }
+
+        @Override
+        public void run() {
+            if (!state.compareAndSet(QUEUED, RUNNING)) {
+                return;
+            }
+            if (continuation.token().isExpired()) {
+                state.set(DONE);
+                registration.remove();
+                continuation.error(new TimeoutException());
+                return;
+            }
+            synchronized (this) {
+                runner = Thread.currentThread();
+            }
+            try {
+                source.select(continuation);
+            }
+            finally {
+                synchronized (this) {
+                    runner = null;
+                    state.set(DONE);
+                    if (isInterrupted) {
+                        // don't leak the interrupt into the next task of the pool
+                        Thread.interrupted();
+                    }
+                }
+                registration.remove();
+            }
+        }
+
+        void cancel() {
+            if (state.compareAndSet(QUEUED, DONE)) {
+                if (executor instanceof ThreadPoolExecutor) {
+                    ((ThreadPoolExecutor) executor).remove(this);
+                }
+                return;
+            }
+            synchronized (this) {
+                if (state.get() == RUNNING && runner != null) {
+                    isInterrupted = true;
+                    runner.interrupt();
+                }
+            }
+        }
     }
 }
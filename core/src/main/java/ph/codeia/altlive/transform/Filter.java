@@ -8,6 +8,7 @@ import java.util.NoSuchElementException;
 
 import androidx.annotation.NonNull;
 import ph.codeia.altlive.Function;
+import ph.codeia.altlive.Token;
 import ph.codeia.altlive.Try;
 
 public class Filter<T> implements Try<T> {
@@ -72,6 +73,11 @@ public class Filter<T> implements Try<T> {
             public void error(@NonNull Throwable t) {
                 continuation.error(t);
             }
+
+            @Override
+            public Token token() {
+                return continuation.token();
+            }
         });
     }
 }
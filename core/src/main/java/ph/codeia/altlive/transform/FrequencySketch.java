@@ -0,0 +1,81 @@
+package ph.codeia.altlive.transform;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+/**
+ * Approximate access counter used by the admission policy of {@link Cached}.
+ *
+ * <p> A count-min sketch with 4 rows and saturating counters. Every counter is
+ * halved after a fixed number of increments so that the counts favor recent
+ * history. Not thread safe; callers must hold the cache's eviction lock.
+ */
+class FrequencySketch {
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = {
+            0x97cb3127, 0xb4b82e4f, 0x9e3779b9, 0x7f4a7c15,
+    };
+
+    private final int[] table;
+    private final int mask;
+    private final int sampleSize;
+    private int additions = 0;
+
+    FrequencySketch(long expectedEntries) {
+        int width = 16;
+        while (width < expectedEntries && width < (1 << 20)) {
+            width <<= 1;
+        }
+        table = new int[width * DEPTH];
+        mask = width - 1;
+        sampleSize = 10 * width;
+    }
+
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int min = MAX_COUNT;
+        for (int i = 0; i < DEPTH; i++) {
+            min = Math.min(min, table[indexOf(hash, i)]);
+        }
+        return min;
+    }
+
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean isAdded = false;
+        for (int i = 0; i < DEPTH; i++) {
+            int index = indexOf(hash, i);
+            if (table[index] < MAX_COUNT) {
+                table[index] += 1;
+                isAdded = true;
+            }
+        }
+        if (isAdded && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] >>>= 1;
+        }
+        additions >>>= 1;
+    }
+
+    private int indexOf(int hash, int row) {
+        int h = (hash ^ SEEDS[row]) * SEEDS[(row + 1) % DEPTH];
+        h ^= h >>> 16;
+        return row * (mask + 1) + (h & mask);
+    }
+
+    private static int spread(int h) {
+        h ^= h >>> 17;
+        h *= 0xed5ad4bb;
+        h ^= h >>> 11;
+        h *= 0xac4c1b51;
+        h ^= h >>> 15;
+        return h;
+    }
+}
@@ -0,0 +1,353 @@
+package ph.codeia.altlive.transform;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A {@link Scheduler} backed by a hashed timing wheel.
+ *
+ * <p> The wheel is an array of buckets that a single worker thread visits
+ * in turn, one per tick. A block goes to the bucket of the tick it is due in,
+ * along with the number of full turns of the wheel left before it is due.
+ * Scheduling and cancelling only append to a concurrent queue that the worker
+ * drains when it wakes up, so both are O(1). The price is precision: blocks
+ * run up to one tick late.
+ *
+ * <p> The worker skips the empty buckets and sleeps until the tick of the
+ * next bucket that has blocks, so it wakes up at most once per busy bucket
+ * per turn of the wheel instead of every tick. Scheduling a block that is due
+ * sooner wakes it up early. Cancelled blocks leave the wheel the next time the
+ * worker wakes up, or as soon as a turn's worth of them has piled up.
+ *
+ * <p> The worker is a daemon thread that is started on the first schedule
+ * and sleeps without ticking while there is nothing scheduled. Blocks run in
+ * the worker thread; a slow block delays every other block. A block that
+ * throws is reported to the uncaught exception handler of the worker thread,
+ * and the worker goes on with the other blocks if the handler returns.
+ */
+public class HashedWheelTimer implements Scheduler {
+
+    private static final int INIT = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+    private static final AtomicInteger COUNT = new AtomicInteger(0);
+
+    private class Timeout implements Handle {
+        final Runnable block;
+        final long deadline;
+        final AtomicInteger state = new AtomicInteger(INIT);
+        long rounds;
+        Bucket bucket;
+        Timeout prev;
+        Timeout next;
+
+        Timeout(Runnable block, long deadline) {
+            this.block = block;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!state.compareAndSet(INIT, CANCELLED)) {
+                return false;
+            }
+            active.decrementAndGet();
+            cancellations.add(this);
+            if (backlog.incrementAndGet() == wheel.length) {
+                // purge before the wheel fills up with dead blocks
+                LockSupport.unpark(worker);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Only touched by the worker thread.
+     */
+    private static class Bucket {
+        Timeout head;
+        Timeout tail;
+
+        void add(Timeout t) {
+            t.bucket = this;
+            if (head == null) {
+                head = tail = t;
+            }
+            else {
+                tail.next = t;
+                t.prev = tail;
+                tail = t;
+            }
+        }
+
+        void remove(Timeout t) {
+            if (t.prev == null) {
+                head = t.next;
+            }
+            else {
+                t.prev.next = t.next;
+            }
+            if (t.next == null) {
+                tail = t.prev;
+            }
+            else {
+                t.next.prev = t.prev;
+            }
+            t.prev = t.next = null;
+            t.bucket = null;
+        }
+    }
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Queue<Timeout> additions = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancellations = new ConcurrentLinkedQueue<>();
+    private final AtomicLong active = new AtomicLong(0);
+    private final AtomicInteger backlog = new AtomicInteger(0);
+    private final AtomicLong ticks = new AtomicLong(0);
+    private final AtomicBoolean isStarted = new AtomicBoolean(false);
+    private final Object idle = new Object();
+    private volatile boolean isIdle = false;
+    private volatile boolean isParked = false;
+    private volatile long parkedUntil = 0;
+    private volatile boolean isStopped = false;
+    private volatile Thread worker;
+
+    /**
+     * Ticks every 5 millis with a wheel of 512 buckets.
+     */
+    public HashedWheelTimer() {
+        this(5, TimeUnit.MILLISECONDS, 512);
+    }
+
+    /**
+     * @param tickDuration The precision of the timer
+     * @param units The unit of the tick duration
+     * @param wheelSize The number of buckets, rounded up to a power of 2. A
+     *                  block that is due in more than {@code tickDuration *
+     *                  wheelSize} shares its bucket with sooner blocks.
+     */
+    public HashedWheelTimer(long tickDuration, TimeUnit units, int wheelSize) {
+        if (tickDuration <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("Tick and wheel size must be positive");
+        }
+        int size = 1;
+        while (size < wheelSize && size < (1 << 30)) {
+            size <<= 1;
+        }
+        tickNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(1), units.toNanos(tickDuration));
+        wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        mask = size - 1;
+    }
+
+    @Override
+    public Handle schedule(Runnable block, long delayMillis) {
+        if (isStopped) {
+            throw new IllegalStateException("Timer is stopped");
+        }
+        start();
+        long delay = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, delayMillis));
+        Timeout timeout = new Timeout(block, System.nanoTime() + delay);
+        active.incrementAndGet();
+        additions.add(timeout);
+        if (isIdle) {
+            synchronized (idle) {
+                idle.notifyAll();
+            }
+        }
+        else if (isParked && timeout.deadline - parkedUntil < 0) {
+            LockSupport.unpark(worker);
+        }
+        return timeout;
+    }
+
+    /**
+     * The number of blocks that have neither run nor been cancelled.
+     */
+    public long pending() {
+        return active.get();
+    }
+
+    /**
+     * The number of ticks that the worker woke up for.
+     */
+    public long ticks() {
+        return ticks.get();
+    }
+
+    /**
+     * Stops the worker thread. Blocks that have not run yet never will.
+     */
+    public void stop() {
+        isStopped = true;
+        synchronized (idle) {
+            idle.notifyAll();
+        }
+        Thread t = worker;
+        if (t != null) {
+            t.interrupt();
+        }
+    }
+
+    private void start() {
+        if (isStarted.get() || !isStarted.compareAndSet(false, true)) {
+            return;
+        }
+        Thread t = new Thread(this::run, "altlive-timer-" + COUNT.incrementAndGet());
+        t.setDaemon(true);
+        worker = t;
+        t.start();
+    }
+
+    private void run() {
+        long start = System.nanoTime();
+        long tick = 0;
+        while (!isStopped) {
+            purgeCancelled();
+            transfer(start, tick);
+            long next = nextBusyTick(tick);
+            if (next < 0) {
+                if (awaitWork()) {
+                    // the wheel is empty, so it can start turning from anywhere
+                    start = System.nanoTime();
+                    tick = 0;
+                }
+                continue;
+            }
+            if (!sleepUntil(start + (next + 1) * tickNanos)) {
+                // woken early to place a sooner block or to purge
+                continue;
+            }
+            // the buckets of the ticks in between are empty
+            tick = next;
+            ticks.incrementAndGet();
+            expire(wheel[(int) (tick & mask)], System.nanoTime());
+            tick += 1;
+        }
+    }
+
+    /**
+     * @return the first tick from the given one whose bucket has blocks, or
+     * -1 if the wheel is empty.
+     */
+    private long nextBusyTick(long tick) {
+        for (int i = 0; i < wheel.length; i++) {
+            if (wheel[(int) ((tick + i) & mask)].head != null) {
+                return tick + i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return false if the worker has to replan before the deadline because
+     * it was stopped, a block was scheduled or enough blocks were cancelled.
+     */
+    private boolean sleepUntil(long deadline) {
+        parkedUntil = deadline;
+        isParked = true;
+        try {
+            long now;
+            while ((now = System.nanoTime()) - deadline < 0) {
+                // checked after publishing the deadline so that schedule()
+                // either sees it or the worker sees the new block
+                if (isStopped || !additions.isEmpty() || backlog.get() >= wheel.length) {
+                    return false;
+                }
+                LockSupport.parkNanos(this, deadline - now);
+                // a stray interrupt would keep the park from blocking
+                Thread.interrupted();
+            }
+            return true;
+        }
+        finally {
+            isParked = false;
+        }
+    }
+
+    /**
+     * @return true if the worker had to wait.
+     */
+    private boolean awaitWork() {
+        purgeCancelled();
+        synchronized (idle) {
+            isIdle = true;
+            try {
+                if (!additions.isEmpty() || isStopped) {
+                    return false;
+                }
+                while (additions.isEmpty() && !isStopped) {
+                    try {
+                        idle.wait();
+                    }
+                    catch (InterruptedException ignored) {
+                    }
+                }
+                return true;
+            }
+            finally {
+                isIdle = false;
+            }
+        }
+    }
+
+    private void purgeCancelled() {
+        Timeout t;
+        while ((t = cancellations.poll()) != null) {
+            backlog.decrementAndGet();
+            if (t.bucket != null) {
+                t.bucket.remove(t);
+            }
+        }
+    }
+
+    private void transfer(long start, long tick) {
+        Timeout t;
+        while ((t = additions.poll()) != null) {
+            if (t.state.get() != INIT) {
+                continue;
+            }
+            long due = Math.max(0L, t.deadline - start) / tickNanos;
+            long ticks = Math.max(due, tick);
+            t.rounds = (ticks - tick) / wheel.length;
+            wheel[(int) (ticks & mask)].add(t);
+        }
+    }
+
+    private void expire(Bucket bucket, long now) {
+        Timeout t = bucket.head;
+        while (t != null) {
+            Timeout next = t.next;
+            if (t.rounds > 0) {
+                t.rounds -= 1;
+            }
+            else if (t.deadline - now <= 0 || t.state.get() != INIT) {
+                bucket.remove(t);
+                if (t.state.compareAndSet(INIT, EXPIRED)) {
+                    active.decrementAndGet();
+                    try {
+                        t.block.run();
+                    }
+                    catch (Throwable e) {
+                        Thread self = Thread.currentThread();
+                        self.getUncaughtExceptionHandler().uncaughtException(self, e);
+                    }
+                }
+            }
+            t = next;
+        }
+    }
+}
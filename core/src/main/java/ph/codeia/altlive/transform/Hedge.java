@@ -0,0 +1,223 @@
+package ph.codeia.altlive.transform;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+import ph.codeia.altlive.Function;
+import ph.codeia.altlive.Token;
+import ph.codeia.altlive.Try;
+
+/**
+ * Starts a second computation of the same source if the first one takes too
+ * long, and takes whichever finishes first.
+ *
+ * <p> The hedge delay is either fixed or a percentile of the latencies of the
+ * previous successful selects. The result of the losing computation is
+ * ignored. An error from one computation is only passed on if the other one
+ * is not running, so a fast failure of the hedge does not hide a slow success
+ * of the original. The hedge is not started at all when the first computation
+ * fails before the delay elapses.
+ *
+ * <p> This only makes sense for idempotent sources, since the source may be
+ * selected twice for every select of the hedge.
+ *
+ * @param <T> The type of the value being computed
+ */
+public class Hedge<T> implements Try<T> {
+
+    public static class Partial<T> implements Function<Try<T>, Hedge<T>> {
+        private final long delay;
+        private final double percentile;
+        private int maxHedges = 0;
+
+        private Partial(long delay, double percentile) {
+            this.delay = delay;
+            this.percentile = percentile;
+        }
+
+        /**
+         * Sets the maximum number of hedged computations that may be running
+         * at the same time across all selects of the resulting object.
+         *
+         * <p> No limit when less than 1, which is the default.
+         */
+        @Transformer
+        public Partial<T> limit(int maxHedges) {
+            this.maxHedges = maxHedges;
+            return this;
+        }
+
+        @Override
+        public Hedge<T> apply(Try<T> source) {
+            return new Hedge<>(source, delay, percentile, maxHedges);
+        }
+    }
+
+    /**
+     * Hedges after a fixed delay.
+     *
+     * <p> Never hedges when the delay is less than 1.
+     */
+    @Transformer
+    public static <T> Partial<T> after(long delay) {
+        return new Partial<>(delay, 0.0);
+    }
+
+    @Transformer
+    public static <T> Partial<T> after(long delay, TimeUnit units) {
+        return after(units.toMillis(delay));
+    }
+
+    /**
+     * Hedges after the given percentile of the observed latencies.
+     *
+     * @param percentile A number between 0 and 1 exclusive, e.g. 0.95.
+     * @param initialDelay The delay used until enough samples are collected.
+     */
+    @Transformer
+    public static <T> Partial<T> atPercentile(double percentile, long initialDelay) {
+        if (percentile <= 0.0 || percentile >= 1.0) {
+            throw new IllegalArgumentException("Expecting a percentile between 0 and 1");
+        }
+        return new Partial<>(initialDelay, percentile);
+    }
+
+    private static final int WINDOW = 128;
+    private static final int MIN_SAMPLES = 16;
+
+    private final Try<T> source;
+    private final long delay;
+    private final double percentile;
+    private final int maxHedges;
+    private final AtomicInteger activeHedges = new AtomicInteger(0);
+    private final long[] samples = new long[WINDOW];
+    private int sampleCount;
+
+    public Hedge(Try<T> source, long delay, double percentile, int maxHedges) {
+        this.source = source;
+        this.delay = delay;
+        this.percentile = percentile;
+        this.maxHedges = maxHedges;
+    }
+
+    public Hedge(Try<T> source, long delay) {
+        this(source, delay, 0.0, 0);
+    }
+
+    /**
+     * Returns the delay that the next select would wait before hedging.
+     */
+    public synchronized long currentDelay() {
+        if (percentile <= 0.0 || sampleCount < MIN_SAMPLES) {
+            return delay;
+        }
+        int n = Math.min(sampleCount, WINDOW);
+        long[] sorted = Arrays.copyOf(samples, n);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile * n) - 1;
+        return sorted[Math.max(0, rank)];
+    }
+
+    /**
+     * Returns the number of hedged computations currently running.
+     */
+    public int activeHedges() {
+        return activeHedges.get();
+    }
+
+    @Override
+    public void select(Case<? super T> continuation) {
+        new Race(continuation).start();
+    }
+
+    private synchronized void record(long millis) {
+        samples[sampleCount % WINDOW] = millis;
+        sampleCount += 1;
+    }
+
+    private class Race {
+        final Case<? super T> continuation;
+        final long start = Delay.scheduler().millis();
+        Scheduler.Handle timer;
+        boolean done = false;
+        int running = 0;
+
+        Race(Case<? super T> continuation) {
+            this.continuation = continuation;
+        }
+
+        void start() {
+            long millis = currentDelay();
+            synchronized (this) {
+                running = 1;
+                if (millis > 0) {
+                    timer = Delay.schedule(continuation.token(), this::hedge, millis);
+                }
+            }
+            source.select(attempt(false));
+        }
+
+        void hedge() {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                int hedges = activeHedges.incrementAndGet();
+                if (maxHedges > 0 && hedges > maxHedges) {
+                    activeHedges.decrementAndGet();
+                    return;
+                }
+                running += 1;
+            }
+            source.select(attempt(true));
+        }
+
+        Case<T> attempt(boolean isHedge) {
+            return new Case<T>() {
+                @Override
+                public void ok(T t) {
+                    if (settle(isHedge, false)) {
+                        record(Delay.scheduler().millis() - start);
+                        continuation.ok(t);
+                    }
+                }
+
+                @Override
+                public void error(@NonNull Throwable t) {
+                    if (settle(isHedge, true)) {
+                        continuation.error(t);
+                    }
+                }
+
+                @Override
+                public Token token() {
+                    return continuation.token();
+                }
+            };
+        }
+
+        synchronized boolean settle(boolean isHedge, boolean isError) {
+            if (isHedge) {
+                activeHedges.decrementAndGet();
+            }
+            running -= 1;
+            if (done) {
+                return false;
+            }
+            if (isError && running > 0) {
+                return false;
+            }
+            done = true;
+            if (timer != null) {
+                timer.cancel();
+            }
+            return true;
+        }
+    }
+}
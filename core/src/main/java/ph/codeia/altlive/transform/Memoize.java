@@ -4,76 +4,257 @@ package ph.codeia.altlive.transform;
  * This file is a part of the AltLiveData project.
  */
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 import androidx.annotation.NonNull;
+import ph.codeia.altlive.Function;
 import ph.codeia.altlive.Try;
 
+/**
+ * Caches the result of the source.
+ *
+ * <p> Concurrent selects while the source is running share the same
+ * computation instead of starting another one. Successful results and errors
+ * have separate time-to-live values; an expired result is recomputed on the
+ * next select. Reading a published result does not take a lock.
+ *
+ * <p> A TTL of 0 disables caching of that branch, while a negative TTL keeps
+ * the result until {@link #clear()} is called. The constructor caches both
+ * branches forever.
+ *
+ * @param <T> The type of the value being computed
+ */
 public class Memoize<T> implements Try<T> {
+
+    public static class Partial<T> implements Function<Try<T>, Memoize<T>> {
+        private final long ttl;
+        private final long errorTtl;
+        private Scheduler scheduler;
+
+        private Partial(long ttl, long errorTtl) {
+            this.ttl = ttl;
+            this.errorTtl = errorTtl;
+        }
+
+        /**
+         * Sets the clock that the TTLs are measured with.
+         *
+         * <p> Defaults to the scheduler installed with
+         * {@link Delay#setScheduler(Scheduler)}.
+         */
+        public Partial<T> scheduler(Scheduler scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        @Override
+        public Memoize<T> apply(Try<T> source) {
+            return new Memoize<>(source, ttl, errorTtl, scheduler);
+        }
+    }
+
+    /**
+     * Caches successful results for {@code ttl} millis and errors for
+     * {@code errorTtl} millis.
+     */
+    @Transformer
+    public static <T> Partial<T> expireAfter(long ttl, long errorTtl) {
+        return new Partial<>(ttl, errorTtl);
+    }
+
+    @Transformer
+    public static <T> Partial<T> expireAfter(long ttl, long errorTtl, TimeUnit units) {
+        return expireAfter(units.toMillis(ttl), units.toMillis(errorTtl));
+    }
+
+    /**
+     * Caches successful results for {@code ttl} millis and never caches errors.
+     */
+    @Transformer
+    public static <T> Partial<T> expireAfter(long ttl) {
+        return expireAfter(ttl, 0L);
+    }
+
+    private static class Entry<T> {
+        final T value;
+        final Throwable error;
+        final long timestamp;
+        final long expiresAt;
+
+        Entry(T value, Throwable error, long timestamp, long ttl) {
+            this.value = value;
+            this.error = error;
+            this.timestamp = timestamp;
+            this.expiresAt = ttl < 0 ? Long.MAX_VALUE : timestamp + ttl;
+        }
+
+        boolean isFresh(long now) {
+            return now < expiresAt;
+        }
+    }
+
     private final Try<T> source;
-    private T value;
-    private Throwable error;
-    private boolean isDone = false;
-    private long timestamp;
+    private final long ttl;
+    private final long errorTtl;
+    private final Scheduler scheduler;
+    private volatile Entry<T> entry;
+    private List<Case<? super T>> waiters;
+    private int generation = 0;
+
+    /**
+     * @param scheduler Tells the time. Null to use the one installed with
+     *                  {@link Delay#setScheduler(Scheduler)}.
+     */
+    public Memoize(Try<T> source, long ttl, long errorTtl, Scheduler scheduler) {
+        this.source = source;
+        this.ttl = ttl;
+        this.errorTtl = errorTtl;
+        this.scheduler = scheduler;
+    }
+
+    public Memoize(Try<T> source, long ttl, long errorTtl) {
+        this(source, ttl, errorTtl, null);
+    }
 
     @Transformer
     public Memoize(Try<T> source) {
-        this.source = source;
+        this(source, -1L, -1L);
     }
 
+    /**
+     * Drops the cached result.
+     *
+     * <p> A computation that is in flight at this point still delivers its
+     * result to the selects waiting on it, but the result is not cached.
+     */
     public synchronized void clear() {
-        value = null;
-        error = null;
-        isDone = false;
+        entry = null;
+        generation += 1;
     }
 
     public boolean hasValue() {
-        return isDone;
+        Entry<T> e = entry;
+        return e != null && e.isFresh(now());
     }
 
     public boolean isOlderThan(long millis) {
-        return !isDone || System.currentTimeMillis() - timestamp > millis;
+        Entry<T> e = entry;
+        return e == null || now() - e.timestamp > millis;
+    }
+
+    /**
+     * Returns how many millis ago the cached result was computed, or -1 if
+     * there is no cached result.
+     *
+     * <p> Expired results still have an age until they are replaced.
+     */
+    public long age() {
+        Entry<T> e = entry;
+        return e == null ? -1L : now() - e.timestamp;
+    }
+
+    /**
+     * Returns a number that changes every time the cache is cleared.
+     */
+    synchronized int generation() {
+        return generation;
+    }
+
+    /**
+     * Replaces the cached result with a value computed elsewhere.
+     *
+     * <p> Used by {@link Refresh} to publish the result of a background
+     * refresh without making readers wait. Like the result of a select, the
+     * value is not cached if the cache was cleared after the computation
+     * started.
+     *
+     * @param generation The {@link #generation()} when the computation
+     *                   started.
+     */
+    synchronized void put(T value, int generation) {
+        if (ttl != 0 && generation == this.generation) {
+            entry = new Entry<>(value, null, now(), ttl);
+        }
+    }
+
+    /**
+     * The number of selects currently waiting for the source to finish.
+     */
+    public synchronized int pending() {
+        return waiters == null ? 0 : waiters.size();
     }
 
     @Override
     public void select(Case<? super T> continuation) {
-        if (isDone) {
-            resume(continuation);
+        Entry<T> e = entry;
+        if (e != null && e.isFresh(now())) {
+            resume(e, continuation);
+            return;
+        }
+        int loadGeneration;
+        synchronized (this) {
+            e = entry;
+            if (e != null && e.isFresh(now())) {
+                // published while waiting for the lock; resumed below
+                loadGeneration = -1;
+            }
+            else if (waiters != null) {
+                waiters.add(continuation);
+                return;
+            }
+            else {
+                waiters = new ArrayList<>();
+                waiters.add(continuation);
+                loadGeneration = generation;
+            }
+        }
+        if (loadGeneration < 0) {
+            resume(e, continuation);
             return;
         }
         source.select(new Case<T>() {
             @Override
             public void ok(T t) {
-                synchronized (Memoize.this) {
-                    if (!isDone) {
-                        value = t;
-                        timestamp = System.currentTimeMillis();
-                        isDone = true;
-                    }
-                }
-                resume(continuation);
+                publish(new Entry<>(t, null, now(), ttl), ttl);
             }
 
             @Override
             public void error(@NonNull Throwable t) {
+                publish(new Entry<>(null, t, now(), errorTtl), errorTtl);
+            }
+
+            void publish(Entry<T> result, long resultTtl) {
+                List<Case<? super T>> done;
                 synchronized (Memoize.this) {
-                    if (!isDone) {
-                        error = t;
-                        timestamp = System.currentTimeMillis();
-                        isDone = true;
-                        continuation.error(t);
+                    if (waiters == null) {
+                        // the source called back twice
+                        return;
                     }
+                    if (resultTtl != 0 && loadGeneration == generation) {
+                        entry = result;
+                    }
+                    done = waiters;
+                    waiters = null;
+                }
+                for (Case<? super T> waiter : done) {
+                    resume(result, waiter);
                 }
-                resume(continuation);
             }
         });
     }
 
-    private void resume(Case<? super T> continuation) {
-        if (error == null) {
-            continuation.ok(value);
+    private static <T> void resume(Entry<T> e, Case<? super T> continuation) {
+        if (e.error == null) {
+            continuation.ok(e.value);
         }
         else {
-            continuation.error(error);
+            continuation.error(e.error);
         }
     }
-}
 
+    private long now() {
+        return scheduler == null ? Delay.scheduler().millis() : scheduler.millis();
+    }
+}
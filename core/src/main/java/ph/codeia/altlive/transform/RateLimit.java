@@ -0,0 +1,268 @@
+package ph.codeia.altlive.transform;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ph.codeia.altlive.Token;
+import ph.codeia.altlive.Try;
+
+/**
+ * Paces the selects of the computations that pass through it.
+ *
+ * <p> A token bucket holding up to {@code burst} permits that refills at a
+ * fixed rate. The bucket is kept as a single atomic timestamp (the time when
+ * the bucket would be full again) that is advanced by one interval per permit,
+ * so acquiring a permit is one compare-and-set and the refill is computed from
+ * the clock of the {@link Scheduler} only when a permit is requested.
+ *
+ * <p> One instance is meant to be shared by every computation that calls the
+ * same endpoint: {@code source.pipe(limit::apply)}. When the bucket is empty,
+ * the select either fails with {@link Exceeded}, waits on the scheduler
+ * until its permit is due, or waits only if fewer than a given number of
+ * selects are already waiting. A permit is consumed even when the waiting
+ * select is cancelled.
+ */
+public class RateLimit {
+
+    /**
+     * Raised when no permit is available. Has no stack trace so that it is
+     * cheap to raise under load.
+     */
+    public static class Exceeded extends IllegalStateException {
+        private Exceeded() {
+            super("Rate limit exceeded.");
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    /**
+     * Mutable builder to configure a {@link RateLimit} instance.
+     */
+    public static class Builder {
+        private final long interval;
+        private int burst = 1;
+        private int maxWaiting = 0;
+        private Scheduler scheduler;
+
+        private Builder(long interval) {
+            this.interval = interval;
+        }
+
+        /**
+         * Sets the number of permits that can be taken at once after a period
+         * of inactivity.
+         *
+         * <p> Defaults to 1.
+         */
+        public Builder burst(int permits) {
+            if (permits < 1) {
+                throw new IllegalArgumentException("Burst must be positive");
+            }
+            this.burst = permits;
+            return this;
+        }
+
+        /**
+         * Fails immediately when there are no permits. This is the default.
+         */
+        public Builder failFast() {
+            maxWaiting = 0;
+            return this;
+        }
+
+        /**
+         * Waits as long as needed for a permit.
+         */
+        public Builder delay() {
+            maxWaiting = Integer.MAX_VALUE;
+            return this;
+        }
+
+        /**
+         * Waits for a permit unless {@code depth} selects are already waiting.
+         * A waiting select gives up its place in the queue when its token is
+         * cancelled, but not its permit.
+         */
+        public Builder queue(int depth) {
+            if (depth < 0) {
+                throw new IllegalArgumentException("Depth must not be negative");
+            }
+            maxWaiting = depth;
+            return this;
+        }
+
+        /**
+         * Sets the scheduler that tells the time and runs the delayed selects.
+         *
+         * <p> Defaults to the scheduler installed with
+         * {@link Delay#setScheduler(Scheduler)}.
+         */
+        public Builder scheduler(Scheduler scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        public RateLimit build() {
+            return new RateLimit(interval, burst, maxWaiting, scheduler);
+        }
+    }
+
+    public static Builder of(double permits, long per, TimeUnit units) {
+        if (permits <= 0 || per <= 0) {
+            throw new IllegalArgumentException("Rate must be positive");
+        }
+        return new Builder(Math.max(1L, (long) (units.toNanos(per) / permits)));
+    }
+
+    public static Builder perSecond(double permits) {
+        return of(permits, 1, TimeUnit.SECONDS);
+    }
+
+    private final long interval;
+    private final long tolerance;
+    private final int maxWaiting;
+    private final Scheduler scheduler;
+    private final AtomicLong full;
+    private final AtomicInteger waiting = new AtomicInteger(0);
+    private final AtomicLong permitted = new AtomicLong(0);
+    private final AtomicLong delayed = new AtomicLong(0);
+    private final AtomicLong rejected = new AtomicLong(0);
+
+    private RateLimit(long interval, int burst, int maxWaiting, Scheduler scheduler) {
+        this.interval = interval;
+        this.tolerance = (burst - 1) * interval;
+        this.maxWaiting = maxWaiting;
+        this.scheduler = scheduler;
+        full = new AtomicLong(scheduler().nanos());
+    }
+
+    /**
+     * Makes every select of the source take a permit first.
+     *
+     * @param <T> The type of the value being computed
+     */
+    @Transformer
+    public <T> Try<T> apply(Try<T> source) {
+        return continuation -> {
+            long wait = acquire(0L);
+            if (wait < 0) {
+                if (!join()) {
+                    rejected.incrementAndGet();
+                    continuation.error(new Exceeded());
+                    return;
+                }
+                wait = acquire(Long.MAX_VALUE);
+                if (wait == 0) {
+                    // a permit became due in the meantime
+                    waiting.decrementAndGet();
+                }
+            }
+            permitted.incrementAndGet();
+            if (wait == 0) {
+                source.select(continuation);
+                return;
+            }
+            delayed.incrementAndGet();
+            AtomicBoolean isWaiting = new AtomicBoolean(true);
+            Runnable leave = () -> {
+                if (isWaiting.getAndSet(false)) {
+                    waiting.decrementAndGet();
+                }
+            };
+            Token.Registration registration = continuation.token().onCancel(leave);
+            long millis = TimeUnit.NANOSECONDS.toMillis(wait + 999_999L);
+            Delay.schedule(scheduler(), continuation.token(), () -> {
+                registration.remove();
+                leave.run();
+                source.select(continuation);
+            }, millis);
+        };
+    }
+
+    /**
+     * Takes a permit if one is available now.
+     */
+    public boolean tryAcquire() {
+        return acquire(0L) == 0L;
+    }
+
+    /**
+     * The number of permits that can be taken right now.
+     */
+    public int availablePermits() {
+        long now = scheduler().nanos();
+        long debt = Math.max(0L, full.get() - now);
+        return (int) Math.max(0L, (tolerance + interval - debt) / interval);
+    }
+
+    public long permitted() {
+        return permitted.get();
+    }
+
+    /**
+     * The number of permitted selects that had to wait.
+     */
+    public long delayed() {
+        return delayed.get();
+    }
+
+    public long rejected() {
+        return rejected.get();
+    }
+
+    /**
+     * The number of selects waiting for their permit.
+     */
+    public int waiting() {
+        return waiting.get();
+    }
+
+    /**
+     * Takes a place in the queue unless it is full.
+     */
+    private boolean join() {
+        while (true) {
+            int current = waiting.get();
+            if (current >= maxWaiting) {
+                return false;
+            }
+            if (waiting.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Reserves a permit unless it is due later than {@code maxWait} nanos.
+     *
+     * @return nanos to wait for the permit, or -1 if the wait is too long.
+     */
+    private long acquire(long maxWait) {
+        long now = scheduler().nanos();
+        while (true) {
+            long current = full.get();
+            long start = Math.max(current, now);
+            long wait = start - now - tolerance;
+            if (wait > maxWait) {
+                return -1L;
+            }
+            if (full.compareAndSet(current, start + interval)) {
+                return Math.max(0L, wait);
+            }
+        }
+    }
+
+    private Scheduler scheduler() {
+        return scheduler == null ? Delay.scheduler() : scheduler;
+    }
+}
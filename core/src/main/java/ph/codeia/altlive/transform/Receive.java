@@ -4,10 +4,15 @@ package ph.codeia.altlive.transform;
  * This file is a part of the AltLiveData project.
  */
 
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import androidx.annotation.NonNull;
 import ph.codeia.altlive.Function;
+import ph.codeia.altlive.Stream;
+import ph.codeia.altlive.Token;
 import ph.codeia.altlive.Try;
 
 public class Receive<T> implements Try<T> {
@@ -30,6 +35,17 @@ public class Receive<T> implements Try<T> {
         return new Partial<>(executor);
     }
 
+    /**
+     * Delivers the signals of a stream in the executor.
+     *
+     * <p> The signals are queued and delivered one at a time in order, even
+     * if the executor has more than one thread.
+     */
+    @Transformer
+    public static <T> Function<Stream<T>, Stream<T>> streamOn(Executor executor) {
+        return source -> sink -> source.subscribe(new Serial<>(sink, executor));
+    }
+
     private final Try<T> source;
     private final Executor executor;
 
@@ -50,7 +66,67 @@ public class Receive<T> implements Try<T> {
             public void error(@NonNull Throwable t) {
                 executor.execute(() -> continuation.error(t));
             }
+
+            @Override
+            public Token token() {
+                return continuation.token();
+            }
         });
     }
-}
 
+    private static class Serial<T> implements Stream.Sink<T>, Runnable {
+        final Stream.Sink<? super T> sink;
+        final Executor executor;
+        final Queue<Runnable> signals = new ConcurrentLinkedQueue<>();
+        final AtomicInteger wip = new AtomicInteger(0);
+
+        Serial(Stream.Sink<? super T> sink, Executor executor) {
+            this.sink = sink;
+            this.executor = executor;
+        }
+
+        @Override
+        public void onStart(Stream.Demand demand) {
+            enqueue(() -> sink.onStart(demand));
+        }
+
+        @Override
+        public void onNext(T t) {
+            enqueue(() -> sink.onNext(t));
+        }
+
+        @Override
+        public void onError(@NonNull Throwable t) {
+            enqueue(() -> sink.onError(t));
+        }
+
+        @Override
+        public void onComplete() {
+            enqueue(sink::onComplete);
+        }
+
+        @Override
+        public Token token() {
+            return sink.token();
+        }
+
+        void enqueue(Runnable signal) {
+            signals.add(signal);
+            if (wip.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                Runnable signal;
+                while ((signal = signals.poll()) != null) {
+                    signal.run();
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
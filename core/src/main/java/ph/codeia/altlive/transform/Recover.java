@@ -6,6 +6,7 @@ package ph.codeia.altlive.transform;
 
 import androidx.annotation.NonNull;
 import ph.codeia.altlive.Function;
+import ph.codeia.altlive.Token;
 import ph.codeia.altlive.Try;
 
 public class Recover<T> implements Try<T> {
@@ -65,6 +66,11 @@ public class Recover<T> implements Try<T> {
                     continuation.error(e);
                 }
             }
+
+            @Override
+            public Token token() {
+                return continuation.token();
+            }
         });
     }
 }
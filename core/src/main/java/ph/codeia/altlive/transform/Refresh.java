@@ -0,0 +1,164 @@
+package ph.codeia.altlive.transform;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import androidx.annotation.NonNull;
+import ph.codeia.altlive.Function;
+import ph.codeia.altlive.Try;
+
+/**
+ * Serves the last good value while revalidating it in the background.
+ *
+ * <p> The value is cached in a {@link Memoize}. Once it is older than the soft
+ * TTL, selects still get the cached value immediately, but one background
+ * refresh of the source is started in the configured executor. The select only
+ * waits for the source when there is no value yet or when the value is older
+ * than the hard TTL. With {@link Partial#ahead(double)}, the refresh starts
+ * even earlier, at a fraction of the soft TTL, so that hot values are rarely
+ * ever stale.
+ *
+ * <p> A failed background refresh keeps the old value. Errors from a blocking
+ * load are passed on and never cached. A refresh that is still running when
+ * the value is {@link #clear() cleared} is discarded.
+ *
+ * @param <T> The type of the value being computed
+ */
+public class Refresh<T> implements Try<T> {
+
+    public static class Partial<T> implements Function<Try<T>, Refresh<T>> {
+        private final long softTtl;
+        private final long hardTtl;
+        private Executor executor = VirtualThreads.executor();
+        private double ahead = 1.0;
+
+        private Partial(long softTtl, long hardTtl) {
+            this.softTtl = softTtl;
+            this.hardTtl = hardTtl;
+        }
+
+        /**
+         * Sets the executor where the background refresh is started.
+         *
+         * <p> Defaults to the shared pool behind {@link Execute#onVirtual()}
+         * so that a blocking source never holds up the select that triggered
+         * the refresh.
+         */
+        @Transformer
+        public Partial<T> on(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Starts refreshing when the value reaches this fraction of the soft
+         * TTL. Defaults to 1, i.e. refresh once stale.
+         */
+        @Transformer
+        public Partial<T> ahead(double fraction) {
+            if (fraction <= 0.0 || fraction > 1.0) {
+                throw new IllegalArgumentException("Expecting a fraction in (0, 1]");
+            }
+            this.ahead = fraction;
+            return this;
+        }
+
+        @Override
+        public Refresh<T> apply(Try<T> source) {
+            return new Refresh<>(source, softTtl, hardTtl, ahead, executor);
+        }
+    }
+
+    /**
+     * @param softTtl Values older than this are refreshed in the background.
+     * @param hardTtl Values older than this are not served anymore. Never
+     *                expires when negative.
+     */
+    @Transformer
+    public static <T> Partial<T> after(long softTtl, long hardTtl) {
+        return new Partial<>(softTtl, hardTtl);
+    }
+
+    @Transformer
+    public static <T> Partial<T> after(long softTtl, long hardTtl, TimeUnit units) {
+        return after(units.toMillis(softTtl), hardTtl < 0 ? -1L : units.toMillis(hardTtl));
+    }
+
+    private final Try<T> source;
+    private final Memoize<T> memo;
+    private final long refreshAge;
+    private final Executor executor;
+    private final AtomicBoolean isRefreshing = new AtomicBoolean(false);
+    private final AtomicLong refreshes = new AtomicLong(0);
+
+    public Refresh(
+            Try<T> source,
+            long softTtl,
+            long hardTtl,
+            double ahead,
+            Executor executor
+    ) {
+        this.source = source;
+        this.memo = new Memoize<>(source, hardTtl, 0L);
+        this.refreshAge = (long) (softTtl * ahead);
+        this.executor = executor;
+    }
+
+    public boolean isRefreshing() {
+        return isRefreshing.get();
+    }
+
+    /**
+     * The number of background refreshes started so far.
+     */
+    public long refreshes() {
+        return refreshes.get();
+    }
+
+    /**
+     * Drops the cached value. The next select waits for the source.
+     */
+    public void clear() {
+        memo.clear();
+    }
+
+    @Override
+    public void select(Case<? super T> continuation) {
+        long age = memo.age();
+        if (age >= refreshAge && memo.hasValue()) {
+            refresh();
+        }
+        memo.select(continuation);
+    }
+
+    private void refresh() {
+        if (!isRefreshing.compareAndSet(false, true)) {
+            return;
+        }
+        refreshes.incrementAndGet();
+        int generation = memo.generation();
+        try {
+            executor.execute(() -> source.select(new Case<T>() {
+                @Override
+                public void ok(T t) {
+                    memo.put(t, generation);
+                    isRefreshing.set(false);
+                }
+
+                @Override
+                public void error(@NonNull Throwable t) {
+                    isRefreshing.set(false);
+                }
+            }));
+        }
+        catch (RuntimeException e) {
+            isRefreshing.set(false);
+        }
+    }
+}
@@ -4,18 +4,141 @@ package ph.codeia.altlive.transform;
  * This file is a part of the AltLiveData project.
  */
 
-import java.util.concurrent.TimeUnit;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
 
 import androidx.annotation.NonNull;
 import ph.codeia.altlive.Function;
+import ph.codeia.altlive.Stream;
+import ph.codeia.altlive.Token;
 import ph.codeia.altlive.Try;
 
 public class Retry<T> implements Try<T> {
 
+    /**
+     * Computes how long to wait before a retry.
+     */
+    public interface Backoff {
+        /**
+         * @param retries The number of retries so far
+         * @param previous The previous delay, or 0 before the first retry
+         * @return The delay in millis
+         */
+        long next(int retries, long previous);
+
+        Backoff NONE = (retries, previous) -> 0L;
+
+        /**
+         * Doubles the delay every retry, starting from {@code base} and
+         * capped at {@code cap} millis.
+         */
+        static Backoff exponential(long base, long cap) {
+            return (retries, previous) -> ceiling(base, cap, retries);
+        }
+
+        /**
+         * Waits a random time between 0 and the exponential delay, so that
+         * callers that failed together do not retry together.
+         */
+        static Backoff fullJitter(long base, long cap) {
+            return (retries, previous) -> (long) (RNG.nextDouble() * ceiling(base, cap, retries));
+        }
+
+        /**
+         * Waits a random time between {@code base} and three times the
+         * previous delay (or the base before the first retry), capped at
+         * {@code cap} millis.
+         */
+        static Backoff decorrelatedJitter(long base, long cap) {
+            return (retries, previous) -> {
+                long upper = Math.max(base, Math.min(cap, 3 * Math.max(base, previous)));
+                return Math.min(cap, base + (long) (RNG.nextDouble() * (upper - base)));
+            };
+        }
+    }
+
+    /**
+     * Limits retries to a fraction of the calls made.
+     *
+     * <p> A token bucket shared by every {@link Retry} that uses it. Every
+     * first attempt adds a fraction of a token and every retry takes a whole
+     * token, so retries stay under the given percentage of recent calls. While
+     * the bucket is drained, errors are passed through instead of retried
+     * until enough new calls come in. The bucket starts full.
+     */
+    public static class Budget {
+        private static final long UNIT = 1000L;
+
+        private final long deposit;
+        private final long capacity;
+        private final AtomicLong balance;
+        private final AtomicLong exhausted = new AtomicLong(0);
+
+        /**
+         * @param percent The percentage of calls that can be retried
+         * @param burst The number of retries that can be made at once
+         */
+        public Budget(float percent, int burst) {
+            if (percent < 0 || burst < 0) {
+                throw new IllegalArgumentException("Budget must not be negative");
+            }
+            deposit = (long) (percent * UNIT / 100);
+            capacity = burst * UNIT;
+            balance = new AtomicLong(capacity);
+        }
+
+        /**
+         * The number of whole retries left.
+         */
+        public long available() {
+            return balance.get() / UNIT;
+        }
+
+        /**
+         * The number of retries denied because the budget was drained.
+         */
+        public long exhausted() {
+            return exhausted.get();
+        }
+
+        void deposit() {
+            while (true) {
+                long current = balance.get();
+                long next = Math.min(capacity, current + deposit);
+                if (next == current || balance.compareAndSet(current, next)) {
+                    return;
+                }
+            }
+        }
+
+        boolean tryWithdraw() {
+            while (true) {
+                long current = balance.get();
+                if (current < UNIT) {
+                    exhausted.incrementAndGet();
+                    return false;
+                }
+                if (balance.compareAndSet(current, current - UNIT)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    private static final Random RNG = new Random();
+
+    private static long ceiling(long base, long cap, int retries) {
+        if (retries >= 62 || base > cap >> Math.min(retries, 62)) {
+            return cap;
+        }
+        return Math.min(cap, base << retries);
+    }
+
     public static class Partial<T> implements Function<Try<T>, Retry<T>> {
         private final int maxRetries;
         private Function<Throwable, Boolean> predicate = t -> true;
-        private Function<Integer, Long> delay = i -> 0L;
+        private Backoff backoff = Backoff.NONE;
+        private Budget budget;
 
         private Partial(int maxRetries) {
             this.maxRetries = maxRetries;
@@ -29,13 +152,28 @@ public class Retry<T> implements Try<T> {
 
         @Transformer
         public Partial<T> backoff(Function<Integer, Long> delay) {
-            this.delay = delay;
+            this.backoff = (retries, previous) -> delay.apply(retries);
+            return this;
+        }
+
+        @Transformer
+        public Partial<T> backoff(Backoff backoff) {
+            this.backoff = backoff;
+            return this;
+        }
+
+        /**
+         * Shares a retry budget with other {@link Retry} instances.
+         */
+        @Transformer
+        public Partial<T> budget(Budget budget) {
+            this.budget = budget;
             return this;
         }
 
         @Override
         public Retry<T> apply(Try<T> source) {
-            return new Retry<>(source, maxRetries, predicate, delay);
+            return new Retry<>(source, maxRetries, predicate, backoff, budget);
         }
     }
 
@@ -49,27 +187,65 @@ public class Retry<T> implements Try<T> {
         return new Partial<>(0);
     }
 
+    /**
+     * Subscribes to a stream again when it fails.
+     *
+     * <p> The demand that the sink has not yet received carries over to the
+     * new subscription. Values produced before the error are not taken back,
+     * so a source that starts from the beginning will repeat them. Use this
+     * with sources that resume where they left off or whose values can be
+     * deduplicated downstream.
+     *
+     * @param maxRetries Retries forever when less than 1.
+     * @param backoff The delay before each new subscription.
+     */
+    @Transformer
+    public static <T> Function<Stream<T>, Stream<T>> streamUntil(int maxRetries, Backoff backoff) {
+        return source -> sink -> new Resubscribe<>(source, sink, maxRetries, backoff).attempt();
+    }
+
+    @Transformer
+    public static <T> Function<Stream<T>, Stream<T>> streamUntil(int maxRetries) {
+        return streamUntil(maxRetries, Backoff.NONE);
+    }
+
     private final Try<T> source;
     private final int maxRetries;
     private final Function<Throwable, Boolean> predicate;
-    private final Function<Integer, Long> delay;
+    private final Backoff backoff;
+    private final Budget budget;
 
     public Retry(
             Try<T> source,
             int maxRetries,
             Function<Throwable, Boolean> predicate,
-            Function<Integer, Long> delay
+            Backoff backoff,
+            Budget budget
     ) {
         this.source = source;
         this.maxRetries = maxRetries;
         this.predicate = predicate;
-        this.delay = delay;
+        this.backoff = backoff;
+        this.budget = budget;
+    }
+
+    public Retry(
+            Try<T> source,
+            int maxRetries,
+            Function<Throwable, Boolean> predicate,
+            Function<Integer, Long> delay
+    ) {
+        this(source, maxRetries, predicate, (retries, previous) -> delay.apply(retries), null);
     }
 
     @Override
     public void select(Case<? super T> continuation) {
+        if (budget != null) {
+            budget.deposit();
+        }
         source.select(new Case<T>() {
             int retries = 0;
+            long previous = 0L;
 
             @Override
             public void ok(T t) {
@@ -80,22 +256,27 @@ public class Retry<T> implements Try<T> {
             public void error(@NonNull Throwable t) {
                 try {
                     boolean canRetry = maxRetries < 1 || retries < maxRetries;
-                    boolean shouldRetry = canRetry && predicate.apply(t);
-                    if (!shouldRetry) {
+                    if (!canRetry || !predicate.apply(t)) {
                         continuation.error(t);
                     }
-                    else {
-                        long millis = delay.apply(retries);
+                    else if (!token().isCancelled()) {
+                        long millis = backoff.next(retries, previous);
+                        if (token().remainingMillis() <= Math.max(0L, millis)) {
+                            // the next attempt would start after the deadline
+                            continuation.error(t);
+                            return;
+                        }
+                        if (budget != null && !budget.tryWithdraw()) {
+                            continuation.error(t);
+                            return;
+                        }
+                        previous = millis;
                         retries += 1;
                         if (millis <= 0) {
                             source.select(this);
                         }
                         else {
-                            Delay.SCHEDULER.schedule(
-                                    () -> source.select(this),
-                                    millis,
-                                    TimeUnit.MILLISECONDS
-                            );
+                            Delay.schedule(token(), () -> source.select(this), millis);
                         }
                     }
                 }
@@ -103,7 +284,128 @@ public class Retry<T> implements Try<T> {
                     continuation.error(e);
                 }
             }
+
+            @Override
+            public Token token() {
+                return continuation.token();
+            }
         });
     }
-}
 
+    private static class Resubscribe<T> implements Stream.Sink<T>, Stream.Demand {
+        final Stream<T> source;
+        final Stream.Sink<? super T> sink;
+        final int maxRetries;
+        final Backoff backoff;
+        int retries = 0;
+        long previous = 0L;
+        long outstanding = 0L;
+        Stream.Demand current = Stream.Demand.NONE;
+        boolean isStarted = false;
+
+        Resubscribe(
+                Stream<T> source,
+                Stream.Sink<? super T> sink,
+                int maxRetries,
+                Backoff backoff
+        ) {
+            this.source = source;
+            this.sink = sink;
+            this.maxRetries = maxRetries;
+            this.backoff = backoff;
+        }
+
+        void attempt() {
+            try {
+                source.subscribe(this);
+            }
+            catch (RuntimeException e) {
+                onError(e);
+            }
+        }
+
+        @Override
+        public void onStart(Stream.Demand demand) {
+            boolean isFirst;
+            long unfilled;
+            synchronized (this) {
+                current = demand;
+                isFirst = !isStarted;
+                isStarted = true;
+                unfilled = outstanding;
+            }
+            if (isFirst) {
+                sink.onStart(this);
+            }
+            else if (unfilled > 0) {
+                demand.request(unfilled);
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            Stream.Demand demand;
+            synchronized (this) {
+                if (n > 0) {
+                    outstanding = outstanding + n < 0 ? Long.MAX_VALUE : outstanding + n;
+                }
+                demand = current;
+            }
+            demand.request(n);
+        }
+
+        @Override
+        public void onNext(T t) {
+            synchronized (this) {
+                if (outstanding != Long.MAX_VALUE) {
+                    outstanding -= 1;
+                }
+            }
+            sink.onNext(t);
+        }
+
+        @Override
+        public void onError(@NonNull Throwable t) {
+            Token token = sink.token();
+            boolean canRetry = maxRetries < 1 || retries < maxRetries;
+            if (!canRetry || token.isCancelled()) {
+                sink.onError(t);
+                return;
+            }
+            long millis;
+            try {
+                millis = backoff.next(retries, previous);
+            }
+            catch (RuntimeException e) {
+                sink.onError(e);
+                return;
+            }
+            if (token.remainingMillis() <= Math.max(0L, millis)) {
+                // the next subscription would start after the deadline
+                sink.onError(t);
+                return;
+            }
+            previous = millis;
+            retries += 1;
+            synchronized (this) {
+                current = Stream.Demand.NONE;
+            }
+            if (millis <= 0) {
+                attempt();
+            }
+            else {
+                Delay.schedule(token, this::attempt, millis);
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            sink.onComplete();
+        }
+
+        @Override
+        public Token token() {
+            return sink.token();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package ph.codeia.altlive.transform;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import ph.codeia.altlive.Clock;
+
+/**
+ * Runs blocks after a delay and tells the time.
+ *
+ * <p> Every transformer that waits ({@link Delay}, {@link Retry},
+ * {@link TimeLimit}, etc.) schedules through the scheduler installed with
+ * {@link Delay#setScheduler(Scheduler)}, which is a shared
+ * {@link HashedWheelTimer} by default. Blocks are usually run in the
+ * scheduler's own thread, so they should be short.
+ *
+ * <p> The transformers that measure time (e.g. {@link Memoize},
+ * {@link Circuit}, {@link RateLimit}) read the clock of the same scheduler,
+ * and installing a scheduler also makes it the {@link Clock#current() current
+ * clock} that token deadlines are measured with, so installing a
+ * {@link VirtualTime} makes all of them run on simulated time. The clock
+ * defaults to the system clock.
+ */
+public interface Scheduler extends Clock {
+
+    /**
+     * A scheduled block.
+     */
+    interface Handle {
+        /**
+         * Prevents the block from running.
+         *
+         * @return false if the block has already run or was already
+         * cancelled.
+         */
+        boolean cancel();
+    }
+
+    Handle schedule(Runnable block, long delayMillis);
+
+    /**
+     * Adapts a {@link ScheduledExecutorService}.
+     */
+    static Scheduler of(ScheduledExecutorService executor) {
+        return (block, delayMillis) -> {
+            ScheduledFuture<?> future =
+                    executor.schedule(block, delayMillis, TimeUnit.MILLISECONDS);
+            return () -> future.cancel(false);
+        };
+    }
+}
@@ -10,6 +10,8 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 import androidx.annotation.NonNull;
 import ph.codeia.altlive.Function;
+import ph.codeia.altlive.Stream;
+import ph.codeia.altlive.Token;
 import ph.codeia.altlive.Try;
 
 public class TimeLimit<T> implements Try<T> {
@@ -37,6 +39,43 @@ public class TimeLimit<T> implements Try<T> {
         return new Partial<>(timeoutMillis);
     }
 
+    /**
+     * Fails a stream with a {@link TimeoutException} if it does not complete
+     * within the timeout.
+     *
+     * <p> The whole subscription is timed, including the time that the
+     * source waits for demand. The source is given a token with the deadline
+     * and the token is cancelled when the deadline passes, just like in
+     * {@link #select(Case)}.
+     */
+    @Transformer
+    public static <T> Function<Stream<T>, Stream<T>> streamOf(long timeoutMillis) {
+        return source -> sink -> {
+            Token parent = sink.token();
+            Token scoped = parent.derive(timeoutMillis > 0 ? timeoutMillis : -1L);
+            if (scoped.isExpired()) {
+                scoped.detach();
+                sink.onStart(Stream.Demand.NONE);
+                sink.onError(new TimeoutException());
+                return;
+            }
+            Deadline<T> deadline = new Deadline<>(sink, scoped);
+            if (scoped.hasDeadline()) {
+                deadline.timer = Delay.schedule(
+                        parent,
+                        deadline::expire,
+                        Math.max(0L, scoped.remainingMillis())
+                );
+            }
+            source.subscribe(deadline);
+        };
+    }
+
+    @Transformer
+    public static <T> Function<Stream<T>, Stream<T>> streamOf(long timeout, TimeUnit units) {
+        return streamOf(units.toMillis(timeout));
+    }
+
     private final Try<T> source;
     private final long timeoutMillis;
 
@@ -45,31 +84,143 @@ public class TimeLimit<T> implements Try<T> {
         this.timeoutMillis = timeoutMillis;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p> The source is given a token with a deadline of {@code timeoutMillis}
+     * from now, or the deadline of the continuation if that is earlier. When
+     * the deadline passes, the token is cancelled and the continuation fails
+     * with a {@link TimeoutException}. Fails immediately if the deadline of
+     * the continuation has already passed.
+     */
     @Override
     public void select(Case<? super T> continuation) {
+        Token parent = continuation.token();
+        Token scoped = parent.derive(timeoutMillis > 0 ? timeoutMillis : -1L);
+        if (scoped.isExpired()) {
+            scoped.detach();
+            continuation.error(new TimeoutException());
+            return;
+        }
         AtomicBoolean done = new AtomicBoolean(false);
-        if (timeoutMillis > 0) {
-            Delay.SCHEDULER.schedule(() -> {
+        Scheduler.Handle timer = null;
+        if (scoped.hasDeadline()) {
+            timer = Delay.schedule(parent, () -> {
                 if (!done.getAndSet(true)) {
+                    scoped.detach();
+                    scoped.cancel();
                     continuation.error(new TimeoutException());
                 }
-            }, timeoutMillis, TimeUnit.MILLISECONDS);
+            }, Math.max(0L, scoped.remainingMillis()));
         }
+        Scheduler.Handle pendingTimer = timer;
         source.select(new Case<T>() {
             @Override
             public void ok(T t) {
-                if (!done.getAndSet(true)) {
+                if (finish()) {
                     continuation.ok(t);
                 }
             }
 
             @Override
             public void error(@NonNull Throwable t) {
-                if (!done.getAndSet(true)) {
+                if (finish()) {
                     continuation.error(t);
                 }
             }
+
+            boolean finish() {
+                if (done.getAndSet(true)) {
+                    return false;
+                }
+                scoped.detach();
+                if (pendingTimer != null) {
+                    pendingTimer.cancel();
+                }
+                return true;
+            }
+
+            @Override
+            public Token token() {
+                return scoped;
+            }
         });
     }
-}
 
+    /**
+     * Signals are delivered with the lock held so that the timeout cannot
+     * interleave with a value.
+     */
+    private static class Deadline<T> implements Stream.Sink<T> {
+        final Stream.Sink<? super T> sink;
+        final Token scoped;
+        volatile Scheduler.Handle timer;
+        boolean isStarted = false;
+        boolean isDone = false;
+
+        Deadline(Stream.Sink<? super T> sink, Token scoped) {
+            this.sink = sink;
+            this.scoped = scoped;
+        }
+
+        @Override
+        public synchronized void onStart(Stream.Demand demand) {
+            if (!isDone) {
+                isStarted = true;
+                sink.onStart(demand);
+            }
+        }
+
+        @Override
+        public synchronized void onNext(T t) {
+            if (!isDone) {
+                sink.onNext(t);
+            }
+        }
+
+        @Override
+        public synchronized void onError(@NonNull Throwable t) {
+            if (finish()) {
+                sink.onError(t);
+            }
+        }
+
+        @Override
+        public synchronized void onComplete() {
+            if (finish()) {
+                sink.onComplete();
+            }
+        }
+
+        @Override
+        public Token token() {
+            return scoped;
+        }
+
+        synchronized void expire() {
+            if (isDone) {
+                return;
+            }
+            isDone = true;
+            scoped.detach();
+            scoped.cancel();
+            if (!isStarted) {
+                sink.onStart(Stream.Demand.NONE);
+            }
+            sink.onError(new TimeoutException());
+        }
+
+        boolean finish() {
+            if (isDone) {
+                return false;
+            }
+            isDone = true;
+            scoped.detach();
+            Scheduler.Handle pending = timer;
+            if (pending != null) {
+                pending.cancel();
+            }
+            return true;
+        }
+    }
+}
@@ -11,15 +11,16 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 import ph.codeia.altlive.Function;
+import ph.codeia.altlive.Stream;
 import ph.codeia.altlive.Try;
 
 /**
- * Marker for {@link Try} transformer factories.
+ * Marker for {@link Try} and {@link Stream} transformer factories.
  *
  * <p> The result of methods annotated with this can be used as an argument to
- * {@link Try#pipe(Function)}. If the target is a constructor
- * (e.g. {@link Memoize}), it should be passed as a method reference like so:
- * {@code computation.pipe(Memoize::new)}.
+ * {@link Try#pipe(Function)} or {@link Stream#pipe(Function)}. If the target
+ * is a constructor (e.g. {@link Memoize}), it should be passed as a method
+ * reference like so: {@code computation.pipe(Memoize::new)}.
  */
 @Retention(RetentionPolicy.SOURCE)
 @Target({ElementType.METHOD, ElementType.CONSTRUCTOR})
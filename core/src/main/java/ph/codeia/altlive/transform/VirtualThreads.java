@@ -0,0 +1,37 @@
+package ph.codeia.altlive.transform;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Provides the executor behind {@link Execute#onVirtual()}.
+ *
+ * <p> This is the Java 8 version. Virtual threads are not available, so each
+ * task runs in a shared cached pool of daemon threads. The core jar is a
+ * multi-release jar; the Java 21 version of this class in
+ * {@code META-INF/versions/21} replaces it with a virtual-thread-per-task
+ * executor.
+ */
+final class VirtualThreads {
+    private static final ExecutorService POOL = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "altlive-worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private VirtualThreads() {
+    }
+
+    static Executor executor() {
+        return POOL;
+    }
+
+    static boolean isSupported() {
+        return false;
+    }
+}
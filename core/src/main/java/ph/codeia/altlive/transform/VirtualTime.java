@@ -0,0 +1,174 @@
+package ph.codeia.altlive.transform;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Scheduler} whose clock only moves when told to.
+ *
+ * <p> Scheduled blocks run in the thread that calls {@link #advance(long,
+ * TimeUnit)}, in deadline order, with the clock set to their deadline. Blocks
+ * that are scheduled by those blocks run in the same call if they are due
+ * before the target time. Together with same-thread executors, this makes
+ * timeouts, retries, breakers and caches fully deterministic, and hours of
+ * their behavior can be simulated in milliseconds:
+ *
+ * <pre>{@code
+ * VirtualTime time = new VirtualTime();
+ * Delay.setScheduler(time);
+ * // build limiters, circuits, etc. after installing the scheduler
+ * time.advance(1, TimeUnit.HOURS);
+ * }</pre>
+ *
+ * <p> Objects that capture the time when they are created (e.g.
+ * {@link RateLimit}) must be created after the scheduler is installed.
+ */
+public class VirtualTime implements Scheduler {
+
+    private class Task implements Handle, Comparable<Task> {
+        final Runnable block;
+        final long deadline;
+        final long sequence;
+        boolean isDone = false;
+
+        Task(Runnable block, long deadline, long sequence) {
+            this.block = block;
+            this.deadline = deadline;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public boolean cancel() {
+            synchronized (VirtualTime.this) {
+                if (isDone) {
+                    return false;
+                }
+                isDone = true;
+                return tasks.remove(this);
+            }
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (deadline != other.deadline) {
+                return deadline < other.deadline ? -1 : 1;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private final PriorityQueue<Task> tasks = new PriorityQueue<>();
+    private final long epochMillis;
+    private long nanos = 0;
+    private long sequence = 0;
+    private long executed = 0;
+
+    /**
+     * Starts the wall clock at the given epoch millis.
+     */
+    public VirtualTime(long epochMillis) {
+        this.epochMillis = epochMillis;
+    }
+
+    /**
+     * Starts the wall clock at 0.
+     */
+    public VirtualTime() {
+        this(0L);
+    }
+
+    @Override
+    public synchronized Handle schedule(Runnable block, long delayMillis) {
+        long deadline = nanos + TimeUnit.MILLISECONDS.toNanos(Math.max(0L, delayMillis));
+        Task task = new Task(block, deadline, sequence++);
+        tasks.add(task);
+        return task;
+    }
+
+    @Override
+    public synchronized long millis() {
+        return epochMillis + TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    @Override
+    public synchronized long nanos() {
+        return nanos;
+    }
+
+    /**
+     * Moves the clock forward, running every block that comes due on the way.
+     */
+    public void advance(long duration, TimeUnit units) {
+        long target;
+        synchronized (this) {
+            target = nanos + units.toNanos(Math.max(0L, duration));
+        }
+        while (true) {
+            Task next;
+            synchronized (this) {
+                next = tasks.peek();
+                if (next == null || next.deadline > target) {
+                    nanos = target;
+                    return;
+                }
+                tasks.poll();
+                next.isDone = true;
+                nanos = Math.max(nanos, next.deadline);
+                executed += 1;
+            }
+            next.block.run();
+        }
+    }
+
+    /**
+     * Runs the blocks that are due now without moving the clock.
+     */
+    public void runDue() {
+        advance(0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Moves the clock to each scheduled deadline in turn until nothing is
+     * scheduled.
+     *
+     * @param maxBlocks The maximum number of blocks to run, to stop blocks
+     *                  that keep rescheduling themselves (e.g. infinite
+     *                  retries).
+     * @return the number of blocks run.
+     */
+    public int drain(int maxBlocks) {
+        int count = 0;
+        while (count < maxBlocks) {
+            long wait;
+            synchronized (this) {
+                Task next = tasks.peek();
+                if (next == null) {
+                    break;
+                }
+                wait = next.deadline - nanos;
+            }
+            long before = executed();
+            advance(wait, TimeUnit.NANOSECONDS);
+            count += (int) (executed() - before);
+        }
+        return count;
+    }
+
+    /**
+     * The number of blocks waiting for their deadline.
+     */
+    public synchronized int pending() {
+        return tasks.size();
+    }
+
+    /**
+     * The number of blocks run so far.
+     */
+    public synchronized long executed() {
+        return executed;
+    }
+}
@@ -0,0 +1,32 @@
+package ph.codeia.altlive.transform;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Provides the executor behind {@link Execute#onVirtual()}.
+ *
+ * <p> This is the Java 21 version that is packaged in
+ * {@code META-INF/versions/21} of the core jar. Every task gets its own
+ * virtual thread, so blocking in a {@code Try.of(Callable)} body only parks
+ * the virtual thread instead of holding on to a platform thread.
+ */
+final class VirtualThreads {
+    private static final ExecutorService POOL = Executors.newVirtualThreadPerTaskExecutor();
+
+    private VirtualThreads() {
+    }
+
+    static Executor executor() {
+        return POOL;
+    }
+
+    static boolean isSupported() {
+        return true;
+    }
+}
@@ -0,0 +1,456 @@
+package ph.codeia.altlive;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+
+/**
+ * Converters between the library types and the {@link Flow} interfaces of
+ * the Reactive Streams specification.
+ *
+ * <p> Demand is passed through in both directions: a publisher made from a
+ * {@link Stream} produces only what its subscriber requests, and a stream
+ * made from a publisher requests only what its sink requests. None of these
+ * hop threads. Libraries that implement {@code org.reactivestreams} rather
+ * than {@code java.util.concurrent.Flow} usually ship their own adapters
+ * between the two.
+ *
+ * <p> Requires Java 9. This class lives in {@code META-INF/versions/9} of the
+ * multi-release core jar, so it can only be used by code that is compiled for
+ * Java 9 or later against that jar. It is not in the plain jar that Android
+ * modules depend on.
+ */
+public final class Flows {
+
+    private Flows() {
+    }
+
+    /**
+     * Adapts a stream into a publisher.
+     *
+     * <p> Every subscriber gets its own subscription to the stream. Cancelling
+     * the subscription cancels the token of the stream. The specification
+     * does not allow null values, so a null value cancels the stream and
+     * fails the subscriber with a {@link NullPointerException}. A stream
+     * that throws when subscribed to fails the subscriber instead of the
+     * caller.
+     *
+     * @param <T> The type of the values
+     */
+    public static <T> Flow.Publisher<T> toPublisher(Stream<T> stream) {
+        return subscriber -> {
+            if (subscriber == null) {
+                throw new NullPointerException("Subscriber shouldn't be null");
+            }
+            AtomicBoolean isSubscribed = new AtomicBoolean(false);
+            Stream.Sink<T> sink = new Stream.Sink<T>() {
+                final Token token = new Token();
+                boolean isDone = false;
+
+                @Override
+                public void onStart(Stream.Demand demand) {
+                    isSubscribed.set(true);
+                    subscriber.onSubscribe(new Flow.Subscription() {
+                        @Override
+                        public void request(long n) {
+                            demand.request(n);
+                        }
+
+                        @Override
+                        public void cancel() {
+                            token.cancel();
+                        }
+                    });
+                }
+
+                @Override
+                public void onNext(T t) {
+                    if (isDone || token.isCancelled()) {
+                        return;
+                    }
+                    if (t == null) {
+                        isDone = true;
+                        token.cancel();
+                        subscriber.onError(new NullPointerException("Null value"));
+                        return;
+                    }
+                    subscriber.onNext(t);
+                }
+
+                @Override
+                public void onError(@NonNull Throwable t) {
+                    if (!isDone && !token.isCancelled()) {
+                        isDone = true;
+                        subscriber.onError(t);
+                    }
+                }
+
+                @Override
+                public void onComplete() {
+                    if (!isDone && !token.isCancelled()) {
+                        isDone = true;
+                        subscriber.onComplete();
+                    }
+                }
+
+                @Override
+                public Token token() {
+                    return token;
+                }
+            };
+            try {
+                stream.subscribe(sink);
+            }
+            catch (RuntimeException e) {
+                if (!isSubscribed.getAndSet(true)) {
+                    subscriber.onSubscribe(new Flow.Subscription() {
+                        @Override
+                        public void request(long n) {
+                        }
+
+                        @Override
+                        public void cancel() {
+                        }
+                    });
+                }
+                sink.onError(e);
+            }
+        };
+    }
+
+    /**
+     * Adapts a computation into a publisher of at most one value.
+     *
+     * <p> The computation is started when the subscriber requests a value.
+     *
+     * @param <T> The type of the value
+     * @see #toPublisher(Stream)
+     */
+    public static <T> Flow.Publisher<T> singlePublisher(Try<T> source) {
+        return toPublisher(Stream.single(source));
+    }
+
+    /**
+     * Adapts a live object into a publisher whose subscriptions end when the
+     * owner is destroyed.
+     *
+     * <p> A subscriber observes the live object with the given owner, so it
+     * only receives values while the owner is active. A live object cannot be
+     * told to slow down, so when a value arrives while the subscriber has no
+     * outstanding demand, it is held until the next request and replaced by
+     * any value that arrives in the meantime. Null values are skipped. The
+     * subscriber completes when the owner is destroyed, and the observer is
+     * removed when the subscription is cancelled.
+     *
+     * @param <T> The type of the values
+     */
+    public static <T> Flow.Publisher<T> toPublisher(Live<T> live, LifecycleOwner owner) {
+        return subscriber -> {
+            if (subscriber == null) {
+                throw new NullPointerException("Subscriber shouldn't be null");
+            }
+            LiveSubscription<T> subscription = new LiveSubscription<>(live, owner, subscriber);
+            subscriber.onSubscribe(subscription);
+            subscription.start();
+        };
+    }
+
+    /**
+     * Adapts a live object into a publisher whose subscriptions only end when
+     * cancelled.
+     *
+     * @param <T> The type of the values
+     * @see #toPublisher(Live, LifecycleOwner)
+     */
+    public static <T> Flow.Publisher<T> toPublisher(Live<T> live) {
+        return toPublisher(live, Immortal.INSTANCE);
+    }
+
+    /**
+     * Adapts a publisher into a stream.
+     *
+     * <p> Requests from the sink are passed to the subscription as is and the
+     * subscription is cancelled when the token of the sink is cancelled.
+     * Every subscription to the stream subscribes to the publisher again.
+     *
+     * @param <T> The type of the values
+     */
+    public static <T> Stream<T> fromPublisher(Flow.Publisher<? extends T> publisher) {
+        return sink -> publisher.subscribe(new Flow.Subscriber<T>() {
+            Token.Registration registration = Token.Registration.NOOP;
+            boolean isStarted = false;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                if (isStarted) {
+                    subscription.cancel();
+                    return;
+                }
+                isStarted = true;
+                registration = sink.token().onCancel(subscription::cancel);
+                sink.onStart(subscription::request);
+            }
+
+            @Override
+            public void onNext(T t) {
+                sink.onNext(t);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                registration.remove();
+                sink.onError(t);
+            }
+
+            @Override
+            public void onComplete() {
+                registration.remove();
+                sink.onComplete();
+            }
+        });
+    }
+
+    /**
+     * Creates a subscriber that posts every value to a feed and requests at
+     * most {@code prefetch} values ahead.
+     *
+     * <p> Errors and completion are dropped.
+     *
+     * @param <T> The type of the values
+     * @see #toSubscriber(Feed, int, Try.Case)
+     */
+    public static <T> Flow.Subscriber<T> toSubscriber(Feed<? super T> feed, int prefetch) {
+        return toSubscriber(feed, prefetch, new Try.Case<Void>() {
+            @Override
+            public void ok(Void aVoid) {
+            }
+
+            @Override
+            public void error(@NonNull Throwable t) {
+            }
+        });
+    }
+
+    /**
+     * Creates a subscriber that posts every value to a feed and requests at
+     * most {@code prefetch} values ahead.
+     *
+     * <p> The subscriber asks for {@code prefetch} values at first and asks
+     * for more in batches of three quarters of that as values are posted, so
+     * the publisher never has more than {@code prefetch} values requested but
+     * not yet posted. A feed does not report when a value has been consumed;
+     * to pace a publisher by the observers of a live object instead, post
+     * {@link #fromPublisher(Flow.Publisher)} to a {@link LiveStream}.
+     *
+     * @param prefetch Must be positive.
+     * @param done Called with null when the publisher completes or with the
+     *             error when it fails. Cancelling its token cancels the
+     *             subscription.
+     * @param <T> The type of the values
+     */
+    public static <T> Flow.Subscriber<T> toSubscriber(
+            Feed<? super T> feed,
+            int prefetch,
+            Try.Case<Void> done
+    ) {
+        if (prefetch < 1) {
+            throw new IllegalArgumentException("Prefetch must be positive");
+        }
+        int batch = Math.max(1, prefetch - (prefetch >> 2));
+        return new Flow.Subscriber<T>() {
+            Flow.Subscription subscription;
+            Token.Registration registration = Token.Registration.NOOP;
+            int posted = 0;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                if (subscription == null) {
+                    throw new NullPointerException("Subscription shouldn't be null");
+                }
+                if (this.subscription != null) {
+                    subscription.cancel();
+                    return;
+                }
+                this.subscription = subscription;
+                registration = done.token().onCancel(subscription::cancel);
+                subscription.request(prefetch);
+            }
+
+            @Override
+            public void onNext(T t) {
+                if (t == null) {
+                    throw new NullPointerException("Value shouldn't be null");
+                }
+                feed.postValue(t);
+                posted += 1;
+                if (posted == batch) {
+                    posted = 0;
+                    subscription.request(batch);
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                if (t == null) {
+                    throw new NullPointerException("Error shouldn't be null");
+                }
+                registration.remove();
+                done.error(t);
+            }
+
+            @Override
+            public void onComplete() {
+                registration.remove();
+                done.ok(null);
+            }
+        };
+    }
+
+    private static class LiveSubscription<T>
+            implements Flow.Subscription, Receiver<T>, DefaultLifecycleObserver {
+        final Live<T> live;
+        final LifecycleOwner owner;
+        final Flow.Subscriber<? super T> subscriber;
+        // signals are sent by one thread at a time; the others leave their
+        // work for it.
+        final AtomicInteger wip = new AtomicInteger(0);
+        long requested = 0;
+        T latest;
+        Throwable badRequest;
+        boolean isDestroyed = false;
+        boolean isDone = false;
+
+        LiveSubscription(
+                Live<T> live,
+                LifecycleOwner owner,
+                Flow.Subscriber<? super T> subscriber
+        ) {
+            this.live = live;
+            this.owner = owner;
+            this.subscriber = subscriber;
+        }
+
+        void start() {
+            synchronized (this) {
+                if (isDone) {
+                    return;
+                }
+            }
+            Lifecycle lifecycle = owner.getLifecycle();
+            if (lifecycle.getCurrentState() == Lifecycle.State.DESTROYED) {
+                onDestroy(owner);
+                return;
+            }
+            lifecycle.addObserver(this);
+            live.observe(owner, this);
+        }
+
+        @Override
+        public void accept(@Nullable T t) {
+            if (t == null) {
+                return;
+            }
+            synchronized (this) {
+                latest = t;
+            }
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            synchronized (this) {
+                if (n <= 0) {
+                    badRequest = new IllegalArgumentException("Must request at least 1");
+                }
+                else {
+                    requested = requested + n < 0 ? Long.MAX_VALUE : requested + n;
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                if (isDone) {
+                    return;
+                }
+                isDone = true;
+                latest = null;
+            }
+            stop();
+        }
+
+        @Override
+        public void onDestroy(@NonNull LifecycleOwner owner) {
+            synchronized (this) {
+                isDestroyed = true;
+            }
+            drain();
+        }
+
+        void stop() {
+            live.removeObserver(this);
+            owner.getLifecycle().removeObserver(this);
+        }
+
+        void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                while (true) {
+                    T next = null;
+                    Throwable error = null;
+                    boolean isComplete = false;
+                    synchronized (this) {
+                        if (isDone) {
+                            break;
+                        }
+                        if (badRequest != null) {
+                            error = badRequest;
+                            isDone = true;
+                        }
+                        else if (isDestroyed) {
+                            isComplete = true;
+                            isDone = true;
+                        }
+                        else if (latest != null && requested > 0) {
+                            next = latest;
+                            latest = null;
+                            if (requested != Long.MAX_VALUE) {
+                                requested -= 1;
+                            }
+                        }
+                        else {
+                            break;
+                        }
+                    }
+                    if (error != null) {
+                        stop();
+                        subscriber.onError(error);
+                    }
+                    else if (isComplete) {
+                        stop();
+                        subscriber.onComplete();
+                    }
+                    else {
+                        subscriber.onNext(next);
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package ph.codeia.altlive;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import androidx.annotation.NonNull;
+import ph.codeia.altlive.transform.Canceller;
+
+import static org.junit.Assert.*;
+
+public class FuturesTest {
+    @Test
+    public void future_is_completed_in_the_same_thread_as_the_try() throws Exception {
+        AtomicReference<Try.Case<? super String>> pending = new AtomicReference<>();
+        Try<String> later = pending::set;
+        CompletableFuture<String> future = Futures.toFuture(later);
+        assertFalse(future.isDone());
+
+        Thread thread = new Thread(() -> pending.get().ok("foo"));
+        AtomicReference<Thread> completer = new AtomicReference<>();
+        future.thenRun(() -> completer.set(Thread.currentThread()));
+        thread.start();
+        thread.join();
+        assertEquals("foo", future.get());
+        assertSame(thread, completer.get());
+    }
+
+    @Test
+    public void cancelling_the_future_cancels_the_try() {
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+        Try<String> never = continuation -> {};
+        CompletableFuture<String> future = Futures.toFuture(never.pipe(Canceller.of(() -> {
+            cancelled.set(true);
+        })));
+        future.cancel(false);
+        assertTrue(cancelled.get());
+    }
+
+    @Test
+    public void unwraps_the_stage_error() {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Futures.fromStage(future.thenApply(s -> s)).select(new Try.Case<String>() {
+            @Override
+            public void ok(String s) {
+                fail("unreachable");
+            }
+
+            @Override
+            public void error(@NonNull Throwable t) {
+                error.set(t);
+            }
+        });
+        future.completeExceptionally(new ArithmeticException());
+        assertTrue(error.get() instanceof ArithmeticException);
+    }
+
+    @Test
+    public void cancelling_the_try_cancels_the_future() {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        Futures.fromFuture(future).cancel();
+        assertTrue(future.isCancelled());
+    }
+
+    @Test
+    public void round_trip() throws ExecutionException, InterruptedException {
+        assertEquals("foo", Futures.toFuture(Futures.fromStage(
+                CompletableFuture.completedFuture("foo")
+        )).get());
+    }
+}
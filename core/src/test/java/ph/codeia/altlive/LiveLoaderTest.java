@@ -0,0 +1,195 @@
+package ph.codeia.altlive;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.Nullable;
+import ph.codeia.altlive.transform.Delay;
+import ph.codeia.altlive.transform.Scheduler;
+import ph.codeia.altlive.transform.VirtualTime;
+
+import static org.junit.Assert.*;
+
+public class LiveLoaderTest {
+    private final VirtualTime time = new VirtualTime();
+    private Scheduler original;
+
+    @Before
+    public void setUp() {
+        original = Delay.scheduler();
+        Delay.setScheduler(time);
+    }
+
+    @After
+    public void tearDown() {
+        Delay.setScheduler(original);
+    }
+
+    static Loader.Progress<Integer> record(List<String> events) {
+        return new Loader.Progress<Integer>() {
+            @Override
+            public void running(@Nullable Integer currentValue) {
+                events.add("running " + currentValue);
+            }
+
+            @Override
+            public void done(Integer value) {
+                events.add("done " + value);
+            }
+
+            @Override
+            public void failed(Throwable error) {
+                events.add("failed " + error.getMessage());
+            }
+        };
+    }
+
+    /**
+     * Emits one value per virtual millisecond.
+     */
+    static Stream<Integer> ticks(VirtualTime time, int count) {
+        return sink -> {
+            sink.onStart(Stream.Demand.NONE);
+            for (int i = 1; i <= count; i++) {
+                int n = i;
+                time.schedule(() -> {
+                    sink.onNext(n);
+                    if (n == count) {
+                        sink.onComplete();
+                    }
+                }, n);
+            }
+        };
+    }
+
+    @Test
+    public void strawman() {
+        LiveLoader<Integer> loader = new LiveLoader<>();
+        List<String> events = new ArrayList<>();
+        loader.observe(Life.resumed(), record(events));
+        loader.postStream(Stream.of(1, 2, 3), 0, Integer::sum, 0);
+        assertEquals(Arrays.asList(
+                "running null",
+                "running 1",
+                "running 3",
+                "running 6",
+                "done 6"
+        ), events);
+    }
+
+    @Test
+    public void partial_results_are_throttled() {
+        LiveLoader<Integer> loader = new LiveLoader<>();
+        List<String> events = new ArrayList<>();
+        loader.observe(Life.resumed(), record(events));
+        loader.postStream(ticks(time, 25), 0, (sum, n) -> sum + 1, 10);
+        time.advance(1, TimeUnit.MILLISECONDS);
+        // the first one is posted right away
+        assertEquals(Arrays.asList("running null", "running 1"), events);
+        time.advance(9, TimeUnit.MILLISECONDS);
+        assertEquals("running 1", events.get(events.size() - 1));
+        time.advance(2, TimeUnit.MILLISECONDS);
+        assertEquals("running 11", events.get(events.size() - 1));
+        time.advance(100, TimeUnit.MILLISECONDS);
+        assertEquals(Arrays.asList(
+                "running null",
+                "running 1",
+                "running 11",
+                "running 21",
+                "done 25"
+        ), events);
+        assertEquals(0, time.pending());
+    }
+
+    @Test
+    public void next_load_starts_from_the_previous_result() {
+        LiveLoader<Integer> loader = new LiveLoader<>();
+        List<String> events = new ArrayList<>();
+        loader.observe(Life.resumed(), record(events));
+        loader.postStream(Stream.of(1, 2, 3), 0, TimeUnit.MILLISECONDS);
+        events.clear();
+        loader.postValue(Try.just(10));
+        assertEquals(Arrays.asList("running 3", "done 10"), events);
+    }
+
+    @Test
+    public void accumulator_errors_cancel_the_stream() {
+        LiveLoader<Integer> loader = new LiveLoader<>();
+        List<String> events = new ArrayList<>();
+        loader.observe(Life.resumed(), record(events));
+        List<Integer> seen = new ArrayList<>();
+        loader.postStream(Stream.of(1, 2, 3), 0, (sum, n) -> {
+            seen.add(n);
+            if (n == 2) {
+                throw new IllegalStateException("bad part");
+            }
+            return sum + n;
+        }, 0);
+        assertEquals("failed bad part", events.get(events.size() - 1));
+        assertEquals(Arrays.asList(1, 2), seen);
+    }
+
+    @Test
+    public void stream_errors_are_posted() {
+        LiveLoader<Integer> loader = new LiveLoader<>();
+        List<String> events = new ArrayList<>();
+        loader.observe(Life.resumed(), new Loader.Progress<Integer>() {
+            @Override
+            public void running(@Nullable Integer currentValue) {
+            }
+
+            @Override
+            public void done(Integer value) {
+                fail("unreachable");
+            }
+
+            @Override
+            public void failed(Throwable error) {
+                events.add(error.getMessage());
+            }
+        });
+        loader.postStream(Stream.raise(new IllegalStateException("boom")), 0, TimeUnit.MILLISECONDS);
+        assertEquals(Arrays.asList("boom"), events);
+    }
+
+    @Test
+    public void latest_wins_cancels_the_running_stream() {
+        LiveLoader<Integer> loader = new LiveLoader<Integer>().latestWins(true);
+        List<String> events = new ArrayList<>();
+        loader.observe(Life.resumed(), record(events));
+        loader.postStream(ticks(time, 10), 0, Integer::sum, 0);
+        time.advance(2, TimeUnit.MILLISECONDS);
+        loader.postValue(Try.just(100));
+        time.advance(100, TimeUnit.MILLISECONDS);
+        assertEquals(Arrays.asList(
+                "running null",
+                "running 1",
+                "running 3",
+                "running null",
+                "done 100"
+        ), events);
+        assertEquals(1, loader.cancelled());
+        assertEquals(0, time.pending());
+    }
+
+    @Test
+    public void posting_null_cancels_the_running_load() {
+        LiveLoader<Integer> loader = new LiveLoader<Integer>().latestWins(true);
+        Token[] upstream = new Token[1];
+        loader.postValue(c -> upstream[0] = c.token());
+        assertFalse(upstream[0].isCancelled());
+        loader.postValue(null);
+        assertTrue(upstream[0].isCancelled());
+        assertEquals(1, loader.cancelled());
+    }
+}
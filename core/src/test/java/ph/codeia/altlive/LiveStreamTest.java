@@ -0,0 +1,130 @@
+package ph.codeia.altlive;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.Nullable;
+
+import static org.junit.Assert.*;
+
+public class LiveStreamTest {
+
+    static class Pages implements Iterable<Integer> {
+        final AtomicInteger pulled = new AtomicInteger(0);
+        final int count;
+
+        Pages(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public Iterator<Integer> iterator() {
+            return new Iterator<Integer>() {
+                @Override
+                public boolean hasNext() {
+                    return pulled.get() < count;
+                }
+
+                @Override
+                public Integer next() {
+                    return pulled.incrementAndGet();
+                }
+            };
+        }
+    }
+
+    static Loader.Progress<Integer> record(List<String> events) {
+        return new Loader.Progress<Integer>() {
+            @Override
+            public void running(@Nullable Integer currentValue) {
+                events.add("running " + currentValue);
+            }
+
+            @Override
+            public void done(Integer value) {
+                events.add("done " + value);
+            }
+
+            @Override
+            public void failed(Throwable error) {
+                events.add("failed " + error.getMessage());
+            }
+        };
+    }
+
+    @Test
+    public void strawman() {
+        LiveStream<Integer> live = new LiveStream<>();
+        List<String> events = new ArrayList<>();
+        live.observe(Life.resumed(), record(events));
+        live.postValue(Stream.of(1, 2, 3));
+        assertEquals(Arrays.asList(
+                "running null",
+                "running 1",
+                "running 2",
+                "running 3",
+                "done 3"
+        ), events);
+    }
+
+    @Test
+    public void suspends_the_stream_while_the_owner_is_inactive() {
+        LiveStream<Integer> live = new LiveStream<>();
+        Pages pages = new Pages(5);
+        List<String> events = new ArrayList<>();
+        Life owner = Life.resumed();
+        live.observe(owner, record(events));
+        owner.regress();  // started
+        live.postValue(Stream.from(pages));
+        // one value is fetched up front
+        assertEquals(1, pages.pulled.get());
+        assertTrue(events.isEmpty());
+        owner.progress();  // resumed
+        assertEquals(5, pages.pulled.get());
+        assertEquals("done 5", events.get(events.size() - 1));
+    }
+
+    @Test
+    public void posting_a_new_stream_cancels_the_old_one() {
+        LiveStream<Integer> live = new LiveStream<>();
+        Pages first = new Pages(100);
+        List<String> events = new ArrayList<>();
+        Life owner = Life.resumed();
+        live.observe(owner, record(events));
+        owner.regress();
+        live.postValue(Stream.from(first));
+        live.postValue(Stream.of(42));
+        owner.progress();
+        assertEquals(1, first.pulled.get());
+        assertEquals("done 42", events.get(events.size() - 1));
+    }
+
+    @Test
+    public void removed_receivers_are_not_called() {
+        LiveStream<Integer> live = new LiveStream<>();
+        List<String> events = new ArrayList<>();
+        Loader.Progress<Integer> receiver = record(events);
+        live.observe(Life.resumed(), receiver);
+        live.removeObserver(receiver);
+        live.postValue(Stream.of(1));
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void failures_are_posted() {
+        LiveStream<Integer> live = new LiveStream<>();
+        List<String> events = new ArrayList<>();
+        live.observe(Life.resumed(), record(events));
+        live.postValue(Stream.raise(new IllegalStateException("boom")));
+        assertEquals("failed boom", events.get(events.size() - 1));
+    }
+}
@@ -7,14 +7,23 @@ package ph.codeia.altlive;
 import org.junit.AfterClass;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import androidx.annotation.Nullable;
+import ph.codeia.altlive.transform.Delay;
 import ph.codeia.altlive.transform.Execute;
+import ph.codeia.altlive.transform.Scheduler;
+import ph.codeia.altlive.transform.VirtualTime;
 
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
@@ -237,5 +246,379 @@ public class LiveTaskTest {
             main.shutdown();
         }
     }
-}
 
+    @Test
+    public void latest_wins_cancels_the_previous_query_and_drops_its_result() {
+        Map<String, Try.Case<? super String>> pending = new HashMap<>();
+        List<String> cancelled = new ArrayList<>();
+        LiveTask<String, String> search = new LiveTask<String, String>(query -> c -> {
+            pending.put(query, c);
+            c.token().onCancel(() -> cancelled.add(query));
+        }).latestWins(true);
+        List<String> events = new ArrayList<>();
+        search.observeForever(new Task.Progress<String, String>() {
+            @Override
+            public void running(String key, @Nullable String currentValue) {
+                events.add("running " + key);
+            }
+
+            @Override
+            public void done(String key, String value) {
+                events.add("done " + value);
+            }
+        });
+        search.postValue("a");
+        search.postValue("ab");
+        search.postValue("abc");
+        assertEquals(Arrays.asList("a", "ab"), cancelled);
+        assertEquals(2, search.cancelled());
+        // a source that ignores its token still completes, but the result is
+        // swallowed by the canceller. only a result that races with the next
+        // post gets as far as the generation check.
+        pending.get("ab").ok("stale");
+        pending.get("abc").ok("fresh");
+        assertEquals(Arrays.asList("running a", "running ab", "running abc", "done fresh"), events);
+        assertEquals(0, search.dropped());
+    }
+
+    @Test
+    public void every_query_completes_when_latest_wins_is_off() {
+        Map<String, Try.Case<? super String>> pending = new HashMap<>();
+        LiveTask<String, String> search = new LiveTask<>(query -> c -> pending.put(query, c));
+        List<String> done = new ArrayList<>();
+        search.observeForever(Task.whenDone(done::add));
+        search.postValue("a");
+        search.postValue("ab");
+        pending.get("ab").ok("ab");
+        pending.get("a").ok("a");
+        assertEquals(Arrays.asList("ab", "a"), done);
+        assertEquals(0, search.cancelled());
+        assertEquals(0, search.dropped());
+    }
+
+    @Test
+    public void repeated_keys_attach_to_the_running_computation() {
+        AtomicInteger calls = new AtomicInteger(0);
+        List<Try.Case<? super String>> pending = new ArrayList<>();
+        LiveTask<String, String> login = new LiveTask<String, String>(user -> c -> {
+            calls.incrementAndGet();
+            pending.add(c);
+        }).singleFlight(true);
+        List<String> events = new ArrayList<>();
+        login.observeForever(new Task.Progress<String, String>() {
+            @Override
+            public void running(String key, @Nullable String currentValue) {
+                events.add("running " + key);
+            }
+
+            @Override
+            public void done(String key, String value) {
+                events.add("done " + value);
+            }
+        });
+        login.postValue("foo");
+        login.postValue("foo");
+        login.postValue("bar");
+        assertEquals(2, calls.get());
+        assertEquals(1, login.deduplicated());
+        pending.get(0).ok("token");
+        assertEquals(Arrays.asList("running foo", "running bar", "done token"), events);
+        login.postValue("foo");
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void failed_keys_can_be_retried_right_away() {
+        AtomicInteger calls = new AtomicInteger(0);
+        LiveTask<String, String> task = new LiveTask<String, String>(key -> {
+            calls.incrementAndGet();
+            return Try.raise(new IllegalStateException());
+        }).singleFlight(1, TimeUnit.SECONDS);
+        task.observeForever(new Task.Progress<String, String>() {
+            @Override
+            public void running(String key, @Nullable String currentValue) {
+            }
+
+            @Override
+            public void done(String key, String value) {
+            }
+
+            @Override
+            public void failed(String key, Throwable error) {
+            }
+        });
+        task.postValue("foo");
+        task.postValue("foo");
+        assertEquals(2, calls.get());
+        assertEquals(0, task.deduplicated());
+    }
+
+    @Test
+    public void recent_results_are_served_within_the_window() {
+        VirtualTime time = new VirtualTime();
+        Scheduler original = Delay.scheduler();
+        Delay.setScheduler(time);
+        try {
+            AtomicInteger calls = new AtomicInteger(0);
+            LiveTask<String, Integer> task = new LiveTask<String, Integer>(key ->
+                    Try.just(calls.incrementAndGet())
+            ).singleFlight(100, TimeUnit.MILLISECONDS);
+            List<Integer> done = new ArrayList<>();
+            task.observeForever(Task.whenDone(done::add));
+            task.postValue("foo");
+            time.advance(99, TimeUnit.MILLISECONDS);
+            task.postValue("foo");
+            assertEquals(Arrays.asList(1, 1), done);
+            time.advance(1, TimeUnit.MILLISECONDS);
+            task.postValue("foo");
+            assertEquals(Arrays.asList(1, 1, 2), done);
+            assertEquals(1, task.deduplicated());
+        }
+        finally {
+            Delay.setScheduler(original);
+        }
+    }
+
+    static Task.Progress<Integer, Integer> record(List<String> events) {
+        return new Task.Progress<Integer, Integer>() {
+            @Override
+            public void running(Integer key, @Nullable Integer currentValue) {
+                events.add("running " + key);
+            }
+
+            @Override
+            public void done(Integer key, Integer value) {
+                events.add("done " + key);
+            }
+        };
+    }
+
+    @Test
+    public void serial_policy_runs_one_key_at_a_time_in_order() {
+        List<Try.Case<? super Integer>> pending = new ArrayList<>();
+        LiveTask<Integer, Integer> task = new LiveTask<Integer, Integer>(n -> c -> pending.add(c))
+                .policy(LiveTask.Policy.serial());
+        List<String> events = new ArrayList<>();
+        task.observeForever(record(events));
+        task.postValue(1);
+        task.postValue(2);
+        task.postValue(3);
+        assertEquals(1, pending.size());
+        assertEquals(2, task.pending());
+        pending.get(0).ok(1);
+        pending.get(1).ok(2);
+        pending.get(2).ok(3);
+        assertEquals(Arrays.asList(
+                "running 1", "done 1",
+                "running 2", "done 2",
+                "running 3", "done 3"
+        ), events);
+        assertEquals(0, task.pending());
+        assertEquals(2, task.peakPending());
+    }
+
+    @Test
+    public void recent_results_wait_for_their_turn_under_the_serial_policy() {
+        List<Try.Case<? super Integer>> pending = new ArrayList<>();
+        LiveTask<Integer, Integer> task = new LiveTask<Integer, Integer>(n -> c -> pending.add(c))
+                .policy(LiveTask.Policy.serial())
+                .singleFlight(1, TimeUnit.MINUTES);
+        List<String> events = new ArrayList<>();
+        task.observeForever(record(events));
+        task.postValue(1);
+        pending.get(0).ok(1);
+        task.postValue(2);
+        task.postValue(1);
+        assertEquals(1, task.pending());
+        assertEquals(Arrays.asList("running 1", "done 1", "running 2"), events);
+        pending.get(1).ok(2);
+        assertEquals(Arrays.asList(
+                "running 1", "done 1",
+                "running 2", "done 2",
+                "done 1"
+        ), events);
+        assertEquals(2, pending.size());
+        assertEquals(1, task.deduplicated());
+    }
+
+    @Test
+    public void latest_wins_cancels_the_running_key_under_the_serial_policy() {
+        List<Integer> started = new ArrayList<>();
+        List<Integer> cancelled = new ArrayList<>();
+        List<Try.Case<? super Integer>> pending = new ArrayList<>();
+        LiveTask<Integer, Integer> task = new LiveTask<Integer, Integer>(n -> c -> {
+            started.add(n);
+            pending.add(c);
+            c.token().onCancel(() -> cancelled.add(n));
+        }).policy(LiveTask.Policy.serial()).latestWins(true);
+        List<String> events = new ArrayList<>();
+        task.observeForever(record(events));
+        task.postValue(1);
+        task.postValue(2);
+        task.postValue(3);
+        assertEquals(Arrays.asList(1, 2, 3), started);
+        assertEquals(Arrays.asList(1, 2), cancelled);
+        assertEquals(2, task.cancelled());
+        assertEquals(0, task.pending());
+        pending.get(2).ok(3);
+        assertEquals(Arrays.asList("running 1", "running 2", "running 3", "done 3"), events);
+    }
+
+    @Test
+    public void latest_wins_takes_superseded_keys_off_the_queue() {
+        List<Integer> started = new ArrayList<>();
+        List<Try.Case<? super Integer>> pending = new ArrayList<>();
+        LiveTask<Integer, Integer> task = new LiveTask<Integer, Integer>(n -> c -> {
+            started.add(n);
+            pending.add(c);
+        }).policy(LiveTask.Policy.serial());
+        task.postValue(1);
+        task.postValue(2);
+        assertEquals(1, task.pending());
+        task.latestWins(true);
+        task.postValue(3);
+        assertEquals(1, task.pending());
+        assertEquals(1, task.cancelled());
+        pending.get(0).ok(1);
+        assertEquals(Arrays.asList(1, 3), started);
+        assertEquals(1, task.dropped());
+    }
+
+    @Test
+    public void posting_null_drops_the_pending_keys() {
+        List<Integer> started = new ArrayList<>();
+        List<Try.Case<? super Integer>> pending = new ArrayList<>();
+        LiveTask<Integer, Integer> task = new LiveTask<Integer, Integer>(n -> c -> {
+            started.add(n);
+            pending.add(c);
+        }).policy(LiveTask.Policy.serial()).singleFlight(true);
+        task.postValue(1);
+        task.postValue(2);
+        task.postValue(3);
+        assertEquals(2, task.pending());
+        task.postValue(null);
+        assertEquals(0, task.pending());
+        pending.get(0).ok(1);
+        assertEquals(Arrays.asList(1), started);
+        // the dropped keys left the single-flight set
+        task.postValue(2);
+        assertEquals(Arrays.asList(1, 2), started);
+    }
+
+    @Test
+    public void parallel_policy_bounds_the_running_computations() {
+        List<Try.Case<? super Integer>> pending = new ArrayList<>();
+        LiveTask<Integer, Integer> task = new LiveTask<Integer, Integer>(n -> c -> pending.add(c))
+                .policy(LiveTask.Policy.parallel(2));
+        for (int i = 0; i < 5; i++) {
+            task.postValue(i);
+        }
+        assertEquals(2, pending.size());
+        assertEquals(3, task.pending());
+        pending.get(1).error(new IllegalStateException());
+        assertEquals(3, pending.size());
+        assertEquals(2, task.pending());
+        assertEquals(0, task.rejected());
+    }
+
+    @Test
+    public void drop_while_busy_policy_ignores_the_posts_while_running() {
+        List<Integer> started = new ArrayList<>();
+        List<Try.Case<? super Integer>> pending = new ArrayList<>();
+        LiveTask<Integer, Integer> task = new LiveTask<Integer, Integer>(n -> c -> {
+            started.add(n);
+            pending.add(c);
+        }).policy(LiveTask.Policy.dropWhileBusy());
+        task.postValue(1);
+        task.postValue(2);
+        task.postValue(3);
+        pending.get(0).ok(1);
+        task.postValue(4);
+        assertEquals(Arrays.asList(1, 4), started);
+        assertEquals(2, task.rejected());
+        assertEquals(0, task.peakPending());
+    }
+
+    @Test
+    public void queue_latest_policy_keeps_only_the_last_pending_key() {
+        List<Integer> started = new ArrayList<>();
+        List<Try.Case<? super Integer>> pending = new ArrayList<>();
+        LiveTask<Integer, Integer> task = new LiveTask<Integer, Integer>(n -> c -> {
+            started.add(n);
+            pending.add(c);
+        }).policy(LiveTask.Policy.queueLatest());
+        task.postValue(1);
+        task.postValue(2);
+        task.postValue(3);
+        task.postValue(4);
+        assertEquals(1, task.pending());
+        assertEquals(2, task.rejected());
+        pending.get(0).ok(1);
+        assertEquals(Arrays.asList(1, 4), started);
+    }
+
+    @Test
+    public void rejected_keys_leave_the_single_flight_set() {
+        List<Integer> started = new ArrayList<>();
+        List<Try.Case<? super Integer>> pending = new ArrayList<>();
+        LiveTask<Integer, Integer> task = new LiveTask<Integer, Integer>(n -> c -> {
+            started.add(n);
+            pending.add(c);
+        }).policy(LiveTask.Policy.dropWhileBusy()).singleFlight(true);
+        task.postValue(1);
+        task.postValue(2);
+        pending.get(0).ok(1);
+        task.postValue(2);
+        assertEquals(Arrays.asList(1, 2), started);
+    }
+
+    @Test
+    public void serial_policy_does_not_recurse_with_synchronous_producers() {
+        AtomicInteger count = new AtomicInteger(0);
+        AtomicReference<LiveTask<Integer, Integer>> task = new AtomicReference<>();
+        task.set(new LiveTask<Integer, Integer>(n -> Try.of(() -> {
+            count.incrementAndGet();
+            if (n < 100_000) {
+                task.get().postValue(n + 1);
+            }
+            return n;
+        })).policy(LiveTask.Policy.serial()));
+        task.get().postValue(1);
+        assertEquals(100_000, count.get());
+        assertEquals(1, task.get().peakPending());
+    }
+
+    @Test
+    public void an_observer_that_throws_on_running_does_not_hold_the_queue() {
+        List<Integer> started = new ArrayList<>();
+        List<String> events = new ArrayList<>();
+        LiveTask<Integer, Integer> task = new LiveTask<Integer, Integer>(n -> c -> {
+            started.add(n);
+            c.ok(n);
+        }).policy(LiveTask.Policy.serial()).singleFlight(true);
+        task.observeForever(new Task.Progress<Integer, Integer>() {
+            @Override
+            public void running(Integer key, @Nullable Integer currentValue) {
+                if (key == 1) {
+                    throw new IllegalStateException();
+                }
+            }
+
+            @Override
+            public void done(Integer key, Integer value) {
+                events.add("done " + key);
+            }
+
+            @Override
+            public void failed(Integer key, Throwable error) {
+                events.add("failed " + key);
+            }
+        });
+        task.postValue(1);
+        task.postValue(2);
+        task.postValue(1);
+        assertEquals(Arrays.asList(2), started);
+        assertEquals(Arrays.asList("failed 1", "done 2", "failed 1"), events);
+        assertEquals(0, task.pending());
+    }
+}
@@ -0,0 +1,283 @@
+package ph.codeia.altlive;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import androidx.annotation.NonNull;
+import ph.codeia.altlive.transform.Execute;
+import ph.codeia.altlive.transform.Receive;
+
+import static org.junit.Assert.*;
+
+public class StreamTest {
+    private static final ExecutorService BG = Executors.newSingleThreadExecutor();
+    private static final ExecutorService FG = Executors.newSingleThreadExecutor();
+    private static final ThreadLocal<String> S = new ThreadLocal<>();
+
+    static {
+        BG.execute(() -> S.set("background"));
+        FG.execute(() -> S.set("foreground"));
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        BG.shutdown();
+        FG.shutdown();
+    }
+
+    static class Recorder<T> implements Stream.Sink<T> {
+        final List<T> values = new ArrayList<>();
+        final Token token = new Token();
+        Stream.Demand demand = Stream.Demand.NONE;
+        Throwable error;
+        boolean isComplete = false;
+
+        @Override
+        public void onStart(Stream.Demand demand) {
+            this.demand = demand;
+        }
+
+        @Override
+        public void onNext(T t) {
+            values.add(t);
+        }
+
+        @Override
+        public void onError(@NonNull Throwable t) {
+            error = t;
+        }
+
+        @Override
+        public void onComplete() {
+            isComplete = true;
+        }
+
+        @Override
+        public Token token() {
+            return token;
+        }
+    }
+
+    @Test
+    public void strawman() {
+        List<Integer> result = Stream.of(1, 2, 3, 4, 5, 6)
+                .filter(n -> n % 2 == 0)
+                .map(n -> n * 10)
+                .toList()
+                .unwrap();
+        assertEquals(Arrays.asList(20, 40, 60), result);
+    }
+
+    @Test
+    public void produces_only_as_many_values_as_requested() {
+        AtomicInteger pulled = new AtomicInteger(0);
+        Iterable<Integer> naturals = () -> new Iterator<Integer>() {
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public Integer next() {
+                return pulled.incrementAndGet();
+            }
+        };
+        Recorder<Integer> sink = new Recorder<>();
+        Stream.from(naturals).subscribe(sink);
+        assertTrue(sink.values.isEmpty());
+        sink.demand.request(2);
+        assertEquals(Arrays.asList(1, 2), sink.values);
+        sink.demand.request(3);
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5), sink.values);
+        assertEquals(5, pulled.get());
+        sink.token.cancel();
+        sink.demand.request(10);
+        assertEquals(5, sink.values.size());
+        assertFalse(sink.isComplete);
+    }
+
+    @Test
+    public void requesting_from_inside_on_next_does_not_recurse() {
+        Integer[] items = new Integer[100_000];
+        Arrays.fill(items, 1);
+        AtomicInteger count = new AtomicInteger(0);
+        AtomicReference<Boolean> isComplete = new AtomicReference<>(false);
+        Stream.of(items).subscribe(new Stream.Sink<Integer>() {
+            Stream.Demand demand;
+
+            @Override
+            public void onStart(Stream.Demand demand) {
+                this.demand = demand;
+                demand.request(1);
+            }
+
+            @Override
+            public void onNext(Integer integer) {
+                count.incrementAndGet();
+                demand.request(1);
+            }
+
+            @Override
+            public void onError(@NonNull Throwable t) {
+                fail("unreachable");
+            }
+
+            @Override
+            public void onComplete() {
+                isComplete.set(true);
+            }
+        });
+        assertEquals(items.length, count.get());
+        assertTrue(isComplete.get());
+    }
+
+    @Test
+    public void bad_request_fails_the_stream() {
+        Recorder<Integer> sink = new Recorder<>();
+        Stream.of(1, 2, 3).subscribe(sink);
+        sink.demand.request(0);
+        assertTrue(sink.error instanceof IllegalArgumentException);
+        assertTrue(sink.values.isEmpty());
+    }
+
+    @Test
+    public void iterate_fetches_the_next_page_only_on_demand() {
+        List<Integer> fetched = new ArrayList<>();
+        Function<Integer, Try<Integer>> page = n -> Try.of(() -> {
+            fetched.add(n);
+            return n;
+        });
+        Stream<Integer> pages = Stream.iterate(page.apply(1), n -> n < 5 ? page.apply(n + 1) : null);
+        Recorder<Integer> sink = new Recorder<>();
+        pages.subscribe(sink);
+        assertTrue(fetched.isEmpty());
+        sink.demand.request(2);
+        assertEquals(Arrays.asList(1, 2), fetched);
+        sink.demand.request(10);
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5), sink.values);
+        assertTrue(sink.isComplete);
+    }
+
+    @Test
+    public void iterate_fails_when_a_page_fails() {
+        Stream<Integer> pages = Stream.iterate(Try.just(1), n -> n < 3
+                ? Try.just(n + 1)
+                : Try.raise(new IllegalStateException("page " + (n + 1))));
+        try {
+            pages.toList().unwrap();
+            fail("unreachable");
+        }
+        catch (IllegalStateException e) {
+            assertEquals("page 4", e.getMessage());
+        }
+    }
+
+    @Test
+    public void take_cancels_the_source() {
+        Stream<Integer> infinite = sink -> {
+            sink.onStart(n -> {
+                for (int i = 0; i < n && !sink.token().isCancelled(); i++) {
+                    sink.onNext(i);
+                }
+            });
+        };
+        assertEquals(Arrays.asList(0, 1, 2), infinite.take(3).toList().unwrap());
+    }
+
+    @Test
+    public void take_requests_no_more_than_it_needs() {
+        List<Long> requests = new ArrayList<>();
+        Stream<Integer> counter = sink -> {
+            AtomicInteger next = new AtomicInteger(0);
+            sink.onStart(n -> {
+                requests.add(n);
+                for (long i = 0; i < n && !sink.token().isCancelled(); i++) {
+                    sink.onNext(next.getAndIncrement());
+                }
+            });
+        };
+        assertEquals(Arrays.asList(0, 1, 2), counter.take(3).toList().unwrap());
+        assertEquals(Arrays.asList(3L), requests);
+    }
+
+    @Test
+    public void errors_in_functions_fail_the_stream() {
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Stream.of(1, 0, 2).map(n -> 6 / n).fold(0, Integer::sum).select(new Try.Case<Integer>() {
+            @Override
+            public void ok(Integer integer) {
+                fail("unreachable");
+            }
+
+            @Override
+            public void error(@NonNull Throwable t) {
+                error.set(t);
+            }
+        });
+        assertTrue(error.get() instanceof ArithmeticException);
+    }
+
+    @Test
+    public void every_subscription_starts_over() {
+        Stream<Integer> stream = Stream.of(1, 2);
+        Try<List<Integer>> list = stream.toList();
+        assertEquals(Arrays.asList(1, 2), list.unwrap());
+        assertEquals(Arrays.asList(1, 2), list.unwrap());
+        assertEquals(Collections.emptyList(), Stream.empty().toList().unwrap());
+    }
+
+    @Test(timeout = 1000)
+    public void can_produce_and_receive_in_different_threads() throws InterruptedException {
+        List<String> producers = Collections.synchronizedList(new ArrayList<>());
+        List<String> receivers = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> values = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1);
+        Stream.of(1, 2, 3)
+                .map(n -> {
+                    producers.add(S.get());
+                    return n;
+                })
+                .pipe(Execute.streamOn(BG))
+                .pipe(Receive.streamOn(FG))
+                .subscribe(new Stream.Sink<Integer>() {
+                    @Override
+                    public void onNext(Integer integer) {
+                        receivers.add(S.get());
+                        values.add(integer);
+                    }
+
+                    @Override
+                    public void onError(@NonNull Throwable t) {
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        receivers.add(S.get());
+                        done.countDown();
+                    }
+                });
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(1, 2, 3), values);
+        assertEquals(Arrays.asList("background", "background", "background"), producers);
+        assertEquals(4, receivers.size());
+        for (String receiver : receivers) {
+            assertEquals("foreground", receiver);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package ph.codeia.altlive;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import androidx.annotation.NonNull;
+import ph.codeia.altlive.transform.Delay;
+
+import static org.junit.Assert.*;
+
+public class TryScopeTest {
+    private static <T> Try.Case<T> record(AtomicReference<Object> result) {
+        return new Try.Case<T>() {
+            @Override
+            public void ok(T t) {
+                result.set(t);
+            }
+
+            @Override
+            public void error(@NonNull Throwable t) {
+                result.set(t);
+            }
+        };
+    }
+
+    @Test
+    public void counts_outstanding_work() {
+        TryScope scope = new TryScope();
+        AtomicReference<Try.Case<? super String>> pending = new AtomicReference<>();
+        Try<String> later = pending::set;
+        AtomicReference<Object> result = new AtomicReference<>();
+
+        later.pipe(scope::track).select(record(result));
+        assertEquals(1, scope.outstanding());
+        pending.get().ok("foo");
+        assertEquals(0, scope.outstanding());
+        assertEquals(1, scope.completed());
+        assertEquals("foo", result.get());
+    }
+
+    @Test
+    public void closing_cancels_the_outstanding_work() throws InterruptedException {
+        TryScope scope = new TryScope();
+        AtomicBoolean ran = new AtomicBoolean(false);
+        AtomicReference<Object> result = new AtomicReference<>();
+        Try<Void> t = Try.of(() -> ran.set(true))
+                .pipe(Delay.executionBy(20))
+                .pipe(scope::track);
+        t.select(record(result));
+        t.select(record(result));
+        assertEquals(2, scope.outstanding());
+
+        scope.close();
+        assertEquals(0, scope.outstanding());
+        assertEquals(2, scope.abandoned());
+        Thread.sleep(40);
+        assertFalse(ran.get());
+        assertNull(result.get());
+    }
+
+    @Test
+    public void does_not_start_work_after_closing() {
+        TryScope scope = new TryScope();
+        AtomicBoolean ran = new AtomicBoolean(false);
+        scope.close();
+        Try.of(() -> ran.set(true)).pipe(scope::track).select(record(new AtomicReference<>()));
+        assertFalse(ran.get());
+        assertEquals(0, scope.started());
+    }
+}
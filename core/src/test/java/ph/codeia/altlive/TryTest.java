@@ -6,12 +6,16 @@ package ph.codeia.altlive;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import androidx.annotation.NonNull;
+import ph.codeia.altlive.transform.Execute;
 
 import static org.junit.Assert.*;
 
@@ -120,5 +124,70 @@ public class TryTest {
             e.shutdown();
         }
     }
-}
 
+    @Test(timeout = 1000)
+    public void traverse_keeps_the_order_and_never_exceeds_the_parallelism() {
+        ExecutorService e = Executors.newFixedThreadPool(8);
+        try {
+            AtomicInteger active = new AtomicInteger(0);
+            AtomicInteger peak = new AtomicInteger(0);
+            List<Integer> items = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                items.add(i);
+            }
+            List<Integer> result = Try.traverse(items, i -> Execute.on(e, () -> {
+                peak.accumulateAndGet(active.incrementAndGet(), Math::max);
+                Thread.sleep(1);
+                active.decrementAndGet();
+                return i * 2;
+            }), 3).unwrap();
+
+            assertEquals(50, result.size());
+            for (int i = 0; i < 50; i++) {
+                assertEquals(i * 2, (int) result.get(i));
+            }
+            assertTrue(peak.get() <= 3);
+        }
+        finally {
+            e.shutdown();
+        }
+    }
+
+    @Test
+    public void traverse_does_not_overflow_the_stack_with_synchronous_computations() {
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            items.add(i);
+        }
+        assertEquals(100_000, Try.traverse(items, Try::just, 4).unwrap().size());
+    }
+
+    @Test
+    public void traverse_skips_the_rest_of_the_items_after_a_failure() {
+        AtomicInteger counter = new AtomicInteger(0);
+        Try<List<Integer>> t = Try.traverse(Arrays.asList(1, 2, 0, 4, 5), i -> {
+            counter.incrementAndGet();
+            return Try.of(() -> 10 / i);
+        }, 2);
+        try {
+            t.unwrap();
+            fail("unreachable");
+        }
+        catch (ArithmeticException ignored) {
+        }
+        assertEquals(3, counter.get());
+
+        counter.set(0);
+        t = Try.traverse(Arrays.asList(1, 2, 0, 4, 5), i -> {
+            counter.incrementAndGet();
+            return Try.of(() -> 10 / i);
+        }, 2, false);
+        try {
+            t.unwrap();
+            fail("unreachable");
+        }
+        catch (ArithmeticException ignored) {
+        }
+        assertEquals(5, counter.get());
+    }
+}
@@ -0,0 +1,148 @@
+package ph.codeia.altlive.transform;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import ph.codeia.altlive.Try;
+import ph.codeia.altlive.TryScope;
+
+import static org.junit.Assert.*;
+
+public class BatchLoaderTest {
+    private static Map<Integer, String> lookup(List<Integer> keys) {
+        Map<Integer, String> result = new HashMap<>();
+        for (int key : keys) {
+            if (key >= 0) {
+                result.put(key, "v" + key);
+            }
+        }
+        return result;
+    }
+
+    private static <T> Try.Case<T> caseOf(Consumer<T> ok, Consumer<Throwable> error) {
+        return new Try.Case<T>() {
+            @Override
+            public void ok(T t) {
+                ok.accept(t);
+            }
+
+            @Override
+            public void error(Throwable t) {
+                error.accept(t);
+            }
+        };
+    }
+
+    @Test
+    public void coalesces_and_dedupes_loads_in_the_same_tick() {
+        List<List<Integer>> calls = new ArrayList<>();
+        Deque<Runnable> looper = new ArrayDeque<>();
+        BatchLoader<Integer, String> loader = BatchLoader.<Integer, String>by(looper::add, keys -> {
+            calls.add(keys);
+            return Try.just(lookup(keys));
+        }).build();
+        List<Integer> order = Arrays.asList(1, 2, 1, 3, -1);
+        String[] results = new String[order.size()];
+        looper.add(() -> {
+            for (int i = 0; i < order.size(); i++) {
+                int n = i;
+                loader.load(order.get(i)).select(caseOf(
+                        s -> results[n] = s,
+                        t -> results[n] = t instanceof NoSuchElementException ? "missing" : "?"
+                ));
+            }
+        });
+        while (!looper.isEmpty()) {
+            looper.poll().run();
+        }
+        assertEquals(1, calls.size());
+        assertEquals(Arrays.asList(1, 2, 3, -1), calls.get(0));
+        assertArrayEquals(new String[] {"v1", "v2", "v1", "v3", "missing"}, results);
+        assertEquals(5, loader.loads());
+        assertEquals(1, loader.batches());
+    }
+
+    @Test
+    public void dispatches_full_batches_immediately() {
+        List<List<Integer>> calls = new ArrayList<>();
+        BatchLoader<Integer, String> loader = BatchLoader.<Integer, String>by(Runnable::run, keys -> {
+            calls.add(keys);
+            return Try.just(lookup(keys));
+        }).window(10, TimeUnit.SECONDS).maxBatchSize(2).build();
+        List<String> results = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            loader.load(i).select(caseOf(results::add, t -> fail()));
+        }
+        assertEquals(Arrays.asList(Arrays.asList(0, 1), Arrays.asList(2, 3)), calls);
+        loader.dispatch();
+        assertEquals(Arrays.asList("v0", "v1", "v2", "v3", "v4"), results);
+        assertEquals(3, loader.batches());
+    }
+
+    @Test
+    public void cancelled_loads_leave_the_batch() {
+        List<List<Integer>> calls = new ArrayList<>();
+        BatchLoader<Integer, String> loader = BatchLoader.<Integer, String>by(Runnable::run, keys -> {
+            calls.add(keys);
+            return Try.just(lookup(keys));
+        }).window(10, TimeUnit.SECONDS).build();
+        TryScope scope = new TryScope();
+        List<String> results = new ArrayList<>();
+        loader.load(1).pipe(scope::track).select(caseOf(results::add, t -> fail()));
+        loader.load(2).select(caseOf(results::add, t -> fail()));
+        scope.close();
+        loader.dispatch();
+        assertEquals(Arrays.asList(Arrays.asList(2)), calls);
+        assertEquals(Arrays.asList("v2"), results);
+    }
+
+    @Test
+    public void batch_errors_fail_every_key() {
+        BatchLoader<Integer, String> loader = BatchLoader.<Integer, String>by(Runnable::run, keys ->
+                Try.raise(new IllegalStateException("down"))
+        ).window(10, TimeUnit.SECONDS).build();
+        List<Throwable> errors = new ArrayList<>();
+        loader.load(1).select(caseOf(s -> fail(), errors::add));
+        loader.load(2).select(caseOf(s -> fail(), errors::add));
+        loader.dispatch();
+        assertEquals(2, errors.size());
+        assertEquals("down", errors.get(0).getMessage());
+    }
+
+    @Test
+    public void every_tick_gets_its_own_batch() {
+        List<List<Integer>> calls = new ArrayList<>();
+        Deque<Runnable> looper = new ArrayDeque<>();
+        BatchLoader<Integer, String> loader = BatchLoader.<Integer, String>by(looper::add, keys -> {
+            calls.add(keys);
+            return Try.just(lookup(keys));
+        }).build();
+        List<String> results = new ArrayList<>();
+        looper.add(() -> {
+            loader.load(1).select(caseOf(results::add, t -> fail()));
+            loader.load(2).select(caseOf(results::add, t -> fail()));
+            // posted by this tick, so it runs after the first batch
+            looper.add(() -> loader.load(3).select(caseOf(results::add, t -> fail())));
+        });
+        assertTrue(results.isEmpty());
+        while (!looper.isEmpty()) {
+            looper.poll().run();
+        }
+        assertEquals(Arrays.asList(Arrays.asList(1, 2), Arrays.asList(3)), calls);
+        assertEquals(Arrays.asList("v1", "v2", "v3"), results);
+    }
+}
@@ -0,0 +1,111 @@
+package ph.codeia.altlive.transform;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import ph.codeia.altlive.Try;
+import ph.codeia.altlive.TryScope;
+
+import static org.junit.Assert.*;
+
+public class BulkheadTest {
+    @Test
+    public void queues_and_rejects_beyond_the_limit() {
+        Bulkhead bulkhead = Bulkhead.of(2).queue(1, -1).build();
+        List<Try.Case<? super String>> pending = new ArrayList<>();
+        Try<String> slow = bulkhead.apply(pending::add);
+        Results<String> results = new Results<>();
+        for (int i = 0; i < 4; i++) {
+            slow.select(results);
+        }
+        assertEquals(2, pending.size());
+        assertEquals(2, bulkhead.active());
+        assertEquals(1, bulkhead.queued());
+        assertEquals(1, bulkhead.rejected());
+        assertTrue(results.errors.get(0) instanceof Bulkhead.Full);
+
+        pending.get(0).ok("a");
+        assertEquals(3, pending.size());
+        assertEquals(2, bulkhead.active());
+        assertEquals(0, bulkhead.queued());
+
+        pending.get(1).error(new IllegalStateException());
+        pending.get(2).ok("c");
+        assertEquals(0, bulkhead.active());
+        assertEquals(2, results.values.size());
+        assertEquals(2, results.errors.size());
+    }
+
+    @Test
+    public void times_out_in_the_queue() throws InterruptedException {
+        Bulkhead bulkhead = Bulkhead.of(1).queue(1, 20).build();
+        List<Try.Case<? super String>> pending = new ArrayList<>();
+        Try<String> slow = bulkhead.apply(pending::add);
+        CountDownLatch timedOut = new CountDownLatch(1);
+        slow.select(new Results<>());
+        slow.select(new Results<String>() {
+            @Override
+            public synchronized void error(Throwable t) {
+                assertTrue(t instanceof TimeoutException);
+                timedOut.countDown();
+            }
+        });
+        assertTrue(timedOut.await(1, TimeUnit.SECONDS));
+        assertEquals(0, bulkhead.queued());
+        assertEquals(1, bulkhead.timedOut());
+        assertEquals(1, pending.size());
+    }
+
+    @Test
+    public void cancellation_releases_the_slot() {
+        Bulkhead bulkhead = Bulkhead.of(1).queue(2, -1).build();
+        List<Try.Case<? super String>> pending = new ArrayList<>();
+        Try<String> slow = bulkhead.apply(pending::add);
+        TryScope running = new TryScope();
+        TryScope waiting = new TryScope();
+        Results<String> results = new Results<>();
+        slow.pipe(running::track).select(results);
+        slow.pipe(waiting::track).select(results);
+        slow.select(results);
+        assertEquals(2, bulkhead.queued());
+
+        waiting.close();
+        assertEquals(1, bulkhead.queued());
+        running.close();
+        assertEquals(2, pending.size());
+        assertEquals(1, bulkhead.active());
+        assertEquals(0, bulkhead.queued());
+
+        pending.get(1).ok("done");
+        assertEquals(0, bulkhead.active());
+        assertEquals(1, results.values.size());
+        assertTrue(results.errors.isEmpty());
+    }
+
+    @Test
+    public void a_deep_queue_of_synchronous_sources_does_not_recurse() {
+        Bulkhead bulkhead = Bulkhead.of(1).queue(100_000, -1).build();
+        List<Try.Case<? super String>> pending = new ArrayList<>();
+        Results<String> results = new Results<>();
+        bulkhead.<String>apply(pending::add).select(results);
+        Try<String> fast = Try.just("fast").pipe(bulkhead::apply);
+        for (int i = 0; i < 100_000; i++) {
+            fast.select(results);
+        }
+        assertEquals(100_000, bulkhead.queued());
+
+        pending.get(0).ok("slow");
+        assertEquals(100_001, results.values.size());
+        assertEquals(0, bulkhead.active());
+        assertEquals(0, bulkhead.queued());
+    }
+}
@@ -0,0 +1,128 @@
+package ph.codeia.altlive.transform;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+import ph.codeia.altlive.Try;
+
+import static org.junit.Assert.*;
+
+public class CachedTest {
+    @Test
+    public void loads_each_key_once() {
+        AtomicInteger loads = new AtomicInteger(0);
+        Cached<Integer, String> cache = Cached.<Integer, String>by(i -> {
+            loads.incrementAndGet();
+            return Try.just("#" + i);
+        }).build();
+
+        assertEquals("#1", cache.apply(1).unwrap());
+        assertEquals("#1", cache.apply(1).unwrap());
+        assertEquals("#2", cache.apply(2).unwrap());
+        assertEquals(2, loads.get());
+        Cached.Stats stats = cache.stats();
+        assertEquals(1, stats.hits);
+        assertEquals(2, stats.misses);
+        assertEquals(2, stats.size);
+    }
+
+    @Test
+    public void concurrent_lookups_of_a_missing_key_share_one_load() {
+        List<Try.Case<? super String>> pending = new ArrayList<>();
+        Cached<Integer, String> cache = Cached.<Integer, String>by(i -> pending::add).build();
+        List<String> results = new ArrayList<>();
+        Try.Case<String> collect = new Try.Case<String>() {
+            @Override
+            public void ok(String s) {
+                results.add(s);
+            }
+
+            @Override
+            public void error(@NonNull Throwable t) {
+                fail("unreachable");
+            }
+        };
+
+        cache.apply(1).select(collect);
+        cache.apply(1).select(collect);
+        assertEquals(1, pending.size());
+        pending.get(0).ok("foo");
+        assertEquals(2, results.size());
+    }
+
+    @Test
+    public void never_exceeds_the_capacity() {
+        Cached<Integer, Integer> cache = Cached.<Integer, Integer>by(Try::just)
+                .capacity(100)
+                .build();
+        for (int i = 0; i < 10_000; i++) {
+            cache.apply(i).unwrap();
+        }
+        Cached.Stats stats = cache.stats();
+        assertTrue(stats.weight <= 100);
+        assertEquals(stats.size, stats.weight);
+        assertEquals(10_000 - stats.size, stats.evictions);
+    }
+
+    @Test
+    public void respects_the_weigher() {
+        Cached<Integer, Integer> cache = Cached.<Integer, Integer>by(Try::just)
+                .capacity(100)
+                .weigh(i -> 10)
+                .build();
+        for (int i = 0; i < 50; i++) {
+            cache.apply(i).unwrap();
+        }
+        assertTrue(cache.stats().size <= 10);
+    }
+
+    @Test
+    public void frequently_used_keys_survive_a_scan() {
+        AtomicInteger loads = new AtomicInteger(0);
+        Cached<Integer, Integer> cache = Cached.<Integer, Integer>by(i -> {
+            loads.incrementAndGet();
+            return Try.just(i);
+        }).capacity(100).build();
+        for (int round = 0; round < 20; round++) {
+            for (int hot = 0; hot < 10; hot++) {
+                cache.apply(hot).unwrap();
+            }
+        }
+        for (int cold = 1000; cold < 5000; cold++) {
+            cache.apply(cold).unwrap();
+            if (cold % 100 == 0) {
+                for (int hot = 0; hot < 10; hot++) {
+                    cache.apply(hot).unwrap();
+                }
+            }
+        }
+        assertEquals(10 + 4000, loads.get());
+    }
+
+    @Test
+    public void errors_are_not_cached_by_default() {
+        AtomicInteger loads = new AtomicInteger(0);
+        Cached<Integer, Integer> cache = Cached.<Integer, Integer>by(i -> {
+            loads.incrementAndGet();
+            return Try.raise(new ArithmeticException());
+        }).build();
+        for (int i = 0; i < 3; i++) {
+            try {
+                cache.apply(1).unwrap();
+                fail("unreachable");
+            }
+            catch (ArithmeticException ignored) {
+            }
+        }
+        assertEquals(3, loads.get());
+        assertEquals(3, cache.stats().loadFailures);
+    }
+}
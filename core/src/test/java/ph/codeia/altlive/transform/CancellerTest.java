@@ -0,0 +1,118 @@
+package ph.codeia.altlive.transform;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+import ph.codeia.altlive.Try;
+
+import static org.junit.Assert.*;
+
+public class CancellerTest {
+    private static <T> Try.Case<T> ignore() {
+        return new Try.Case<T>() {
+            @Override
+            public void ok(T t) {
+            }
+
+            @Override
+            public void error(@NonNull Throwable t) {
+            }
+        };
+    }
+
+    @Test(timeout = 1000)
+    public void queued_runnable_is_not_run_after_cancellation() throws InterruptedException {
+        ExecutorService e = Executors.newSingleThreadExecutor();
+        try {
+            CountDownLatch blocker = new CountDownLatch(1);
+            e.execute(() -> {
+                try {
+                    blocker.await();
+                }
+                catch (InterruptedException ignored) {
+                }
+            });
+            AtomicBoolean ran = new AtomicBoolean(false);
+            Canceller<Void> c = Execute.on(e, () -> {
+                ran.set(true);
+                return (Void) null;
+            }).pipe(Canceller::new);
+            c.select(ignore());
+            c.cancel();
+            blocker.countDown();
+            e.shutdown();
+            assertTrue(e.awaitTermination(500, TimeUnit.MILLISECONDS));
+            assertFalse(ran.get());
+        }
+        finally {
+            e.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 1000)
+    public void running_task_is_interrupted_after_cancellation() throws InterruptedException {
+        ExecutorService e = Executors.newSingleThreadExecutor();
+        try {
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch interrupted = new CountDownLatch(1);
+            Canceller<Void> c = Execute.on(e, () -> {
+                started.countDown();
+                try {
+                    Thread.sleep(5000);
+                }
+                catch (InterruptedException ignored) {
+                    interrupted.countDown();
+                }
+                return (Void) null;
+            }).pipe(Canceller::new);
+            c.select(ignore());
+            started.await();
+            c.cancel();
+            interrupted.await();
+        }
+        finally {
+            e.shutdownNow();
+        }
+    }
+
+    @Test
+    public void retry_stops_after_cancellation() throws InterruptedException {
+        AtomicInteger attempts = new AtomicInteger(0);
+        Canceller<Object> c = Try.raise(new ArithmeticException())
+                .pipe(Recover.from(t -> {
+                    attempts.incrementAndGet();
+                    throw t;
+                }))
+                .pipe(Retry.forever().backoff(i -> 10L))
+                .pipe(Canceller::new);
+        c.select(ignore());
+        Thread.sleep(35);
+        c.cancel();
+        int count = attempts.get();
+        Thread.sleep(35);
+        assertEquals(count, attempts.get());
+    }
+
+    @Test
+    public void delayed_selection_does_not_happen_after_cancellation() throws InterruptedException {
+        AtomicBoolean ran = new AtomicBoolean(false);
+        Canceller<Void> c = Try.of(() -> ran.set(true))
+                .pipe(Delay.executionBy(20))
+                .pipe(Canceller::new);
+        c.select(ignore());
+        c.cancel();
+        Thread.sleep(40);
+        assertFalse(ran.get());
+    }
+}
@@ -0,0 +1,148 @@
+package ph.codeia.altlive.transform;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ph.codeia.altlive.Try;
+
+import static org.junit.Assert.*;
+
+public class CircuitTest {
+    private final VirtualTime time = new VirtualTime();
+
+    @Test
+    public void opens_when_the_failure_rate_is_reached() {
+        Circuit circuit = Circuit.countWindow(10)
+                .minimumCalls(4)
+                .failureRate(50)
+                .scheduler(time)
+                .build("test");
+        AtomicInteger calls = new AtomicInteger(0);
+        Try<String> ok = Try.just("ok").pipe(circuit::apply);
+        Try<String> fail = Try.<String>raise(new ArithmeticException())
+                .pipe(Recover.from(t -> {
+                    calls.incrementAndGet();
+                    throw t;
+                }))
+                .pipe(circuit::apply);
+        Results<String> results = new Results<>();
+        ok.select(results);
+        ok.select(results);
+        fail.select(results);
+        assertEquals(Circuit.State.CLOSED, circuit.state());
+        fail.select(results);
+        assertEquals(Circuit.State.OPEN, circuit.state());
+        assertEquals(50f, circuit.failureRate(), 0.01);
+
+        fail.select(results);
+        ok.select(results);
+        assertEquals(2, calls.get());
+        assertEquals(2, circuit.rejected());
+        assertTrue(results.errors.get(2) instanceof Circuit.Open);
+    }
+
+    @Test
+    public void opens_when_calls_are_slow() {
+        Circuit circuit = Circuit.timeWindow(10, TimeUnit.SECONDS)
+                .minimumCalls(2)
+                .slowCallRate(100, 10, TimeUnit.MILLISECONDS)
+                .scheduler(time)
+                .build("slow");
+        Try<String> slow = Try.of(() -> {
+            time.advance(15, TimeUnit.MILLISECONDS);
+            return "slow";
+        }).pipe(circuit::apply);
+        slow.unwrap();
+        slow.unwrap();
+        assertEquals(Circuit.State.OPEN, circuit.state());
+        assertEquals(100f, circuit.slowCallRate(), 0.01);
+    }
+
+    @Test
+    public void lets_a_limited_number_of_probes_through_when_half_open() {
+        Circuit circuit = Circuit.countWindow(2)
+                .waitInOpen(10, TimeUnit.MILLISECONDS)
+                .halfOpenProbes(2)
+                .scheduler(time)
+                .build("probe");
+        List<String> transitions = new ArrayList<>();
+        circuit.listen((c, from, to) -> transitions.add(from + "->" + to));
+        Results<String> results = new Results<>();
+        Try.<String>raise(new ArithmeticException()).pipe(circuit::apply).select(results);
+        Try.<String>raise(new ArithmeticException()).pipe(circuit::apply).select(results);
+        assertEquals(Circuit.State.OPEN, circuit.state());
+        time.advance(20, TimeUnit.MILLISECONDS);
+
+        List<Try.Case<? super String>> probes = new ArrayList<>();
+        Try<String> pending = circuit.apply(probes::add);
+        pending.select(results);
+        pending.select(results);
+        pending.select(results);
+        assertEquals(2, probes.size());
+        assertTrue(results.errors.get(2) instanceof Circuit.Open);
+
+        probes.get(0).ok("a");
+        assertEquals(Circuit.State.HALF_OPEN, circuit.state());
+        probes.get(1).ok("b");
+        assertEquals(Circuit.State.CLOSED, circuit.state());
+        assertEquals(-1f, circuit.failureRate(), 0.01);
+        assertEquals(3, transitions.size());
+        assertEquals("CLOSED->OPEN", transitions.get(0));
+        assertEquals("OPEN->HALF_OPEN", transitions.get(1));
+        assertEquals("HALF_OPEN->CLOSED", transitions.get(2));
+    }
+
+    @Test
+    public void probes_that_never_finish_time_out_as_failures() {
+        Circuit circuit = Circuit.countWindow(1)
+                .waitInOpen(10, TimeUnit.MILLISECONDS)
+                .halfOpenProbes(1)
+                .probeTimeout(50, TimeUnit.MILLISECONDS)
+                .scheduler(time)
+                .build("stuck");
+        Results<String> results = new Results<>();
+        Try.<String>raise(new ArithmeticException()).pipe(circuit::apply).select(results);
+        time.advance(10, TimeUnit.MILLISECONDS);
+
+        List<Try.Case<? super String>> probes = new ArrayList<>();
+        Try<String> stuck = circuit.apply(probes::add);
+        stuck.select(results);
+        stuck.select(results);
+        assertEquals(1, probes.size());
+        assertEquals(Circuit.State.HALF_OPEN, circuit.state());
+
+        time.advance(50, TimeUnit.MILLISECONDS);
+        assertEquals(Circuit.State.OPEN, circuit.state());
+        time.advance(10, TimeUnit.MILLISECONDS);
+        stuck.select(results);
+        assertEquals(2, probes.size());
+
+        // the late result is passed on without being counted
+        probes.get(0).ok("late");
+        assertEquals(Arrays.asList("late"), results.values);
+        assertEquals(Circuit.State.HALF_OPEN, circuit.state());
+    }
+
+    @Test
+    public void registry_shares_circuits_by_endpoint() {
+        Circuit.Registry registry = Circuit.countWindow(1).registry();
+        List<String> opened = new ArrayList<>();
+        registry.listen((c, from, to) -> opened.add(c.name()));
+        assertSame(registry.get("login"), registry.get("login"));
+        assertNotSame(registry.get("login"), registry.get("logout"));
+
+        Try.raise(new ArithmeticException()).pipe(registry.get("login")::apply).select(new Results<>());
+        assertEquals(Circuit.State.OPEN, registry.states().get("login"));
+        assertEquals(Circuit.State.CLOSED, registry.states().get("logout"));
+        assertEquals("login", opened.get(0));
+    }
+}
@@ -0,0 +1,97 @@
+package ph.codeia.altlive.transform;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import ph.codeia.altlive.Try;
+import ph.codeia.altlive.TryScope;
+
+import static org.junit.Assert.*;
+
+public class ConcurrencyLimitTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void sheds_load_above_the_limit() {
+        ConcurrencyLimit limit = ConcurrencyLimit
+                .with(ConcurrencyLimit.aimd(1, TimeUnit.SECONDS, 0.5))
+                .initial(2)
+                .build();
+        List<Try.Case<? super String>> pending = new ArrayList<>();
+        Try<String> slow = limit.apply(pending::add);
+        Results<String> results = new Results<>();
+        slow.select(results);
+        slow.select(results);
+        slow.select(results);
+        assertEquals(2, pending.size());
+        assertEquals(2, limit.inflight());
+        assertEquals(1, limit.rejected());
+        assertTrue(results.errors.get(0) instanceof ConcurrencyLimit.Limited);
+
+        pending.get(0).ok("a");
+        assertEquals(3, limit.limit());
+        pending.get(1).error(new TimeoutException());
+        assertEquals(1, limit.limit());
+        assertEquals(0, limit.inflight());
+    }
+
+    @Test
+    public void cancelled_selects_release_without_sampling() {
+        ConcurrencyLimit limit = ConcurrencyLimit
+                .with(ConcurrencyLimit.aimd(1, TimeUnit.SECONDS, 0.5))
+                .initial(1)
+                .build();
+        Try<String> never = limit.apply(continuation -> {});
+        TryScope scope = new TryScope();
+        never.pipe(scope::track).select(new Results<>());
+        assertEquals(1, limit.inflight());
+        scope.close();
+        assertEquals(0, limit.inflight());
+        assertEquals(1, limit.limit());
+    }
+
+    @Test
+    public void aimd_only_grows_when_saturated() {
+        ConcurrencyLimit.Algorithm aimd = ConcurrencyLimit.aimd(100, TimeUnit.MILLISECONDS, 0.9);
+        assertEquals(11, aimd.update(10, 5, MS, false));
+        assertEquals(10, aimd.update(10, 4, MS, false));
+        assertEquals(9, aimd.update(10, 10, 200 * MS, false));
+        assertEquals(9, aimd.update(10, 10, MS, true));
+    }
+
+    @Test
+    public void gradient_shrinks_when_latency_inflates() {
+        ConcurrencyLimit.Algorithm gradient = ConcurrencyLimit.gradient();
+        int limit = 20;
+        for (int i = 0; i < 50; i++) {
+            limit = gradient.update(limit, limit, 10 * MS, false);
+        }
+        int steady = limit;
+        assertTrue(steady > 20);
+        for (int i = 0; i < 20; i++) {
+            limit = gradient.update(limit, limit, 100 * MS, false);
+        }
+        assertTrue(limit < steady / 2);
+    }
+
+    @Test
+    public void gradient_does_not_wind_up_past_the_maximum() {
+        ConcurrencyLimit.Algorithm gradient = ConcurrencyLimit.gradient();
+        int max = 30;
+        int limit = 20;
+        for (int i = 0; i < 1000; i++) {
+            limit = Math.min(max, gradient.update(limit, limit, 10 * MS, false));
+        }
+        assertEquals(max, limit);
+        limit = Math.min(max, gradient.update(limit, limit, 100 * MS, false));
+        assertTrue(limit < max);
+    }
+}
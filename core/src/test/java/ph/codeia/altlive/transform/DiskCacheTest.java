@@ -0,0 +1,117 @@
+package ph.codeia.altlive.transform;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ph.codeia.altlive.Try;
+
+import static org.junit.Assert.*;
+
+public class DiskCacheTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private DiskCache<String, String> open(File file) throws IOException {
+        return DiskCache.in(file, DiskCache.Codec.UTF8, DiskCache.Codec.UTF8)
+                .compactOn(Runnable::run)
+                .compactAbove(Integer.MAX_VALUE)
+                .open();
+    }
+
+    @Test
+    public void survives_reopening() throws IOException {
+        File file = tmp.newFile();
+        DiskCache<String, String> disk = open(file);
+        disk.put("a", "foo");
+        disk.put("b", "bar");
+        disk.put("a", "baz");
+        disk.remove("b");
+        disk.close();
+
+        disk = open(file);
+        assertEquals("baz", disk.get("a"));
+        assertNull(disk.get("b"));
+        assertEquals(1, disk.size());
+        disk.close();
+    }
+
+    @Test
+    public void compaction_keeps_only_the_latest_records() throws IOException {
+        File file = tmp.newFile();
+        DiskCache<String, String> disk = open(file);
+        for (int i = 0; i < 100; i++) {
+            disk.put("key" + (i % 10), "value" + i);
+        }
+        long before = disk.logBytes();
+        disk.compact();
+        assertEquals(1, disk.compactions());
+        assertTrue(disk.logBytes() < before);
+        assertEquals(disk.liveBytes(), disk.logBytes());
+        for (int i = 0; i < 10; i++) {
+            assertEquals("value" + (90 + i), disk.get("key" + i));
+        }
+        disk.put("key0", "after");
+        disk.close();
+
+        disk = open(file);
+        assertEquals("after", disk.get("key0"));
+        assertEquals("value99", disk.get("key9"));
+        disk.close();
+    }
+
+    @Test
+    public void drops_a_torn_tail() throws IOException {
+        File file = tmp.newFile();
+        DiskCache<String, String> disk = open(file);
+        disk.put("a", "foo");
+        long intact = disk.logBytes();
+        disk.put("b", "bar");
+        long end = disk.logBytes();
+        disk.close();
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(end - 6);
+            raf.write('X');
+        }
+        disk = open(file);
+        assertEquals("foo", disk.get("a"));
+        assertNull(disk.get("b"));
+        assertEquals(intact, disk.logBytes());
+        disk.put("c", "baz");
+        disk.close();
+
+        disk = open(file);
+        assertEquals("baz", disk.get("c"));
+        assertNull(disk.get("b"));
+        disk.close();
+    }
+
+    @Test
+    public void reads_through_before_loading() throws IOException {
+        File file = tmp.newFile();
+        AtomicInteger loads = new AtomicInteger(0);
+        DiskCache<String, String> disk = open(file);
+        Try<String> source = Try.of(() -> "loaded" + loads.incrementAndGet());
+
+        assertEquals("loaded1", source.pipe(disk.persist("k")).unwrap());
+        assertEquals("loaded1", source.pipe(disk.persist("k")).unwrap());
+        disk.close();
+
+        disk = open(file);
+        assertEquals("loaded1", source.pipe(disk.persist("k")).pipe(Memoize::new).unwrap());
+        assertEquals(1, loads.get());
+        assertEquals("x!", disk.through(k -> Try.just(k + "!")).apply("x").unwrap());
+        assertEquals("x!", disk.get("x"));
+        disk.close();
+    }
+}
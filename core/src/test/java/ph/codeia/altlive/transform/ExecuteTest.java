@@ -0,0 +1,42 @@
+package ph.codeia.altlive.transform;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+public class ExecuteTest {
+    /**
+     * Set by the testMultiRelease task, which runs the tests in JDK 21
+     * against the multi-release jar.
+     */
+    private static final boolean IS_MULTI_RELEASE = Boolean.getBoolean("altlive.multiRelease");
+
+    private static boolean isVirtual(Thread thread) throws ReflectiveOperationException {
+        return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+    }
+
+    @Test(timeout = 1000)
+    public void runs_on_virtual_threads_in_java_21() throws ReflectiveOperationException {
+        assumeTrue(IS_MULTI_RELEASE);
+        assertTrue(Execute.isVirtual());
+        Thread thread = Execute.onVirtual(Thread::currentThread).unwrap();
+        assertTrue(isVirtual(thread));
+    }
+
+    @Test(timeout = 1000)
+    public void falls_back_to_a_cached_pool_in_java_8() {
+        assumeFalse(IS_MULTI_RELEASE);
+        assertFalse(Execute.isVirtual());
+        Thread first = Execute.onVirtual(Thread::currentThread).unwrap();
+        assertEquals("altlive-worker", first.getName());
+        assertTrue(first.isDaemon());
+        assertNotSame(Thread.currentThread(), first);
+        Thread second = Execute.onVirtual(Thread::currentThread).unwrap();
+        assertEquals("altlive-worker", second.getName());
+    }
+}
@@ -0,0 +1,143 @@
+package ph.codeia.altlive.transform;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ph.codeia.altlive.Try;
+
+import static org.junit.Assert.*;
+
+public class HashedWheelTimerTest {
+    private final HashedWheelTimer timer = new HashedWheelTimer(1, TimeUnit.MILLISECONDS, 8);
+
+    @After
+    public void tearDown() {
+        timer.stop();
+    }
+
+    @Test
+    public void runs_blocks_in_deadline_order() throws InterruptedException {
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(3);
+        long start = System.nanoTime();
+        // more than a full turn of the wheel
+        timer.schedule(() -> {
+            order.add(30);
+            done.countDown();
+        }, 30);
+        timer.schedule(() -> {
+            order.add(5);
+            done.countDown();
+        }, 5);
+        timer.schedule(() -> {
+            order.add(15);
+            done.countDown();
+        }, 15);
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertEquals(30, order.get(2).intValue());
+        assertEquals(5, order.get(0).intValue());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(30));
+        assertEquals(0, timer.pending());
+    }
+
+    @Test
+    public void cancelled_blocks_do_not_run() throws InterruptedException {
+        AtomicInteger runs = new AtomicInteger(0);
+        CountDownLatch done = new CountDownLatch(1);
+        Scheduler.Handle handle = timer.schedule(runs::incrementAndGet, 10);
+        timer.schedule(done::countDown, 20);
+        assertEquals(2, timer.pending());
+        assertTrue(handle.cancel());
+        assertFalse(handle.cancel());
+        assertEquals(1, timer.pending());
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    public void wakes_up_after_idling() throws InterruptedException {
+        CountDownLatch first = new CountDownLatch(1);
+        timer.schedule(first::countDown, 1);
+        assertTrue(first.await(1, TimeUnit.SECONDS));
+        Thread.sleep(20);
+        CountDownLatch second = new CountDownLatch(1);
+        timer.schedule(second::countDown, 1);
+        assertTrue(second.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void sleeps_through_empty_ticks() throws InterruptedException {
+        HashedWheelTimer wide = new HashedWheelTimer(1, TimeUnit.MILLISECONDS, 1024);
+        try {
+            CountDownLatch done = new CountDownLatch(1);
+            wide.schedule(done::countDown, 100);
+            assertTrue(done.await(1, TimeUnit.SECONDS));
+            assertTrue("woke up " + wide.ticks() + " times", wide.ticks() < 10);
+        }
+        finally {
+            wide.stop();
+        }
+    }
+
+    @Test
+    public void sooner_blocks_wake_up_the_sleeping_worker() throws InterruptedException {
+        HashedWheelTimer wide = new HashedWheelTimer(1, TimeUnit.MILLISECONDS, 1024);
+        try {
+            wide.schedule(() -> {}, 900);
+            Thread.sleep(20);
+            CountDownLatch done = new CountDownLatch(1);
+            wide.schedule(done::countDown, 5);
+            assertTrue(done.await(500, TimeUnit.MILLISECONDS));
+        }
+        finally {
+            wide.stop();
+        }
+    }
+
+    @Test
+    public void failed_blocks_are_reported_to_the_uncaught_exception_handler()
+    throws InterruptedException {
+        Thread.UncaughtExceptionHandler original = Thread.getDefaultUncaughtExceptionHandler();
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        Thread.setDefaultUncaughtExceptionHandler((t, e) -> errors.add(e));
+        try {
+            CountDownLatch done = new CountDownLatch(1);
+            timer.schedule(() -> {
+                throw new StackOverflowError();
+            }, 1);
+            timer.schedule(done::countDown, 5);
+            assertTrue(done.await(1, TimeUnit.SECONDS));
+            assertEquals(1, errors.size());
+            assertTrue(errors.get(0) instanceof StackOverflowError);
+        }
+        finally {
+            Thread.setDefaultUncaughtExceptionHandler(original);
+        }
+    }
+
+    @Test
+    public void time_limit_cancels_its_timer_on_success() {
+        Scheduler original = Delay.scheduler();
+        Delay.setScheduler(timer);
+        try {
+            for (int i = 0; i < 100; i++) {
+                Try.just(i).pipe(TimeLimit.of(30_000)).unwrap();
+            }
+            assertEquals(0, timer.pending());
+        }
+        finally {
+            Delay.setScheduler(original);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package ph.codeia.altlive.transform;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ph.codeia.altlive.Try;
+
+import static org.junit.Assert.*;
+
+public class HedgeTest {
+    private static final ExecutorService E = Executors.newCachedThreadPool();
+
+    @AfterClass
+    public static void tearDown() {
+        E.shutdown();
+    }
+
+    @Test(timeout = 1000)
+    public void takes_the_hedged_result_when_the_first_is_slow() {
+        AtomicInteger calls = new AtomicInteger(0);
+        Try<String> slowThenFast = Execute.on(E, () -> {
+            if (calls.getAndIncrement() == 0) {
+                Thread.sleep(500);
+                return "slow";
+            }
+            return "fast";
+        });
+        long start = System.currentTimeMillis();
+        assertEquals("fast", slowThenFast.pipe(Hedge.after(20)).unwrap());
+        assertTrue(System.currentTimeMillis() - start < 400);
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void does_not_hedge_when_the_source_is_fast_enough() throws InterruptedException {
+        AtomicInteger calls = new AtomicInteger(0);
+        Try<String> t = Try.of(() -> {
+            calls.incrementAndGet();
+            return "foo";
+        });
+        assertEquals("foo", t.pipe(Hedge.after(20)).unwrap());
+        Thread.sleep(40);
+        assertEquals(1, calls.get());
+    }
+
+    @Test(timeout = 1000)
+    public void does_not_exceed_the_hedge_limit() {
+        AtomicInteger calls = new AtomicInteger(0);
+        Try<String> hedged = Execute.on(E, () -> {
+            calls.incrementAndGet();
+            Thread.sleep(100);
+            return "foo";
+        }).pipe(Hedge.<String>after(10).limit(1));
+        Try.traverse(Arrays.asList(1, 2, 3, 4), i -> hedged, 0).unwrap();
+        assertEquals(5, calls.get());
+    }
+}
@@ -0,0 +1,99 @@
+package ph.codeia.altlive.transform;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+import ph.codeia.altlive.Try;
+
+import static org.junit.Assert.*;
+
+public class MemoizeTest {
+    private static <T> Try.Case<T> collect(List<Object> results) {
+        return new Try.Case<T>() {
+            @Override
+            public void ok(T t) {
+                results.add(t);
+            }
+
+            @Override
+            public void error(@NonNull Throwable t) {
+                results.add(t);
+            }
+        };
+    }
+
+    @Test
+    public void concurrent_selects_share_one_computation() {
+        List<Try.Case<? super String>> pending = new ArrayList<>();
+        Memoize<String> m = new Memoize<>(pending::add);
+        List<Object> results = new ArrayList<>();
+
+        m.select(collect(results));
+        m.select(collect(results));
+        m.select(collect(results));
+        assertEquals(1, pending.size());
+        assertEquals(3, m.pending());
+
+        pending.get(0).ok("foo");
+        assertEquals(3, results.size());
+        for (Object result : results) {
+            assertEquals("foo", result);
+        }
+        m.select(collect(results));
+        assertEquals(1, pending.size());
+        assertEquals(4, results.size());
+    }
+
+    @Test
+    public void errors_are_only_delivered_once_per_select() {
+        List<Object> results = new ArrayList<>();
+        new Memoize<>(Try.raise(new ArithmeticException())).select(collect(results));
+        assertEquals(1, results.size());
+    }
+
+    @Test
+    public void errors_are_not_cached_when_the_error_ttl_is_zero() {
+        AtomicInteger counter = new AtomicInteger(0);
+        Memoize<Object> m = Try.of(() -> {
+            counter.incrementAndGet();
+            throw new ArithmeticException();
+        }).pipe(Memoize.expireAfter(1000));
+        List<Object> results = new ArrayList<>();
+        m.select(collect(results));
+        m.select(collect(results));
+        assertEquals(2, counter.get());
+    }
+
+    @Test
+    public void values_expire_after_the_ttl() throws InterruptedException {
+        AtomicInteger counter = new AtomicInteger(0);
+        Memoize<Integer> m = Try.of(counter::incrementAndGet).pipe(Memoize.expireAfter(20));
+        assertEquals(1, (int) m.unwrap());
+        assertEquals(1, (int) m.unwrap());
+        Thread.sleep(30);
+        assertFalse(m.hasValue());
+        assertEquals(2, (int) m.unwrap());
+    }
+
+    @Test
+    public void ttl_is_measured_on_the_given_scheduler() {
+        VirtualTime time = new VirtualTime();
+        AtomicInteger counter = new AtomicInteger(0);
+        Memoize<Integer> m = Try.of(counter::incrementAndGet)
+                .pipe(Memoize.<Integer>expireAfter(20).scheduler(time));
+        assertEquals(1, (int) m.unwrap());
+        time.advance(19, TimeUnit.MILLISECONDS);
+        assertEquals(1, (int) m.unwrap());
+        time.advance(1, TimeUnit.MILLISECONDS);
+        assertEquals(2, (int) m.unwrap());
+    }
+}
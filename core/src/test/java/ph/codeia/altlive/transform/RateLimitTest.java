@@ -0,0 +1,151 @@
+package ph.codeia.altlive.transform;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ph.codeia.altlive.Try;
+import ph.codeia.altlive.TryScope;
+
+import static org.junit.Assert.*;
+
+public class RateLimitTest {
+    @Test
+    public void fails_fast_after_the_burst() {
+        RateLimit limit = RateLimit.perSecond(1).burst(3).build();
+        AtomicInteger calls = new AtomicInteger(0);
+        Try<Integer> t = Try.of(calls::incrementAndGet).pipe(limit::apply);
+        assertEquals(3, limit.availablePermits());
+        t.unwrap();
+        t.unwrap();
+        t.unwrap();
+        try {
+            t.unwrap();
+            fail("should have been rejected");
+        }
+        catch (RateLimit.Exceeded e) {
+            assertEquals(0, e.getStackTrace().length);
+        }
+        assertEquals(3, calls.get());
+        assertEquals(3, limit.permitted());
+        assertEquals(1, limit.rejected());
+    }
+
+    @Test
+    public void is_shared_by_every_guarded_computation() {
+        RateLimit limit = RateLimit.perSecond(1).burst(2).build();
+        Try<String> a = Try.just("a").pipe(limit::apply);
+        Try<String> b = Try.just("b").pipe(limit::apply);
+        assertEquals("a", a.unwrap());
+        assertEquals("b", b.unwrap());
+        assertFalse(limit.tryAcquire());
+    }
+
+    @Test
+    public void delays_until_a_permit_is_due() throws InterruptedException {
+        RateLimit limit = RateLimit.perSecond(20).delay().build();
+        CountDownLatch done = new CountDownLatch(3);
+        long start = System.nanoTime();
+        Try<Long> t = Try.of(System::nanoTime).pipe(limit::apply);
+        for (int i = 0; i < 3; i++) {
+            t.select(new Try.Case<Long>() {
+                @Override
+                public void ok(Long now) {
+                    done.countDown();
+                }
+
+                @Override
+                public void error(Throwable t) {
+                    fail();
+                }
+            });
+        }
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(95));
+        assertEquals(2, limit.delayed());
+    }
+
+    @Test
+    public void queue_rejects_beyond_its_depth() throws InterruptedException {
+        RateLimit limit = RateLimit.perSecond(20).queue(1).build();
+        CountDownLatch done = new CountDownLatch(2);
+        AtomicInteger rejected = new AtomicInteger(0);
+        Try<String> t = Try.just("ok").pipe(limit::apply);
+        for (int i = 0; i < 4; i++) {
+            t.select(new Try.Case<String>() {
+                @Override
+                public void ok(String s) {
+                    done.countDown();
+                }
+
+                @Override
+                public void error(Throwable t) {
+                    assertTrue(t instanceof RateLimit.Exceeded);
+                    rejected.incrementAndGet();
+                }
+            });
+        }
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertEquals(2, rejected.get());
+        assertEquals(1, limit.delayed());
+    }
+
+    @Test
+    public void waits_on_the_given_scheduler() {
+        VirtualTime time = new VirtualTime();
+        RateLimit limit = RateLimit.perSecond(10).delay().scheduler(time).build();
+        List<Long> done = new ArrayList<>();
+        Try<Long> t = Try.of(time::millis).pipe(limit::apply);
+        for (int i = 0; i < 3; i++) {
+            t.select(new Try.Case<Long>() {
+                @Override
+                public void ok(Long now) {
+                    done.add(now);
+                }
+
+                @Override
+                public void error(Throwable t) {
+                    fail();
+                }
+            });
+        }
+        assertEquals(1, done.size());
+        assertEquals(2, time.pending());
+        time.advance(200, TimeUnit.MILLISECONDS);
+        assertEquals(Arrays.asList(0L, 100L, 200L), done);
+    }
+
+    @Test
+    public void cancelled_waiters_give_up_their_place_in_the_queue() {
+        VirtualTime time = new VirtualTime();
+        RateLimit limit = RateLimit.perSecond(10).queue(1).scheduler(time).build();
+        Try<String> t = Try.just("ok").pipe(limit::apply);
+        TryScope scope = new TryScope();
+        Results<String> results = new Results<>();
+        t.select(results);
+        t.pipe(scope::track).select(results);
+        t.select(results);
+        assertEquals(1, limit.waiting());
+        assertEquals(1, limit.rejected());
+
+        scope.close();
+        assertEquals(0, limit.waiting());
+        t.select(results);
+        assertEquals(1, limit.waiting());
+        // the cancelled waiter still used up its permit
+        time.advance(100, TimeUnit.MILLISECONDS);
+        assertEquals(1, results.values.size());
+        time.advance(100, TimeUnit.MILLISECONDS);
+        assertEquals(2, results.values.size());
+        assertEquals(0, limit.waiting());
+    }
+}
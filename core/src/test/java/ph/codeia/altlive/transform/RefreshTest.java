@@ -0,0 +1,105 @@
+package ph.codeia.altlive.transform;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ph.codeia.altlive.Try;
+
+import static org.junit.Assert.*;
+
+public class RefreshTest {
+    @Test
+    public void serves_the_stale_value_while_refreshing() throws InterruptedException {
+        AtomicInteger counter = new AtomicInteger(0);
+        List<Runnable> background = new ArrayList<>();
+        Refresh<Integer> r = Try.of(counter::incrementAndGet)
+                .pipe(Refresh.<Integer>after(20, 1000).on(background::add));
+
+        assertEquals(1, (int) r.unwrap());
+        Thread.sleep(30);
+        assertEquals(1, (int) r.unwrap());
+        assertEquals(1, (int) r.unwrap());
+        assertEquals(1, background.size());
+        assertTrue(r.isRefreshing());
+
+        background.get(0).run();
+        assertFalse(r.isRefreshing());
+        assertEquals(2, (int) r.unwrap());
+    }
+
+    @Test
+    public void waits_for_the_source_after_the_hard_ttl() throws InterruptedException {
+        AtomicInteger counter = new AtomicInteger(0);
+        List<Runnable> background = new ArrayList<>();
+        Refresh<Integer> r = Try.of(counter::incrementAndGet)
+                .pipe(Refresh.<Integer>after(10, 20).on(background::add));
+
+        assertEquals(1, (int) r.unwrap());
+        Thread.sleep(30);
+        assertEquals(2, (int) r.unwrap());
+        assertTrue(background.isEmpty());
+    }
+
+    @Test
+    public void keeps_the_old_value_when_the_refresh_fails() throws InterruptedException {
+        AtomicInteger counter = new AtomicInteger(0);
+        Refresh<Integer> r = Try.of(() -> {
+            if (counter.incrementAndGet() > 1) {
+                throw new ArithmeticException();
+            }
+            return 1;
+        }).pipe(Refresh.<Integer>after(10, 1000).on(Runnable::run));
+
+        assertEquals(1, (int) r.unwrap());
+        Thread.sleep(20);
+        assertEquals(1, (int) r.unwrap());
+        assertEquals(2, counter.get());
+        assertEquals(1, (int) r.unwrap());
+    }
+
+    @Test(timeout = 1000)
+    public void blocking_refresh_does_not_hold_up_the_select() throws InterruptedException {
+        AtomicInteger counter = new AtomicInteger(0);
+        CountDownLatch unblock = new CountDownLatch(1);
+        CountDownLatch refreshed = new CountDownLatch(1);
+        Refresh<Integer> r = Try.of(() -> {
+            if (counter.incrementAndGet() > 1) {
+                unblock.await();
+                refreshed.countDown();
+            }
+            return counter.get();
+        }).pipe(Refresh.after(10, 1000));
+
+        assertEquals(1, (int) r.unwrap());
+        Thread.sleep(20);
+        assertEquals(1, (int) r.unwrap());
+        assertTrue(r.isRefreshing());
+        unblock.countDown();
+        assertTrue(refreshed.await(500, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void refresh_in_flight_during_clear_is_discarded() throws InterruptedException {
+        AtomicInteger counter = new AtomicInteger(0);
+        List<Runnable> background = new ArrayList<>();
+        Refresh<Integer> r = Try.of(counter::incrementAndGet)
+                .pipe(Refresh.<Integer>after(10, 1000).on(background::add));
+
+        assertEquals(1, (int) r.unwrap());
+        Thread.sleep(20);
+        assertEquals(1, (int) r.unwrap());
+        r.clear();
+        background.get(0).run();
+        // the refreshed 2 was dropped, so this waits for a new load
+        assertEquals(3, (int) r.unwrap());
+    }
+}
@@ -0,0 +1,26 @@
+package ph.codeia.altlive.transform;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import ph.codeia.altlive.Try;
+
+class Results<T> implements Try.Case<T> {
+    final List<T> values = new ArrayList<>();
+    final List<Throwable> errors = new ArrayList<>();
+
+    @Override
+    public synchronized void ok(T t) {
+        values.add(t);
+    }
+
+    @Override
+    public synchronized void error(@NonNull Throwable t) {
+        errors.add(t);
+    }
+}
@@ -0,0 +1,137 @@
+package ph.codeia.altlive.transform;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ph.codeia.altlive.Stream;
+import ph.codeia.altlive.Try;
+
+import static org.junit.Assert.*;
+
+public class RetryTest {
+    @Test
+    public void backoff_grows_exponentially_up_to_the_cap() {
+        Retry.Backoff exp = Retry.Backoff.exponential(100, 1000);
+        assertEquals(100, exp.next(0, 0));
+        assertEquals(400, exp.next(2, 200));
+        assertEquals(1000, exp.next(4, 800));
+        assertEquals(1000, exp.next(100, 1000));
+    }
+
+    @Test
+    public void jittered_backoff_stays_in_bounds() {
+        Retry.Backoff full = Retry.Backoff.fullJitter(100, 1000);
+        Retry.Backoff decorrelated = Retry.Backoff.decorrelatedJitter(100, 1000);
+        long previous = 0;
+        for (int i = 0; i < 1000; i++) {
+            long f = full.next(i % 8, 0);
+            assertTrue(f >= 0 && f <= Math.min(1000, 100L << (i % 8)));
+            long d = decorrelated.next(i, previous);
+            assertTrue(d >= 100 && d <= 1000);
+            assertTrue(d <= 3 * Math.max(100, previous));
+            previous = d;
+        }
+    }
+
+    @Test
+    public void shared_budget_stops_retries_when_drained() {
+        Retry.Budget budget = new Retry.Budget(50, 2);
+        AtomicInteger attempts = new AtomicInteger(0);
+        Try<Integer> failing = Try.of(() -> {
+            attempts.incrementAndGet();
+            throw new ArithmeticException();
+        });
+        Try<Integer> a = failing.pipe(Retry.<Integer>until(5).budget(budget));
+        Try<Integer> b = failing.pipe(Retry.<Integer>until(5).budget(budget));
+        try {
+            a.unwrap();
+            fail("unreachable");
+        }
+        catch (ArithmeticException expected) {
+        }
+        assertEquals(3, attempts.get());
+        assertEquals(0, budget.available());
+
+        attempts.set(0);
+        try {
+            b.unwrap();
+            fail("unreachable");
+        }
+        catch (ArithmeticException expected) {
+        }
+        assertEquals(1, attempts.get());
+        assertEquals(2, budget.exhausted());
+
+        // one more call tops the budget up to a whole retry
+        try {
+            b.unwrap();
+            fail("unreachable");
+        }
+        catch (ArithmeticException expected) {
+        }
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    public void budget_is_untouched_by_retries_that_would_miss_the_deadline() {
+        Retry.Budget budget = new Retry.Budget(50, 2);
+        AtomicInteger attempts = new AtomicInteger(0);
+        Try<Integer> failing = Try.of(() -> {
+            attempts.incrementAndGet();
+            throw new ArithmeticException();
+        });
+        try {
+            failing.pipe(Retry.<Integer>until(5).backoff(i -> 1000L).budget(budget))
+                    .pipe(TimeLimit.of(500))
+                    .unwrap();
+            fail("unreachable");
+        }
+        catch (ArithmeticException expected) {
+        }
+        assertEquals(1, attempts.get());
+        assertEquals(2, budget.available());
+        assertEquals(0, budget.exhausted());
+    }
+
+    @Test
+    public void stream_resubscribes_with_the_unfilled_demand() {
+        AtomicInteger subscriptions = new AtomicInteger(0);
+        // fails once after producing 1, then resumes from 2
+        Stream<Integer> flaky = sink -> {
+            int start = subscriptions.incrementAndGet() == 1 ? 1 : 2;
+            Stream.from(Arrays.asList(start, start + 1, start + 2)).map(n -> {
+                if (n == 2 && start == 1) {
+                    throw new IllegalStateException();
+                }
+                return n;
+            }).subscribe(sink);
+        };
+        assertEquals(
+                Arrays.asList(1, 2, 3, 4),
+                flaky.pipe(Retry.streamUntil(3)).take(4).toList().unwrap()
+        );
+        assertEquals(2, subscriptions.get());
+    }
+
+    @Test
+    public void stream_gives_up_after_max_retries() {
+        AtomicInteger subscriptions = new AtomicInteger(0);
+        Stream<Integer> broken = sink -> {
+            subscriptions.incrementAndGet();
+            Stream.<Integer>raise(new ArithmeticException()).subscribe(sink);
+        };
+        try {
+            broken.pipe(Retry.streamUntil(2)).toList().unwrap();
+            fail("unreachable");
+        }
+        catch (ArithmeticException expected) {
+        }
+        assertEquals(3, subscriptions.get());
+    }
+}
@@ -4,15 +4,26 @@ package ph.codeia.altlive.transform;
  * This file is a part of the AltLiveData project.
  */
 
+import org.junit.After;
 import org.junit.AfterClass;
+import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import androidx.annotation.NonNull;
+import ph.codeia.altlive.Stream;
+import ph.codeia.altlive.Token;
 import ph.codeia.altlive.Try;
 
 import static org.junit.Assert.*;
@@ -25,34 +36,43 @@ public class TimeLimitTest {
         E.execute(() -> S.set("worker"));
     }
 
+    private final VirtualTime time = new VirtualTime();
+    private Scheduler original;
+
+    @Before
+    public void setUp() {
+        original = Delay.scheduler();
+        Delay.setScheduler(time);
+    }
+
+    @After
+    public void tearDown() {
+        Delay.setScheduler(original);
+    }
+
     @AfterClass
-    public static void tearDown() {
+    public static void shutDown() {
         E.shutdown();
     }
 
-    @Test(expected = TimeoutException.class)
-    public void strawman() throws Throwable {
-        Execute.on(E, () -> {
-            Thread.sleep(32);
-            return null;
-        }).pipe(TimeLimit.of(16)).unwrapChecked();
+    @Test
+    public void strawman() {
+        Outcome<Object> outcome = new Outcome<>();
+        after(32, null).pipe(TimeLimit.of(16)).select(outcome);
+        time.advance(16, TimeUnit.MILLISECONDS);
+        assertTrue(outcome.error instanceof TimeoutException);
     }
 
     @Test
-    public void timeout_drift_is_acceptable() throws Throwable {
-        long start = System.currentTimeMillis();
+    public void times_out_exactly_at_the_deadline() {
         long target = 50;
-        try {
-            Execute.on(E, () -> {
-                Thread.sleep(target * 2);
-                return null;
-            }).pipe(TimeLimit.of(target)).unwrapChecked();
-            fail("unreachable");
-        }
-        catch (TimeoutException e) {
-            long drift = Math.abs(System.currentTimeMillis() - start - target);
-            assertTrue("less than 35ms drift", drift < 35);
-        }
+        Outcome<Object> outcome = new Outcome<>();
+        after(target * 2, null).pipe(TimeLimit.of(target)).select(outcome);
+        time.advance(target - 1, TimeUnit.MILLISECONDS);
+        assertFalse(outcome.isDone);
+        time.advance(1, TimeUnit.MILLISECONDS);
+        assertTrue(outcome.error instanceof TimeoutException);
+        assertEquals(target, outcome.millis);
     }
 
     @Test
@@ -84,4 +104,116 @@ public class TimeLimitTest {
         assertEquals("foo", e.get());
         S.remove();
     }
+
+    @Test
+    public void retry_stops_when_the_next_attempt_would_miss_the_deadline() {
+        AtomicInteger attempts = new AtomicInteger(0);
+        Outcome<Object> outcome = new Outcome<>();
+        Try.of(() -> {
+            attempts.incrementAndGet();
+            throw new ArithmeticException();
+        })
+                .pipe(Retry.forever().backoff(i -> 30L))
+                .pipe(TimeLimit.of(100))
+                .select(outcome);
+        time.advance(100, TimeUnit.MILLISECONDS);
+        assertTrue(outcome.error instanceof ArithmeticException);
+        // attempts at 0, 30, 60 and 90; the next one at 120 is past 100
+        assertEquals(90, outcome.millis);
+        assertEquals(4, attempts.get());
+    }
+
+    @Test
+    public void delay_fails_early_when_it_would_miss_the_deadline() {
+        Outcome<String> outcome = new Outcome<>();
+        Try.just("foo")
+                .pipe(Delay.executionBy(500))
+                .pipe(TimeLimit.of(50))
+                .select(outcome);
+        assertTrue(outcome.error instanceof TimeoutException);
+        assertEquals(0, outcome.millis);
+        assertEquals(0, time.pending());
+    }
+
+    @Test
+    public void execute_drops_tasks_dequeued_after_the_deadline() {
+        AtomicBoolean ran = new AtomicBoolean(false);
+        Deque<Runnable> worker = new ArrayDeque<>();
+        Outcome<Boolean> outcome = new Outcome<>();
+        Execute.on(worker::add, () -> ran.getAndSet(true))
+                .pipe(TimeLimit.of(20))
+                .select(outcome);
+        time.advance(60, TimeUnit.MILLISECONDS);
+        assertTrue(outcome.error instanceof TimeoutException);
+        assertEquals(20, outcome.millis);
+        while (!worker.isEmpty()) {
+            worker.poll().run();
+        }
+        assertFalse(ran.get());
+    }
+
+    @Test
+    public void nested_limits_share_the_earliest_deadline() {
+        Outcome<Object> outcome = new Outcome<>();
+        after(500, null)
+                .pipe(TimeLimit.of(1000))
+                .pipe(TimeLimit.of(50))
+                .select(outcome);
+        time.advance(1000, TimeUnit.MILLISECONDS);
+        assertTrue(outcome.error instanceof TimeoutException);
+        assertEquals(50, outcome.millis);
+    }
+
+    @Test
+    public void stream_times_out_and_cancels_the_source() {
+        AtomicReference<Token> upstream = new AtomicReference<>();
+        Stream<Integer> stalled = sink -> {
+            upstream.set(sink.token());
+            sink.onStart(n -> sink.onNext(1));
+        };
+        Outcome<List<Integer>> outcome = new Outcome<>();
+        stalled.pipe(TimeLimit.streamOf(30)).toList().select(outcome);
+        time.advance(30, TimeUnit.MILLISECONDS);
+        assertTrue(outcome.error instanceof TimeoutException);
+        assertEquals(30, outcome.millis);
+        assertTrue(upstream.get().isCancelled());
+    }
+
+    @Test
+    public void stream_that_completes_in_time_is_untouched() {
+        assertEquals(
+                Arrays.asList(1, 2, 3),
+                Stream.of(1, 2, 3).pipe(TimeLimit.streamOf(30_000)).toList().unwrap()
+        );
+        assertEquals(0, time.pending());
+    }
+
+    private <T> Try<T> after(long millis, T value) {
+        return continuation -> time.schedule(() -> continuation.ok(value), millis);
+    }
+
+    private class Outcome<T> implements Try.Case<T> {
+        boolean isDone = false;
+        T value;
+        Throwable error;
+        long millis = -1;
+
+        @Override
+        public void ok(T t) {
+            settle();
+            value = t;
+        }
+
+        @Override
+        public void error(@NonNull Throwable t) {
+            settle();
+            error = t;
+        }
+
+        private void settle() {
+            assertFalse("settled twice", isDone);
+            isDone = true;
+            millis = time.millis();
+        }
+    }
 }
@@ -0,0 +1,178 @@
+package ph.codeia.altlive.transform;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import androidx.annotation.NonNull;
+import ph.codeia.altlive.Try;
+
+import static org.junit.Assert.*;
+
+public class VirtualTimeTest {
+    private final VirtualTime time = new VirtualTime(1_000_000L);
+    private Scheduler original;
+
+    @Before
+    public void setUp() {
+        original = Delay.scheduler();
+        Delay.setScheduler(time);
+    }
+
+    @After
+    public void tearDown() {
+        Delay.setScheduler(original);
+    }
+
+    @Test
+    public void clock_only_moves_when_advanced() {
+        assertEquals(1_000_000L, time.millis());
+        assertEquals(0L, time.nanos());
+        time.advance(2, TimeUnit.HOURS);
+        assertEquals(1_000_000L + TimeUnit.HOURS.toMillis(2), time.millis());
+        assertEquals(TimeUnit.HOURS.toNanos(2), time.nanos());
+    }
+
+    @Test
+    public void runs_blocks_in_deadline_order_at_their_deadline() {
+        List<String> order = new ArrayList<>();
+        time.schedule(() -> order.add("30@" + time.nanos()), 30);
+        time.schedule(() -> order.add("10@" + time.nanos()), 10);
+        time.schedule(() -> {
+            order.add("20@" + time.nanos());
+            time.schedule(() -> order.add("25@" + time.nanos()), 5);
+        }, 20);
+        Scheduler.Handle cancelled = time.schedule(() -> order.add("never"), 15);
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel());
+
+        time.advance(25, TimeUnit.MILLISECONDS);
+        assertEquals(1, time.pending());
+        time.advance(5, TimeUnit.MILLISECONDS);
+
+        long ms = TimeUnit.MILLISECONDS.toNanos(1);
+        List<String> expected = new ArrayList<>();
+        expected.add("10@" + 10 * ms);
+        expected.add("20@" + 20 * ms);
+        expected.add("25@" + 25 * ms);
+        expected.add("30@" + 30 * ms);
+        assertEquals(expected, order);
+        assertEquals(0, time.pending());
+        assertEquals(4, time.executed());
+    }
+
+    @Test
+    public void drain_stops_runaway_blocks() {
+        AtomicInteger runs = new AtomicInteger(0);
+        Runnable[] block = new Runnable[1];
+        block[0] = () -> {
+            runs.incrementAndGet();
+            time.schedule(block[0], 1_000);
+        };
+        time.schedule(block[0], 1_000);
+        assertEquals(50, time.drain(50));
+        assertEquals(50, runs.get());
+        assertEquals(50_000L, TimeUnit.NANOSECONDS.toMillis(time.nanos()));
+    }
+
+    @Test
+    public void time_limit_fires_without_waiting() {
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Try<String> never = continuation -> {};
+        never.pipe(TimeLimit.of(1, TimeUnit.HOURS)).select(new Try.Case<String>() {
+            @Override
+            public void ok(String s) {
+                fail("unreachable");
+            }
+
+            @Override
+            public void error(@NonNull Throwable t) {
+                error.set(t);
+            }
+        });
+        time.advance(59, TimeUnit.MINUTES);
+        assertNull(error.get());
+        time.advance(1, TimeUnit.MINUTES);
+        assertTrue(error.get() instanceof TimeoutException);
+    }
+
+    @Test
+    public void retry_backoff_runs_on_virtual_time() {
+        AtomicInteger attempts = new AtomicInteger(0);
+        AtomicReference<String> result = new AtomicReference<>();
+        Try<String> flaky = continuation -> {
+            if (attempts.incrementAndGet() < 5) {
+                continuation.error(new RuntimeException());
+            }
+            else {
+                continuation.ok("done @" + TimeUnit.NANOSECONDS.toSeconds(time.nanos()));
+            }
+        };
+        flaky.pipe(Retry.<String>until(10)
+                .backoff(Retry.Backoff.exponential(60_000, 600_000)))
+                .select(new Try.Case<String>() {
+                    @Override
+                    public void ok(String s) {
+                        result.set(s);
+                    }
+
+                    @Override
+                    public void error(@NonNull Throwable t) {
+                        fail("unreachable");
+                    }
+                });
+        assertEquals(1, attempts.get());
+        time.drain(100);
+        // 1 + 2 + 4 + 8 minutes
+        assertEquals("done @900", result.get());
+    }
+
+    @Test
+    public void memoize_expires_on_virtual_time() {
+        AtomicInteger calls = new AtomicInteger(0);
+        Try<Integer> cached = Try.<Integer>of(calls::incrementAndGet)
+                .pipe(Memoize.expireAfter(1, 0, TimeUnit.DAYS));
+        assertEquals(1, cached.unwrap().intValue());
+        time.advance(23, TimeUnit.HOURS);
+        assertEquals(1, cached.unwrap().intValue());
+        time.advance(1, TimeUnit.HOURS);
+        assertEquals(2, cached.unwrap().intValue());
+    }
+
+    @Test
+    public void circuit_breaker_half_opens_on_virtual_time() {
+        AtomicInteger calls = new AtomicInteger(0);
+        Try<Integer> breaker = Try.<Integer>of(() -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException();
+        }).pipe(CircuitBreaker.of(2, 30, TimeUnit.SECONDS));
+        for (int i = 0; i < 10; i++) {
+            try {
+                breaker.unwrap();
+            }
+            catch (RuntimeException ignored) {
+            }
+        }
+        assertEquals(2, calls.get());
+        time.advance(30, TimeUnit.SECONDS);
+        try {
+            breaker.unwrap();
+            fail("unreachable");
+        }
+        catch (IllegalStateException e) {
+            assertFalse(e instanceof CircuitBreaker.Tripped);
+        }
+        assertEquals(3, calls.get());
+    }
+}
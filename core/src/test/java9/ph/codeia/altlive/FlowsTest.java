@@ -0,0 +1,223 @@
+package ph.codeia.altlive;
+
+/*
+ * This file is a part of the AltLiveData project.
+ */
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import androidx.annotation.NonNull;
+
+import static org.junit.Assert.*;
+
+public class FlowsTest {
+
+    static class Recorder<T> implements Flow.Subscriber<T> {
+        final List<T> values = new ArrayList<>();
+        Flow.Subscription subscription;
+        Throwable error;
+        boolean isComplete = false;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(T item) {
+            values.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            isComplete = true;
+        }
+    }
+
+    @Test
+    public void stream_publisher_respects_demand() {
+        AtomicInteger pulled = new AtomicInteger(0);
+        Try<Integer> next = Try.of(pulled::incrementAndGet);
+        Stream<Integer> naturals = Stream.iterate(next, n -> next);
+        Recorder<Integer> subscriber = new Recorder<>();
+        Flows.toPublisher(naturals).subscribe(subscriber);
+        assertEquals(0, pulled.get());
+        subscriber.subscription.request(3);
+        assertEquals(Arrays.asList(1, 2, 3), subscriber.values);
+        subscriber.subscription.cancel();
+        subscriber.subscription.request(3);
+        assertEquals(3, pulled.get());
+    }
+
+    @Test
+    public void non_positive_requests_fail_the_subscriber() {
+        Recorder<Integer> subscriber = new Recorder<>();
+        Flows.toPublisher(Stream.of(1, 2)).subscribe(subscriber);
+        subscriber.subscription.request(-1);
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void stream_that_throws_on_subscribe_fails_the_subscriber() {
+        Recorder<Integer> subscriber = new Recorder<>();
+        Stream<Integer> broken = sink -> {
+            throw new IllegalStateException("broken");
+        };
+        Flows.toPublisher(broken).subscribe(subscriber);
+        assertNotNull(subscriber.subscription);
+        assertTrue(subscriber.error instanceof IllegalStateException);
+        assertTrue(subscriber.values.isEmpty());
+    }
+
+    @Test
+    public void try_publisher_starts_on_request() {
+        AtomicInteger calls = new AtomicInteger(0);
+        Recorder<Integer> subscriber = new Recorder<>();
+        Flows.singlePublisher(Try.of(calls::incrementAndGet)).subscribe(subscriber);
+        assertEquals(0, calls.get());
+        subscriber.subscription.request(1);
+        assertEquals(Collections.singletonList(1), subscriber.values);
+        assertTrue(subscriber.isComplete);
+    }
+
+    @Test
+    public void live_publisher_keeps_only_the_latest_value_without_demand() {
+        LiveField<Integer> field = new LiveField<>();
+        Recorder<Integer> subscriber = new Recorder<>();
+        Flows.toPublisher(field).subscribe(subscriber);
+        field.setValue(1);
+        field.setValue(2);
+        field.setValue(null);
+        field.setValue(3);
+        assertTrue(subscriber.values.isEmpty());
+        subscriber.subscription.request(5);
+        assertEquals(Collections.singletonList(3), subscriber.values);
+        field.setValue(4);
+        assertEquals(Arrays.asList(3, 4), subscriber.values);
+        subscriber.subscription.cancel();
+        field.setValue(5);
+        assertEquals(Arrays.asList(3, 4), subscriber.values);
+    }
+
+    @Test
+    public void live_publisher_completes_when_the_owner_is_destroyed() {
+        LiveField<Integer> field = new LiveField<>();
+        Life owner = Life.created();
+        Recorder<Integer> subscriber = new Recorder<>();
+        Flows.toPublisher(field, owner).subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+        owner.progress();
+        owner.progress();
+        field.setValue(1);
+        assertEquals(Collections.singletonList(1), subscriber.values);
+        owner.regress();
+        owner.regress();
+        field.setValue(2);
+        assertFalse(subscriber.isComplete);
+        owner.regress();
+        assertTrue(subscriber.isComplete);
+        assertEquals(Collections.singletonList(1), subscriber.values);
+    }
+
+    @Test(timeout = 1000)
+    public void publisher_stream_requests_only_what_the_sink_asks_for() throws InterruptedException {
+        SubmissionPublisher<Integer> publisher = new SubmissionPublisher<>(Runnable::run, 4);
+        List<Integer> values = new ArrayList<>();
+        AtomicReference<Stream.Demand> demand = new AtomicReference<>();
+        Flows.<Integer>fromPublisher(publisher).subscribe(new Stream.Sink<Integer>() {
+            @Override
+            public void onStart(Stream.Demand d) {
+                demand.set(d);
+                d.request(2);
+            }
+
+            @Override
+            public void onNext(Integer integer) {
+                values.add(integer);
+            }
+
+            @Override
+            public void onError(@NonNull Throwable t) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        for (int i = 0; i < 4; i++) {
+            publisher.submit(i);
+        }
+        assertEquals(Arrays.asList(0, 1), values);
+        demand.get().request(2);
+        assertEquals(Arrays.asList(0, 1, 2, 3), values);
+        publisher.close();
+    }
+
+    @Test
+    public void feed_subscriber_bounds_the_demand() {
+        List<Long> requests = new ArrayList<>();
+        List<Integer> posted = new ArrayList<>();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Token token = new Token();
+        AtomicInteger cancelled = new AtomicInteger(0);
+        Flow.Subscriber<Integer> subscriber = Flows.toSubscriber(posted::add, 8, new Try.Case<Void>() {
+            @Override
+            public void ok(Void aVoid) {
+            }
+
+            @Override
+            public void error(@NonNull Throwable t) {
+                error.set(t);
+            }
+
+            @Override
+            public Token token() {
+                return token;
+            }
+        });
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                requests.add(n);
+            }
+
+            @Override
+            public void cancel() {
+                cancelled.incrementAndGet();
+            }
+        });
+        assertEquals(Collections.singletonList(8L), requests);
+        for (int i = 0; i < 12; i++) {
+            subscriber.onNext(i);
+        }
+        assertEquals(12, posted.size());
+        assertEquals(Arrays.asList(8L, 6L, 6L), requests);
+        token.cancel();
+        assertEquals(1, cancelled.get());
+        subscriber.onError(new IllegalStateException());
+        assertTrue(error.get() instanceof IllegalStateException);
+    }
+
+    @Test(timeout = 1000)
+    public void round_trip() {
+        List<Integer> result = Flows.fromPublisher(Flows.toPublisher(Stream.of(1, 2, 3)))
+                .map(n -> n * 2)
+                .toList()
+                .unwrap();
+        assertEquals(Arrays.asList(2, 4, 6), result);
+    }
+}